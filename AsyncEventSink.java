@@ -0,0 +1,134 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/* Passes events to another sink on a background thread, so formatting and console or
+   file I/O stay off the threads doing the work.
+   Events go through a fixed ring of preallocated slots: a producer claims a sequence
+   number with one CAS, fills the slot and publishes it, nothing is allocated per event.
+   When the consumer falls a full ring behind, new events are dropped and counted rather
+   than blocking the caller, see getDropped().
+ */
+public class AsyncEventSink implements LibraryEventSink, AutoCloseable {
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+
+    private final LibraryEventSink delegate;
+    private final int capacity;
+    private final int mask;
+
+    // Slot i holds the event with sequence s where s & mask == i, published[i] == s + 1 once it is written
+    private final Operation[] operations;
+    private final OperationResult[] results;
+    private final long[] isbns;
+    private final Book[] books;
+    private final AtomicLongArray published;
+
+    private final AtomicLong tail = new AtomicLong();   // next sequence to claim
+    private volatile long head;                         // next sequence to deliver, written by the consumer only
+    private volatile boolean consumerParked;
+    private volatile boolean closed;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread consumer;
+
+    // capacity is rounded up to a power of two
+    public AsyncEventSink(LibraryEventSink delegate, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.delegate = delegate;
+        this.capacity = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.mask = this.capacity - 1;
+        operations = new Operation[this.capacity];
+        results = new OperationResult[this.capacity];
+        isbns = new long[this.capacity];
+        books = new Book[this.capacity];
+        published = new AtomicLongArray(this.capacity);
+        consumer = new Thread(this::consume, "library-events");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void onEvent(Operation operation, OperationResult result, long isbn, Book book) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (closed || sequence - head >= capacity) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        operations[slot] = operation;
+        results[slot] = result;
+        isbns[slot] = isbn;
+        books[slot] = book;
+        // Volatile write, ordered before the read of consumerParked below
+        published.set(slot, sequence + 1);
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // Events dropped because the ring was full or the sink was closed
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Waits until every event published before the call has been delivered
+    public void flush() {
+        long target = tail.get();
+        while (head < target && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            Thread.yield();
+        }
+    }
+
+    // Delivers what is already in the ring, then stops the background thread.
+    // An event racing with close() may be lost without being counted as dropped.
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        while (true) {
+            long sequence = head;
+            int slot = (int) sequence & mask;
+            if (published.get(slot) == sequence + 1) {
+                Operation operation = operations[slot];
+                OperationResult result = results[slot];
+                long isbn = isbns[slot];
+                Book book = books[slot];
+                books[slot] = null;
+                try {
+                    delegate.onEvent(operation, result, isbn, book);
+                } catch (RuntimeException e) {
+                    // A failing sink must not stop the events after it
+                }
+                // Frees the slot, and tells flush() the event has been delivered
+                head = sequence + 1;
+            } else if (closed && tail.get() == sequence) {
+                return;
+            } else if (tail.get() == sequence) {
+                // Re-check after announcing the park, a producer publishing now sees the flag
+                consumerParked = true;
+                if (published.get(slot) != sequence + 1 && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                consumerParked = false;
+            } else {
+                // Claimed but not yet published
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/* Author index used by Library.findBooksByAuthor.
+   The author block of a catalog line is split into names (see names()): "Herbert, Frank"
+   is one author, "Perez, Lee, et al" is two surnames. Postings are kept per surname, and
+   per full name for names with a given name, so "Herbert" and "Herbert, Frank" are both
+   one lookup.
+ */
+public class AuthorIndex {
+    /* First words that make the second of two parts a given name, the generator's first
+       names among them. Names that are just as common as surnames, like Thomas, are left
+       out so that blocks with them are read both ways.
+     */
+    private static final Set<String> GIVEN_NAMES = new HashSet<>(Arrays.asList(
+            "james", "mary", "robert", "patricia", "john", "jennifer", "michael", "linda", "david",
+            "elizabeth", "william", "barbara", "richard", "susan", "joseph", "jessica", "sarah",
+            "charles", "karen", "amara", "kenji", "olga", "piotr", "lena", "marco", "claire", "ana",
+            "omar", "priya", "frank", "brian", "anna", "ursula", "jane", "emily", "george", "henry",
+            "peter", "paul", "margaret", "helen", "alice", "edward", "virginia", "toni", "terry",
+            "isaac", "leo", "fyodor", "gabriel", "haruki", "chinua", "agatha", "arthur", "ray"));
+
+    private final HashMap<String, IsbnPostings> bySurname = new HashMap<>();
+    private final HashMap<String, IsbnPostings> byFullName = new HashMap<>();
+
+    public void add(long isbn, String block) {
+        for (String[] name : parse(block)) {
+            bySurname.computeIfAbsent(name[0], k -> new IsbnPostings()).add(isbn);
+            if (name[1] != null) {
+                byFullName.computeIfAbsent(fullName(name), k -> new IsbnPostings()).add(isbn);
+            }
+        }
+    }
+
+    // The block must be the one that was passed to add() for this ISBN
+    public void remove(long isbn, String block) {
+        for (String[] name : parse(block)) {
+            remove(bySurname, name[0], isbn);
+            if (name[1] != null) {
+                remove(byFullName, fullName(name), isbn);
+            }
+        }
+    }
+
+    /* O(m) time complexity, m = number of books found
+       ISBNs of the books by the named author. The name is a surname
+       ("Herbert"), "Surname, Given" ("Herbert, Frank") or "Given Surname" ("Frank Herbert",
+       "Ursula Le Guin"), in any case and spacing.
+     */
+    public long[] find(String name) {
+        // Two parts are looked up as "Surname, Given" even when parse() reads them both ways
+        List<String[]> parsed = parse(name);
+        if (parsed.isEmpty() || parsed.size() > 1 && parsed.get(0)[1] == null) {
+            return new long[0];
+        }
+        String surname = parsed.get(0)[0];
+        String given = parsed.get(0)[1];
+        if (given == null && !bySurname.containsKey(surname)) {
+            // No comma: try each split of "Given Surname", the surname may have spaces in it
+            for (int space = surname.indexOf(' '); space >= 0; space = surname.indexOf(' ', space + 1)) {
+                if (bySurname.containsKey(surname.substring(space + 1))) {
+                    given = surname.substring(0, space);
+                    surname = surname.substring(space + 1);
+                    break;
+                }
+            }
+        }
+        // parse() gives a block each surname once, so no ISBN is listed twice
+        IsbnPostings list = given == null ? bySurname.get(surname) : byFullName.get(surname + ", " + given);
+        return list == null ? new long[0] : list.toArray();
+    }
+
+    public void clear() {
+        bySurname.clear();
+        byFullName.clear();
+    }
+
+    /* Normalized names in an author block, "herbert, frank" or "perez".
+       Two parts are "Surname, Given" when the second looks like a given name: initials, or
+       a first word from GIVEN_NAMES. Otherwise they may as well be two surnames, as in
+       "Martinez, Jones", and the block is read both ways: "martinez, jones" and "jones".
+       Any other number of parts (or a trailing "et al") are one surname each. Names are lower-cased, with dots dropped and spaces collapsed,
+       so "Le Guin, U. K." and "le guin, u k" are the same author.
+     */
+    public static List<String> names(String block) {
+        List<String> names = new ArrayList<>();
+        for (String[] name : parse(block)) {
+            names.add(name[1] == null ? name[0] : fullName(name));
+        }
+        return names;
+    }
+
+    private static String fullName(String[] name) {
+        return name[0] + ", " + name[1];
+    }
+
+    private static void remove(HashMap<String, IsbnPostings> postings, String key, long isbn) {
+        IsbnPostings list = postings.get(key);
+        if (list != null) {
+            list.remove(isbn);
+            if (list.size() == 0) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    // Distinct {surname, given or null} pairs
+    private static List<String[]> parse(String block) {
+        List<String> parts = new ArrayList<>();
+        for (String part : block.split(",")) {
+            String normalized = normalize(part);
+            if (!normalized.isEmpty()) {
+                parts.add(normalized);
+            }
+        }
+        boolean etAl = !parts.isEmpty() && parts.get(parts.size() - 1).equals("et al");
+        if (etAl) {
+            parts.remove(parts.size() - 1);
+        }
+
+        List<String[]> names = new ArrayList<>();
+        if (parts.size() == 2 && !etAl) {
+            names.add(new String[]{parts.get(0), parts.get(1)});
+            if (!looksGiven(parts.get(1)) && !parts.get(1).equals(parts.get(0))) {
+                names.add(new String[]{parts.get(1), null});
+            }
+            return names;
+        }
+        for (String surname : new LinkedHashSet<>(parts)) {
+            names.add(new String[]{surname, null});
+        }
+        return names;
+    }
+
+    // Normalized part with an initial ("u k", "ursula k") or a known first name ("frank")
+    private static boolean looksGiven(String part) {
+        String[] words = part.split(" ");
+        for (String word : words) {
+            if (word.length() == 1) {
+                return true;
+            }
+        }
+        return GIVEN_NAMES.contains(words[0]);
+    }
+
+    // Lower case, dots dropped, runs of whitespace made one space, no leading or trailing space
+    private static String normalize(String part) {
+        StringBuilder normalized = new StringBuilder(part.length());
+        boolean space = false;
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '.' || Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+}
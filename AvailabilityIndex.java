@@ -0,0 +1,331 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Availability of every book as CompressedBitmaps over dense book numbers, used by
+   Library to filter by availability without reading Book objects, and to intersect the
+   postings of several indexes as bitmaps of those numbers (see ordinals()).
+   Each ISBN gets an ordinal when it is added; the ordinal of a removed ISBN goes to the
+   next one added, so ordinals stay below the catalog size and the bitmaps stay dense.
+   'available' holds the ordinals of books with availability above 0, 'borrowed' those at
+   exactly 0, like BookFilter.
+   The bitmaps are split into SHARDS shards by the low bits of the ordinal, each with its
+   own lock, so borrows and returns from many threads rarely wait for one another, and
+   readers lock one shard at a time. add(), remove() and clear() change the ISBN table and
+   must not run alongside any other call (Library makes them under the catalog write lock);
+   everything else can run concurrently.
+ */
+public class AvailabilityIndex {
+    private static final int MIN_CAPACITY = 16;
+    private static final int SHARD_BITS = 8;
+    private static final int SHARDS = 1 << SHARD_BITS;
+    // ordinals() sorts fewer than 1/DENSE_RATIO of the ordinals and fills a bitset for more
+    private static final int DENSE_RATIO = 64;
+
+    // Open-addressing table of ordinal + 1, 0 marks an empty slot, keys are isbns[ordinal]
+    private int[] slots = new int[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int shift = Long.numberOfLeadingZeros(MIN_CAPACITY) + 1;
+    private long[] isbns = new long[MIN_CAPACITY];
+    private int highWater;
+    private int[] free = new int[MIN_CAPACITY];
+    private int freeCount;
+    private int size;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final LongAdder availableCount = new LongAdder();
+    private final LongAdder borrowedCount = new LongAdder();
+
+    public AvailabilityIndex() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public void add(long isbn, int availability) {
+        int ordinal = find(isbn);
+        if (ordinal < 0) {
+            ordinal = freeCount > 0 ? free[--freeCount] : highWater++;
+            if (ordinal == isbns.length) {
+                isbns = Arrays.copyOf(isbns, ordinal * 2);
+            }
+            isbns[ordinal] = isbn;
+            if (++size * 2 > slots.length) {
+                rehash(slots.length * 2);
+            }
+            hash(ordinal);
+        }
+        shardOf(ordinal).track(ordinal >>> SHARD_BITS, availability);
+    }
+
+    public void remove(long isbn) {
+        int ordinal = find(isbn);
+        if (ordinal < 0) {
+            return;
+        }
+        shardOf(ordinal).track(ordinal >>> SHARD_BITS, -1);
+        unhash(ordinal);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = ordinal;
+        size--;
+    }
+
+    // Holds the lock of one shard, for one bitmap change
+    public void set(long isbn, int availability) {
+        int ordinal = find(isbn);
+        if (ordinal >= 0) {
+            shardOf(ordinal).track(ordinal >>> SHARD_BITS, availability);
+        }
+    }
+
+    // O(1), kept up to date by every change
+    public int count(BookFilter filter) {
+        switch (filter) {
+            case AVAILABLE:
+                return availableCount.intValue();
+            case BORROWED:
+                return borrowedCount.intValue();
+            default:
+                return size;
+        }
+    }
+
+    public boolean matches(long isbn, BookFilter filter) {
+        int ordinal = find(isbn);
+        return ordinal >= 0 && (filter == BookFilter.ALL
+                || shardOf(ordinal).contains(ordinal >>> SHARD_BITS, filter));
+    }
+
+    /* O(k log k + SHARDS) time complexity, k = number of ISBNs given
+       The given ISBNs that are in the catalog and match the filter, in no particular order.
+     */
+    public long[] retain(long[] candidates, BookFilter filter) {
+        return isbns(ordinals(candidates), filter);
+    }
+
+    /* O(k log k) time complexity for few ISBNs, O(k + n / 64) for many, k = number of ISBNs
+       given, n = catalog size
+       Ordinals of the given ISBNs that are in the catalog, so postings of different indexes
+       can be intersected with CompressedBitmap.and(). Reads only the ISBN table, no shard lock.
+     */
+    public CompressedBitmap ordinals(long[] isbns) {
+        if (isbns.length > highWater / DENSE_RATIO) {
+            // Setting bits in a plain bitset over every ordinal is cheaper than sorting them
+            long[] words = new long[(highWater + 63) >>> 6];
+            for (long isbn : isbns) {
+                int ordinal = find(isbn);
+                if (ordinal >= 0) {
+                    words[ordinal >>> 6] |= 1L << ordinal;
+                }
+            }
+            return CompressedBitmap.ofWords(words);
+        }
+        int[] ordinals = new int[isbns.length];
+        int n = 0;
+        for (long isbn : isbns) {
+            int ordinal = find(isbn);
+            if (ordinal >= 0) {
+                ordinals[n++] = ordinal;
+            }
+        }
+        Arrays.sort(ordinals, 0, n);
+        return CompressedBitmap.ofSorted(ordinals, 0, n);
+    }
+
+    // O(m log m + SHARDS) time complexity, m = number of matching books, their ordinals
+    public CompressedBitmap ordinals(BookFilter filter) {
+        int[] ordinals = new int[count(filter)];
+        int n = 0;
+        if (filter == BookFilter.ALL) {
+            for (int slot : slots) {
+                if (slot != 0) {
+                    ordinals[n++] = slot - 1;
+                }
+            }
+        } else {
+            for (int s = 0; s < SHARDS; s++) {
+                for (int value : shards[s].values(filter)) {
+                    if (n == ordinals.length) {
+                        ordinals = Arrays.copyOf(ordinals, n * 2 + 1);
+                    }
+                    ordinals[n++] = value << SHARD_BITS | s;
+                }
+            }
+        }
+        Arrays.sort(ordinals, 0, n);
+        return CompressedBitmap.ofSorted(ordinals, 0, n);
+    }
+
+    /* O(m + SHARDS) time complexity, m = number of ordinals given
+       ISBNs of the given ordinals whose books match the filter, in no particular order.
+       The ordinals are split by shard and each part is ANDed with that shard's bitmap
+       under one lock, rather than one lookup and one lock per book.
+     */
+    public long[] isbns(CompressedBitmap ordinals, BookFilter filter) {
+        int[] all = ordinals.toArray();
+        long[] result = new long[all.length];
+        if (filter == BookFilter.ALL) {
+            for (int i = 0; i < all.length; i++) {
+                result[i] = isbns[all[i]];
+            }
+            return result;
+        }
+        if (all.length < SHARDS) {
+            // Too few to be worth splitting by shard
+            int n = 0;
+            for (int ordinal : all) {
+                if (shardOf(ordinal).contains(ordinal >>> SHARD_BITS, filter)) {
+                    result[n++] = isbns[ordinal];
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+        // Counting sort by shard, values stay ascending within a shard
+        int[] starts = new int[SHARDS + 1];
+        for (int ordinal : all) {
+            starts[(ordinal & (SHARDS - 1)) + 1]++;
+        }
+        for (int s = 0; s < SHARDS; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] next = Arrays.copyOf(starts, SHARDS);
+        int[] values = new int[all.length];
+        for (int ordinal : all) {
+            values[next[ordinal & (SHARDS - 1)]++] = ordinal >>> SHARD_BITS;
+        }
+        int n = 0;
+        for (int s = 0; s < SHARDS; s++) {
+            if (starts[s] == starts[s + 1]) {
+                continue;
+            }
+            CompressedBitmap part = CompressedBitmap.ofSorted(values, starts[s], starts[s + 1]);
+            for (int value : shards[s].and(part, filter)) {
+                result[n++] = isbns[value << SHARD_BITS | s];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // O(m + SHARDS) time complexity, m = number of matching books, ISBNs in no particular order
+    public long[] isbns(BookFilter filter) {
+        if (filter == BookFilter.ALL) {
+            long[] all = new long[size];
+            int n = 0;
+            for (int slot : slots) {
+                if (slot != 0) {
+                    all[n++] = isbns[slot - 1];
+                }
+            }
+            return all;
+        }
+        long[] result = new long[count(filter)];
+        int n = 0;
+        for (int s = 0; s < SHARDS; s++) {
+            for (int value : shards[s].values(filter)) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, n * 2 + 1);
+                }
+                result[n++] = isbns[value << SHARD_BITS | s];
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        highWater = 0;
+        freeCount = 0;
+        size = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        availableCount.reset();
+        borrowedCount.reset();
+    }
+
+    private Shard shardOf(int ordinal) {
+        return shards[ordinal & (SHARDS - 1)];
+    }
+
+    // The ordinals of one shard, stored as ordinal >>> SHARD_BITS
+    private class Shard {
+        private final CompressedBitmap available = new CompressedBitmap();
+        private final CompressedBitmap borrowed = new CompressedBitmap();
+
+        // A negative availability takes the value out of both bitmaps
+        synchronized void track(int value, int availability) {
+            if (availability > 0 ? available.add(value) : available.remove(value)) {
+                availableCount.add(availability > 0 ? 1 : -1);
+            }
+            if (availability == 0 ? borrowed.add(value) : borrowed.remove(value)) {
+                borrowedCount.add(availability == 0 ? 1 : -1);
+            }
+        }
+
+        synchronized boolean contains(int value, BookFilter filter) {
+            return bitmapFor(filter).contains(value);
+        }
+
+        synchronized int[] values(BookFilter filter) {
+            return bitmapFor(filter).toArray();
+        }
+
+        synchronized int[] and(CompressedBitmap part, BookFilter filter) {
+            return part.and(bitmapFor(filter)).toArray();
+        }
+
+        private CompressedBitmap bitmapFor(BookFilter filter) {
+            return filter == BookFilter.AVAILABLE ? available : borrowed;
+        }
+    }
+
+    private int find(long isbn) {
+        for (int i = slot(isbn); slots[i] != 0; i = (i + 1) & mask) {
+            if (isbns[slots[i] - 1] == isbn) {
+                return slots[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void hash(int ordinal) {
+        int i = slot(isbns[ordinal]);
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = ordinal + 1;
+    }
+
+    // Backward-shift deletion, as in LongBookMap.remove()
+    private void unhash(int ordinal) {
+        int hole = slot(isbns[ordinal]);
+        while (slots[hole] != ordinal + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int j = (hole + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = slot(isbns[slots[j] - 1]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                slots[hole] = slots[j];
+                hole = j;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+        for (int slot : old) {
+            if (slot != 0) {
+                hash(slot - 1);
+            }
+        }
+    }
+
+    private int slot(long isbn) {
+        return (int) (LongBookMap.spread(isbn) >>> shift);
+    }
+}
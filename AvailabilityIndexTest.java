@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/* Checks CompressedBitmap against a TreeSet through array and bitmap groups, that ISBNs
+   turned into ordinals and filtered a shard at a time keep exactly the matching ones, and that
+   searchBooks() and query() filtered by availability match a filter over every book on
+   both stores while books are borrowed, returned, added and removed, also from several
+   threads at once.
+ */
+public class AvailabilityIndexTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.println("=== Availability Index Test ===");
+
+        System.out.println("\n1. Bitmaps:");
+        Random random = new Random(25);
+        CompressedBitmap[] bitmaps = {new CompressedBitmap(), new CompressedBitmap()};
+        List<TreeSet<Integer>> sets = List.of(new TreeSet<>(), new TreeSet<>());
+        boolean same = true;
+        for (int round = 0; round < 24; round++) {
+            // Dense and sparse phases, so groups cross ARRAY_MAX both ways
+            int range = round % 4 == 0 ? 1 << 20 : 3 * (1 << 16);
+            int density = random.nextInt(3) == 0 ? 20_000 : 2_000;
+            for (int s = 0; s < 2; s++) {
+                for (int i = 0; i < density; i++) {
+                    int value = random.nextInt(range);
+                    if (random.nextInt(3) == 0) {
+                        same &= bitmaps[s].remove(value) == sets.get(s).remove(value);
+                    } else {
+                        same &= bitmaps[s].add(value) == sets.get(s).add(value);
+                    }
+                }
+                same &= bitmaps[s].cardinality() == sets.get(s).size()
+                        && bitmaps[s].contains(range / 2) == sets.get(s).contains(range / 2);
+            }
+            TreeSet<Integer> and = new TreeSet<>(sets.get(0));
+            and.retainAll(sets.get(1));
+            TreeSet<Integer> or = new TreeSet<>(sets.get(0));
+            or.addAll(sets.get(1));
+            TreeSet<Integer> andNot = new TreeSet<>(sets.get(0));
+            andNot.removeAll(sets.get(1));
+            same &= equal(bitmaps[0].and(bitmaps[1]), and) && equal(bitmaps[0].or(bitmaps[1]), or)
+                    && equal(bitmaps[0].andNot(bitmaps[1]), andNot) && equal(bitmaps[1], sets.get(1));
+        }
+        check("matches a TreeSet", same);
+        CompressedBitmap sparse = CompressedBitmap.of(1, 70_000, 5_000_000);
+        check("sparse is small", sparse.sizeInBytes() < 100 && sparse.cardinality() == 3);
+        check("empty results", CompressedBitmap.of(1, 2).and(CompressedBitmap.of(3)).isEmpty()
+                && CompressedBitmap.of(1).andNot(CompressedBitmap.of(1)).toArray().length == 0);
+        int[] values = sets.get(0).stream().mapToInt(Integer::intValue).toArray();
+        long[] words = new long[(values[values.length - 1] >>> 6) + 1];
+        for (int value : values) {
+            words[value >>> 6] |= 1L << value;
+        }
+        check("built from sorted values or a bitset", equal(CompressedBitmap.ofSorted(values, 0, values.length), sets.get(0))
+                && equal(CompressedBitmap.ofWords(words), sets.get(0)));
+
+        System.out.println("\n2. Ordinals and shards:");
+        AvailabilityIndex ordinals = new AvailabilityIndex();
+        List<Long> present = new ArrayList<>();
+        Set<Long> members = new HashSet<>();
+        TreeSet<Long> lentOut = new TreeSet<>();
+        for (int i = 0; i < 30_000; i++) {
+            long isbn = random.nextInt(1 << 30);
+            if (present.size() > 100 && random.nextInt(5) == 0) {
+                long gone = present.remove(random.nextInt(present.size()));
+                ordinals.remove(gone);
+                members.remove(gone);
+                lentOut.remove(gone);
+            } else if (members.add(isbn)) {
+                boolean borrowed = random.nextInt(4) == 0;
+                ordinals.add(isbn, borrowed ? 0 : 1);
+                present.add(isbn);
+                if (borrowed) {
+                    lentOut.add(isbn);
+                }
+            }
+        }
+        boolean retained = true;
+        // Checked one by one, sorted into ordinals, and set in a bitset, with some ISBNs not in the index
+        for (int size : new int[]{10, 300, 15_000}) {
+            long[] candidates = new long[size];
+            for (int i = 0; i < size; i++) {
+                candidates[i] = random.nextInt(10) == 0 ? -1 - i : present.get(random.nextInt(present.size()));
+            }
+            for (BookFilter filter : BookFilter.values()) {
+                TreeSet<Long> expected = new TreeSet<>();
+                for (long isbn : candidates) {
+                    if (isbn >= 0 && (filter == BookFilter.ALL || lentOut.contains(isbn) == (filter == BookFilter.BORROWED))) {
+                        expected.add(isbn);
+                    }
+                }
+                long[] kept = ordinals.retain(candidates, filter);
+                TreeSet<Long> found = new TreeSet<>();
+                for (long isbn : kept) {
+                    found.add(isbn);
+                }
+                retained &= found.size() == kept.length && found.equals(expected);
+            }
+        }
+        check("retain matches the availability of each ISBN", retained);
+        long[] borrowedIsbns = ordinals.isbns(ordinals.ordinals(BookFilter.BORROWED), BookFilter.ALL);
+        check("borrowed ordinals", borrowedIsbns.length == lentOut.size()
+                && lentOut.containsAll(Arrays.stream(borrowedIsbns).boxed().toList()));
+
+        System.out.println("\n3. Filtered searches match a filter over every book:");
+        Path file = Files.createTempFile("availability-index-test", ".txt");
+        PrintStream out = System.out;
+        try {
+            new CatalogGenerator(25).write(file, 20_000);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library[] libraries = {new Library(file.toString(), CatalogStorage.HEAP),
+                    new Library(file.toString(), CatalogStorage.OFF_HEAP)};
+            System.setOut(out);
+            List<Book> all = libraries[0].searchBooks("");
+            boolean[] search = {true, true};
+            boolean[] query = {true, true};
+            for (int round = 0; round < 100; round++) {
+                for (int i = 0; i < 20; i++) {
+                    long isbn = all.get(random.nextInt(all.size())).getISBN();
+                    boolean giveBack = random.nextInt(4) == 0;
+                    for (Library library : libraries) {
+                        if (giveBack) {
+                            library.returnBook(isbn);
+                        } else {
+                            library.borrowBook(isbn);
+                        }
+                    }
+                }
+                if (round % 10 == 0) {
+                    long isbn = all.get(random.nextInt(all.size())).getISBN();
+                    Book added = new Book("Added Title " + round, "Added, Author", 9_000_000 + round, 2000);
+                    for (Library library : libraries) {
+                        library.removeBook(isbn);
+                        library.addBook(new Book(added.getTitle(), added.getAuthor(), added.getISBN(), 2000));
+                    }
+                }
+                List<Book> current = libraries[0].searchBooks("");
+                BookFilter filter = random.nextBoolean() ? BookFilter.BORROWED : BookFilter.AVAILABLE;
+                Book sample = current.get(random.nextInt(current.size()));
+                String text = random.nextBoolean() ? sample.getTitle() : sample.getAuthor();
+                int from = random.nextInt(text.length());
+                String term = text.substring(from, Math.min(text.length(), from + 1 + random.nextInt(5)));
+                if (random.nextInt(5) == 0) {
+                    term = Isbn.digits(sample.getISBN()).substring(0, 4);
+                }
+                // searchBooks() drops spaces and hyphens before matching inside either form of an ISBN
+                String digits = term.replaceAll("[\\s-]", "");
+                boolean isbnTerm = !digits.isEmpty() && digits.chars().allMatch(c -> c >= '0' && c <= '9');
+                List<Long> expected = new ArrayList<>();
+                for (Book book : current) {
+                    boolean state = filter == BookFilter.BORROWED ? book.getAvailability() == 0
+                            : book.getAvailability() > 0;
+                    if (state && (book.getTitle().toLowerCase().contains(term.toLowerCase())
+                            || book.getAuthor().toLowerCase().contains(term.toLowerCase())
+                            || isbnTerm && String.join(" ", Isbn.printedForms(book.getISBN())).contains(digits))) {
+                        expected.add(book.getISBN());
+                    }
+                }
+                List<Long> expectedByYear = new ArrayList<>();
+                for (Book book : current) {
+                    boolean state = filter == BookFilter.BORROWED ? book.getAvailability() == 0
+                            : book.getAvailability() > 0;
+                    if (state && book.getPubYear() == sample.getPubYear()) {
+                        expectedByYear.add(book.getISBN());
+                    }
+                }
+                for (int s = 0; s < 2; s++) {
+                    search[s] &= isbns(libraries[s].searchBooks(term, filter)).equals(expected);
+                    query[s] &= isbns(libraries[s].query(new BookQuery().filter(filter)
+                            .published(sample.getPubYear(), sample.getPubYear()))).equals(expectedByYear);
+                }
+            }
+            check("searchBooks, heap", search[0]);
+            check("searchBooks, off-heap", search[1]);
+            check("query, heap", query[0]);
+            check("query, off-heap", query[1]);
+            check("borrowed plan", libraries[0].explain(new BookQuery().filter(BookFilter.BORROWED))
+                    .equals("borrowed bitmap (" + libraries[0].getBorrowedBooksCount() + " books)"));
+
+            System.out.println("\n4. Concurrent borrows and returns keep the bitmaps exact:");
+            Library shared = libraries[0];
+            Thread[] desks = new Thread[4];
+            List<TreeSet<Long>> lent = new ArrayList<>();
+            for (int d = 0; d < desks.length; d++) {
+                TreeSet<Long> mine = new TreeSet<>();
+                lent.add(mine);
+                int desk = d;
+                desks[d] = new Thread(() -> {
+                    Random own = new Random(desk);
+                    // Each desk owns every fourth book, so it knows what it has lent out
+                    for (int i = 0; i < 20_000; i++) {
+                        long isbn = all.get((own.nextInt(all.size() / 4)) * 4 + desk).getISBN();
+                        if (shared.borrowBook(isbn) == OperationResult.BORROWED) {
+                            mine.add(isbn);
+                        } else if (own.nextBoolean() && shared.returnBook(isbn) == OperationResult.RETURNED) {
+                            mine.remove(isbn);
+                        }
+                    }
+                });
+                desks[d].start();
+            }
+            for (Thread desk : desks) {
+                desk.join();
+            }
+            TreeSet<Long> borrowed = new TreeSet<>();
+            for (Book book : shared.searchBooks("")) {
+                if (book.getAvailability() == 0) {
+                    borrowed.add(book.getISBN());
+                }
+            }
+            TreeSet<Long> expectedLent = new TreeSet<>();
+            for (int d = 0; d < desks.length; d++) {
+                for (long isbn : lent.get(d)) {
+                    expectedLent.add(isbn);
+                }
+            }
+            check("borrowed books", new TreeSet<>(isbns(shared.searchBooks("", BookFilter.BORROWED))).equals(borrowed)
+                    && borrowed.containsAll(expectedLent));
+            check("available books", shared.searchBooks("", BookFilter.AVAILABLE).size() + borrowed.size()
+                    == shared.getTotalBooks());
+
+            AvailabilityIndex index = new AvailabilityIndex();
+            for (long isbn = 0; isbn < 40_000; isbn++) {
+                index.add(isbn, 1);
+            }
+            for (int d = 0; d < desks.length; d++) {
+                int desk = d;
+                desks[d] = new Thread(() -> {
+                    // Desk d borrows the ISBNs equal to d mod 4 below 8000 and returns the odd ones
+                    for (long isbn = desk; isbn < 8_000; isbn += 4) {
+                        index.set(isbn, 0);
+                    }
+                    for (long isbn = desk; isbn < 8_000; isbn += 4) {
+                        if (isbn % 2 == 1) {
+                            index.set(isbn, 1);
+                        }
+                    }
+                });
+                desks[d].start();
+            }
+            for (Thread desk : desks) {
+                desk.join();
+            }
+            long[] evens = index.isbns(BookFilter.BORROWED);
+            boolean allEven = evens.length == 4_000;
+            for (long isbn : evens) {
+                allEven &= isbn % 2 == 0 && isbn < 8_000 && index.matches(isbn, BookFilter.BORROWED);
+            }
+            check("counts", index.count(BookFilter.BORROWED) == 4_000
+                    && index.count(BookFilter.AVAILABLE) == 36_000 && index.count(BookFilter.ALL) == 40_000);
+            check("index contents", allEven && index.retain(new long[]{2, 3, 8_000}, BookFilter.AVAILABLE).length == 2);
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean equal(CompressedBitmap bitmap, TreeSet<Integer> set) {
+        int[] values = bitmap.toArray();
+        if (values.length != set.size() || bitmap.cardinality() != set.size()) {
+            return false;
+        }
+        int i = 0;
+        for (int value : set) {
+            if (values[i++] != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Long> isbns(List<Book> books) {
+        List<Long> isbns = new ArrayList<>();
+        for (Book book : books) {
+            isbns.add(book.getISBN());
+        }
+        return isbns;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
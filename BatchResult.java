@@ -0,0 +1,35 @@
+/* Per-item outcomes of a Library batch operation, in the order the items were given.
+   One byte per item, so a batch of a million ISBNs costs 1 MB of results.
+ */
+public class BatchResult {
+    private static final OperationResult[] RESULTS = OperationResult.values();
+
+    private final byte[] results;
+
+    BatchResult(int size) {
+        results = new byte[size];
+    }
+
+    void set(int index, OperationResult result) {
+        results[index] = (byte) result.ordinal();
+    }
+
+    public int size() {
+        return results.length;
+    }
+
+    public OperationResult get(int index) {
+        return RESULTS[results[index]];
+    }
+
+    // O(n), number of items with this outcome
+    public int count(OperationResult result) {
+        int count = 0;
+        for (byte b : results) {
+            if (b == result.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
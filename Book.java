@@ -1,29 +1,30 @@
 public class Book {
    private String title;
    private String author;
-   private Long ISBN;
-   private Integer pubYear;
-   private Integer availability;
+   // Primitives, a record no longer drags three wrapper objects along
+   private long ISBN;
+   private int pubYear;
+   private volatile int availability; // changed by borrow/return while other threads read it
 
    public String getTitle(){ return title; }
    public String getAuthor(){ return author; }
-   public Long getISBN(){ return ISBN; }
-   public Integer getPubYear(){ return pubYear; }
-   public Integer getAvailability(){ return availability; }
+   public long getISBN(){ return ISBN; }
+   public int getPubYear(){ return pubYear; }
+   public int getAvailability(){ return availability; }
 
-   public void setAvailability(Integer availability){
+   public void setAvailability(int availability){
       this.availability = availability;
    }
 
    public Book(){
       title = "";
       author = "";
-      ISBN = 0L;
+      ISBN = 0;
       pubYear = 0;
       availability = 1;
    }
 
-   public Book(String title, String author, Long ISBN, Integer pubYear){
+   public Book(String title, String author, long ISBN, int pubYear){
       this.title = title;
       this.author = author;
       this.ISBN = ISBN;
@@ -31,7 +32,7 @@ public class Book {
       this.availability = 1; // Default to available
    }
 
-   public Book(String title, String author, Long ISBN, Integer pubYear, Integer availability){
+   public Book(String title, String author, long ISBN, int pubYear, int availability){
       this.title = title;
       this.author = author;
       this.ISBN = ISBN;
@@ -52,16 +53,8 @@ public class Book {
       // Based on your previous code, let's keep it clean:
       sb.append(author).append(", ");
 
-      // FIX 4: Robust ISBN formatting
-      String tempISBN = String.valueOf(ISBN);
-      if (tempISBN.length() == 10) {
-         sb.append(tempISBN.substring(0, 1)).append("-");
-         sb.append(tempISBN.substring(1, 3)).append("-");
-         sb.append(tempISBN.substring(3, 9)).append("-");
-         sb.append(tempISBN.substring(9));
-      } else {
-         sb.append(tempISBN);
-      }
+      // ISBN-10 and ISBN-13 both hyphenated, see Isbn.format
+      sb.append(Isbn.format(ISBN));
 
       sb.append(", ").append(pubYear);
 
@@ -0,0 +1,6 @@
+// Which books a page of the catalog is drawn from
+public enum BookFilter {
+    AVAILABLE,
+    BORROWED,
+    ALL
+}
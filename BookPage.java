@@ -0,0 +1,37 @@
+import java.util.List;
+
+/* One page of books in title order, returned by Library.getPage().
+   Cursors are opaque strings, pass them back to getPage() with the same filter.
+ */
+public class BookPage {
+    private final List<Book> books;
+    private final String cursor;
+    private final String nextCursor;
+    private final String previousCursor;
+    private final int totalBooks;
+
+    public BookPage(List<Book> books, String cursor, String nextCursor,
+                    String previousCursor, int totalBooks) {
+        this.books = books;
+        this.cursor = cursor;
+        this.nextCursor = nextCursor;
+        this.previousCursor = previousCursor;
+        this.totalBooks = totalBooks;
+    }
+
+    public List<Book> getBooks() { return books; }
+
+    // Reloads this page, starting at its first book or whatever now follows it
+    public String getCursor() { return cursor; }
+
+    // Null on the last page
+    public String getNextCursor() { return nextCursor; }
+
+    // Null on the first page
+    public String getPreviousCursor() { return previousCursor; }
+
+    // Number of books matching the filter, not just the ones on this page
+    public int getTotalBooks() { return totalBooks; }
+
+    public boolean isEmpty() { return books.isEmpty(); }
+}
@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/* Structured query for Library.query(), e.g. available books published 1990-2000 by Herbert:
+     new BookQuery().published(1990, 2000).filter(BookFilter.AVAILABLE).author("Herbert")
+   Every condition that is set must hold. The author is a name as findBooksByAuthor() takes it,
+   title terms match anywhere in the title, in any case. Setters return the query for chaining.
+ */
+public class BookQuery {
+    // Order of the results, ties always by title and then ISBN
+    public enum Order {
+        TITLE(CatalogStore.TITLE_ORDER),
+        OLDEST(Comparator.comparingInt(Book::getPubYear).thenComparing(CatalogStore.TITLE_ORDER)),
+        NEWEST(Comparator.comparingInt((Book book) -> book.getPubYear()).reversed()
+                .thenComparing(CatalogStore.TITLE_ORDER));
+
+        private final Comparator<Book> comparator;
+
+        Order(Comparator<Book> comparator) {
+            this.comparator = comparator;
+        }
+
+        public Comparator<Book> comparator() {
+            return comparator;
+        }
+    }
+
+    private int fromYear = Integer.MIN_VALUE;
+    private int toYear = Integer.MAX_VALUE;
+    private BookFilter filter = BookFilter.ALL;
+    private String author;
+    private final List<String> titleTerms = new ArrayList<>();
+    private Order order = Order.TITLE;
+    private int limit = Integer.MAX_VALUE;
+
+    // Publication years from fromYear to toYear, both included
+    public BookQuery published(int fromYear, int toYear) {
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        return this;
+    }
+
+    public BookQuery filter(BookFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public BookQuery author(String name) {
+        this.author = name;
+        return this;
+    }
+
+    // Adds a term, a title has to contain all of them
+    public BookQuery titleContains(String term) {
+        titleTerms.add(term.toLowerCase());
+        return this;
+    }
+
+    public BookQuery orderBy(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    // At most this many books, the first ones in the query's order
+    public BookQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative.");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public int getFromYear() { return fromYear; }
+    public int getToYear() { return toYear; }
+    public BookFilter getFilter() { return filter; }
+
+    // Null when any author will do
+    public String getAuthor() { return author; }
+
+    // Lower-cased
+    public List<String> getTitleTerms() { return Collections.unmodifiableList(titleTerms); }
+
+    public Order getOrder() { return order; }
+    public int getLimit() { return limit; }
+
+    public boolean hasYearRange() {
+        return fromYear != Integer.MIN_VALUE || toYear != Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        if (hasYearRange()) parts.add("published " + fromYear + "-" + toYear);
+        if (filter != BookFilter.ALL) parts.add(filter.name().toLowerCase());
+        if (author != null) parts.add("by " + author);
+        for (String term : titleTerms) parts.add("title contains '" + term + "'");
+        parts.add("order " + order.name().toLowerCase());
+        if (limit != Integer.MAX_VALUE) parts.add("limit " + limit);
+        return String.join(", ", parts);
+    }
+}
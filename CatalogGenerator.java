@@ -0,0 +1,415 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/* Writes synthetic catalogs in the text format Library(String) reads, for benchmarks and soak tests:
+     [Donation 12] The Silent Harbor, by Okafor, Amara, 0-12-345678-9, 1987
+
+   Every record is a pure function of (seed, index), so a seed always gives the same file
+   and any line can be recomputed on its own with line(index). ISBNs are unique per record
+   (a seeded permutation of the index) with valid check digits, as ISBN-10 or ISBN-13.
+   Duplicate records reuse the ISBN of an earlier record, malformed records are corrupted
+   in one of the ways CatalogLoader.parseLine() rejects. Output is ASCII, written straight
+   to bytes without building Strings, through AtomicFile.
+
+   Usage: java CatalogGenerator <file> <records> [seed] [malformedRatio] [duplicateRatio]
+ */
+public class CatalogGenerator {
+    private static final String[] TITLE_WORDS = {
+            "Time", "Night", "Love", "Last", "House", "Life", "World", "Dark", "Secret", "Girl",
+            "Man", "Light", "River", "Day", "War", "Stars", "Lost", "History", "Water", "City",
+            "Death", "Silent", "Garden", "Fire", "King", "Shadow", "Road", "Heart", "Story", "Sea",
+            "Blood", "Island", "Winter", "Summer", "Black", "White", "Golden", "Broken", "Hidden", "Wild",
+            "Empire", "Machine", "Mountain", "Harbor", "Forest", "Queen", "Children", "Family", "Art", "Science",
+            "Introduction", "Guide", "Principles", "Handbook", "Practical", "Modern", "Theory", "Design", "Systems", "Programming",
+            "Algorithms", "Economics", "Philosophy", "Mathematics", "Physics", "Cooking", "Travel", "Music", "Letters", "Memoir",
+            "Journey", "Dream", "Promise", "Storm", "Kingdom", "Compass", "Archive", "Library", "Engine", "Voyage",
+            "Crimson", "Forgotten", "Distant", "Burning", "Frozen", "Wandering", "Quiet", "Endless", "Bright", "Ancient",
+            "Midnight", "Morning", "Glass", "Iron", "Paper", "Stone", "Bridge", "Window", "Mirror", "Door"};
+    private static final String[] LINKS = {"of", "the", "and", "in", "for", "to", "a", "on"};
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+            "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill", "Flores",
+            "Tolkien", "Herbert", "Knuth", "Austen", "Orwell", "Le Guin", "Asimov", "Dickens", "Morrison", "Pratchett",
+            "Woolf", "Okafor", "Tanaka", "Ivanova", "Kowalski", "Schmidt", "Rossi", "Dubois", "Silva", "Haddad"};
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Amara", "Kenji", "Olga", "Piotr", "Lena", "Marco", "Claire", "Ana", "Omar", "Priya"};
+    private static final String[] PREFIXES = {"Donation", "Box", "Shelf", "Lot"};
+
+    // Ways to break a line, each one makes CatalogLoader.parseLine() return null
+    private static final int MALFORMED_KINDS = 8;
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final long ISBN_SPACE = 1_000_000_000L;
+    private static final int FEISTEL_HALF_BITS = 15;
+
+    private final long seed;
+    private double malformedRatio = 0.0;
+    private double duplicateRatio = 0.0;
+    private double prefixRatio = 0.1;
+    private double isbn13Ratio = 0.3;
+
+    public CatalogGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // Share of lines that the loader must skip, 0 by default
+    public CatalogGenerator malformedRatio(double ratio) {
+        this.malformedRatio = checkRatio(ratio);
+        return this;
+    }
+
+    // Share of lines that repeat the ISBN of an earlier line, 0 by default
+    public CatalogGenerator duplicateRatio(double ratio) {
+        this.duplicateRatio = checkRatio(ratio);
+        return this;
+    }
+
+    // Share of lines with a "[Donation 12] " style prefix, 0.1 by default
+    public CatalogGenerator prefixRatio(double ratio) {
+        this.prefixRatio = checkRatio(ratio);
+        return this;
+    }
+
+    // Share of ISBNs written as ISBN-13 rather than ISBN-10, 0.3 by default
+    public CatalogGenerator isbn13Ratio(double ratio) {
+        this.isbn13Ratio = checkRatio(ratio);
+        return this;
+    }
+
+    private static double checkRatio(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("Ratio must be between 0 and 1: " + ratio);
+        }
+        return ratio;
+    }
+
+    /* O(n) time complexity, n = records
+       Writes the records to a temp file that replaces 'path' once complete.
+     */
+    public void write(Path path, long records) throws IOException {
+        AtomicFile.write(path, channel -> {
+            Line line = new Line(1 << 20);
+            for (long i = 0; i < records; i++) {
+                if (line.remaining() < Line.MAX_LINE) {
+                    line.drainTo(channel);
+                }
+                appendLine(i, line);
+                line.put('\n');
+            }
+            line.drainTo(channel);
+        });
+    }
+
+    // The line for one record, without the line break
+    public String line(long index) {
+        Line line = new Line(Line.MAX_LINE);
+        appendLine(index, line);
+        return line.toString();
+    }
+
+    public boolean isMalformed(long index) {
+        return unit(index, 0) < malformedRatio;
+    }
+
+    // True when the record reuses the ISBN of an earlier record
+    public boolean isDuplicate(long index) {
+        return index > 0 && !isMalformed(index) && unit(index, 1) < duplicateRatio;
+    }
+
+    // The key Library stores for the record, an ISBN-13 is keyed by its ISBN-10 (see Isbn)
+    public long isbn(long index) {
+        return Isbn.canonical(writtenIsbn(index));
+    }
+
+    // --- RECORD SHAPE ---
+
+    private void appendLine(long index, Line out) {
+        int kind = isMalformed(index) ? (int) (bits(index, 2) % MALFORMED_KINDS) : -1;
+        if (kind == 4) {
+            out.put("   ");
+            return;
+        }
+
+        if (kind == 3) {
+            out.put('[').put(PREFIXES[(int) (bits(index, 3) % PREFIXES.length)]).put(' ');
+            out.put(1 + bits(index, 4) % 40).put(' ');
+        } else if (unit(index, 5) < prefixRatio) {
+            out.put('[').put(PREFIXES[(int) (bits(index, 3) % PREFIXES.length)]).put(' ');
+            out.put(1 + bits(index, 4) % 40).put("] ");
+        }
+
+        appendTitle(index, out);
+        if (kind == 5) {
+            // Cut off before the ISBN, the last field is never a number
+            return;
+        }
+        out.put(kind == 0 ? " by " : ", by");
+        if (kind != 7) {
+            out.put(' ');
+            appendAuthor(index, out);
+        }
+        out.put(", ");
+        if (kind == 2) {
+            out.put("0-1X-34A6B8-9");
+        } else {
+            appendIsbn(index, out);
+        }
+        out.put(", ");
+        if (kind == 1) {
+            out.put(unit(index, 6) < 0.5 ? "n.d." : "19x9");
+        } else {
+            out.put(year(index));
+        }
+        if (kind == 6) {
+            out.put(',');
+        }
+    }
+
+    // 1-8 words, common words much more likely than rare ones, sometimes with a subtitle
+    private void appendTitle(long index, Line out) {
+        int field = 10;
+        if (unit(index, field++) < 0.2) {
+            out.put("The ");
+        }
+        int words = wordCount(unit(index, field++));
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                out.put(' ');
+                if (unit(index, field++) < 0.15) {
+                    out.put(LINKS[(int) (bits(index, field++) % LINKS.length)]).put(' ');
+                }
+            }
+            out.put(skewed(TITLE_WORDS, unit(index, field++)));
+        }
+        if (unit(index, field++) < 0.1) {
+            out.put(": ").put(skewed(TITLE_WORDS, unit(index, field++)));
+            out.put(' ').put(skewed(TITLE_WORDS, unit(index, field++)));
+        }
+        if (unit(index, field) < 0.05) {
+            out.put(" Volume ").put(1 + bits(index, field) % 12);
+        }
+    }
+
+    private static int wordCount(double u) {
+        if (u < 0.10) return 1;
+        if (u < 0.35) return 2;
+        if (u < 0.60) return 3;
+        if (u < 0.78) return 4;
+        if (u < 0.88) return 5;
+        if (u < 0.94) return 6;
+        if (u < 0.98) return 7;
+        return 8;
+    }
+
+    // "Last, First", "Last, F. M.", "Last, Last" or "Last, Last, et al"
+    private void appendAuthor(long index, Line out) {
+        double shape = unit(index, 40);
+        out.put(skewed(LAST_NAMES, unit(index, 41))).put(", ");
+        if (shape < 0.70) {
+            out.put(skewed(FIRST_NAMES, unit(index, 42)));
+        } else if (shape < 0.80) {
+            out.put(FIRST_NAMES[(int) (bits(index, 42) % FIRST_NAMES.length)].charAt(0)).put(". ");
+            out.put(FIRST_NAMES[(int) (bits(index, 43) % FIRST_NAMES.length)].charAt(0)).put('.');
+        } else {
+            out.put(skewed(LAST_NAMES, unit(index, 42)));
+            if (shape >= 0.92) {
+                out.put(", et al");
+            }
+        }
+    }
+
+    // The ISBN as the line spells it, hyphens dropped
+    private long writtenIsbn(long index) {
+        long owner = isbnOwner(index);
+        long body = isbnBody(owner);
+        if (isIsbn13(owner)) {
+            long first12 = 978_000_000_000L + body;
+            return first12 * 10 + isbn13Check(first12);
+        }
+        return body * 10 + isbn10Check(body);
+    }
+
+    // Hyphenated as 0-12-345678-9, or 978-0-12-345678-9 for ISBN-13
+    private void appendIsbn(long index, Line out) {
+        long isbn = writtenIsbn(index);
+        int digits = isIsbn13(isbnOwner(index)) ? 13 : 10;
+        char[] text = new char[digits];
+        for (int d = digits - 1; d >= 0; d--) {
+            text[d] = (char) ('0' + isbn % 10);
+            isbn /= 10;
+        }
+        int at = 0;
+        if (digits == 13) {
+            out.put(text[0]).put(text[1]).put(text[2]).put('-');
+            at = 3;
+        }
+        out.put(text[at]).put('-').put(text[at + 1]).put(text[at + 2]).put('-');
+        for (int d = at + 3; d < at + 9; d++) {
+            out.put(text[d]);
+        }
+        out.put('-').put(text[at + 9]);
+    }
+
+    // Nine in ten from the last 80 years, the rest spread back to 1450
+    private long year(long index) {
+        double u = unit(index, 50);
+        if (unit(index, 51) < 0.9) {
+            return 2025 - (long) (80 * u * u);
+        }
+        return 1450 + (long) (495 * u);
+    }
+
+    // The earlier valid, non-duplicate record whose ISBN a duplicate repeats
+    private long isbnOwner(long index) {
+        long owner = index;
+        while (isDuplicate(owner)) {
+            long earlier = bits(owner, 60) % owner;
+            while (earlier > 0 && isMalformed(earlier)) {
+                earlier--;
+            }
+            if (isMalformed(earlier)) {
+                return index;
+            }
+            owner = earlier;
+        }
+        return owner;
+    }
+
+    private long isbnBody(long owner) {
+        return permute(Math.floorMod(owner, ISBN_SPACE));
+    }
+
+    /* A seeded permutation of [0, 10^9): a 4-round Feistel network permutes 30-bit values
+       and is re-applied until the result falls below 10^9 (about 1.07 rounds on average).
+       Distinct records get distinct ISBN bodies that look random rather than sequential.
+     */
+    private long permute(long value) {
+        int mask = (1 << FEISTEL_HALF_BITS) - 1;
+        do {
+            int left = (int) (value >>> FEISTEL_HALF_BITS);
+            int right = (int) value & mask;
+            for (int round = 0; round < 4; round++) {
+                int next = left ^ ((int) mix(seed * GOLDEN + round * 0x632BE59BD9B4E019L + right) & mask);
+                left = right;
+                right = next;
+            }
+            value = ((long) left << FEISTEL_HALF_BITS) | right;
+        } while (value >= ISBN_SPACE);
+        return value;
+    }
+
+    // An ISBN-10 whose check digit would be 'X' is written as ISBN-13 instead, so every ISBN is all digits
+    private boolean isIsbn13(long owner) {
+        return unit(owner, 61) < isbn13Ratio || isbn10Check(isbnBody(owner)) == 10;
+    }
+
+    private static int isbn10Check(long body) {
+        int sum = 0;
+        for (int weight = 2; weight <= 10; weight++, body /= 10) {
+            sum += weight * (int) (body % 10);
+        }
+        return (11 - sum % 11) % 11;
+    }
+
+    private static int isbn13Check(long first12) {
+        int sum = 0;
+        for (int position = 0; position < 12; position++, first12 /= 10) {
+            sum += (position % 2 == 0 ? 3 : 1) * (int) (first12 % 10);
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    // Squared draw, so earlier entries of a list come up much more often than later ones
+    private static String skewed(String[] words, double u) {
+        return words[(int) (words.length * u * u)];
+    }
+
+    // --- RANDOMNESS ---
+
+    // Independent 64 random bits per (record, field)
+    private long bits(long index, int field) {
+        return mix(seed * GOLDEN + index * 0xD1B54A32D192ED03L + field * 0xAEF17502108EF2D9L) >>> 1;
+    }
+
+    private double unit(long index, int field) {
+        return (bits(index, field) >>> 10) * 0x1.0p-53;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // ASCII line builder over a reusable byte buffer
+    private static class Line {
+        static final int MAX_LINE = 1024;
+
+        private final ByteBuffer buffer;
+
+        Line(int capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+
+        Line put(char c) {
+            buffer.put((byte) c);
+            return this;
+        }
+
+        Line put(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                buffer.put((byte) s.charAt(i));
+            }
+            return this;
+        }
+
+        Line put(long value) {
+            if (value >= 10) {
+                put(value / 10);
+            }
+            buffer.put((byte) ('0' + value % 10));
+            return this;
+        }
+
+        void drainTo(FileChannel channel) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java CatalogGenerator <file> <records> [seed] [malformedRatio] [duplicateRatio]");
+            return;
+        }
+        long records = Long.parseLong(args[1]);
+        CatalogGenerator generator = new CatalogGenerator(args.length > 2 ? Long.parseLong(args[2]) : 0)
+                .malformedRatio(args.length > 3 ? Double.parseDouble(args[3]) : 0)
+                .duplicateRatio(args.length > 4 ? Double.parseDouble(args[4]) : 0);
+        long start = System.nanoTime();
+        generator.write(Paths.get(args[0]), records);
+        System.out.printf("Wrote %d records to %s in %d ms.\n", records, args[0],
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* Checks that generated catalogs are reproducible from their seed and that the
+   loader reads exactly the records the generator meant to be valid.
+ */
+public class CatalogGeneratorTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Catalog Generator Test ===");
+        Path dir = Files.createTempDirectory("catalog-generator-test");
+        Path first = dir.resolve("first.txt");
+        Path second = dir.resolve("second.txt");
+        Path other = dir.resolve("other.txt");
+        int records = 10_000;
+
+        try {
+            CatalogGenerator generator = new CatalogGenerator(7).malformedRatio(0.05).duplicateRatio(0.05);
+            generator.write(first, records);
+            new CatalogGenerator(7).malformedRatio(0.05).duplicateRatio(0.05).write(second, records);
+            new CatalogGenerator(8).malformedRatio(0.05).duplicateRatio(0.05).write(other, records);
+
+            System.out.println("\n1. Seeds are reproducible:");
+            byte[] bytes = Files.readAllBytes(first);
+            check("same seed, same bytes", Arrays.equals(bytes, Files.readAllBytes(second)));
+            check("other seed, other bytes", !Arrays.equals(bytes, Files.readAllBytes(other)));
+            List<String> lines = Files.readAllLines(first, StandardCharsets.US_ASCII);
+            boolean sameLines = lines.size() == records;
+            for (int i = 0; i < records && sameLines; i++) {
+                sameLines = lines.get(i).equals(generator.line(i));
+            }
+            check("line(i) matches line i of the file", sameLines);
+
+            System.out.println("\n2. Malformed lines are skipped, the rest parse as generated:");
+            boolean malformedSkipped = true;
+            boolean validParsed = true;
+            boolean checkDigits = true;
+            int malformed = 0;
+            int duplicates = 0;
+            Set<Long> isbns = new HashSet<>();
+            for (int i = 0; i < records; i++) {
+                Book book = CatalogLoader.parseLine(lines.get(i));
+                if (generator.isMalformed(i)) {
+                    malformed++;
+                    malformedSkipped &= book == null;
+                    continue;
+                }
+                validParsed &= book != null && book.getISBN() == generator.isbn(i)
+                        && !book.getTitle().isEmpty() && !book.getAuthor().isEmpty();
+                checkDigits &= validCheckDigit(lines.get(i));
+                if (generator.isDuplicate(i)) {
+                    duplicates++;
+                }
+                isbns.add(generator.isbn(i));
+            }
+            check("malformed lines skipped (" + malformed + ")", malformedSkipped && malformed > 300 && malformed < 700);
+            check("valid lines parse to their ISBN", validParsed);
+            check("ISBN check digits are valid", checkDigits);
+            check("duplicates reuse ISBNs (" + duplicates + ")",
+                    duplicates > 300 && isbns.size() == records - malformed - duplicates);
+
+            System.out.println("\n3. Library loads every distinct valid record:");
+            Library library = new Library(first.toString());
+            check(isbns.size() + " books", library.getTotalBooks() == isbns.size());
+        } finally {
+            for (Path path : new Path[]{first, second, other}) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // ISBN-10 weights 10..1 must sum to a multiple of 11, ISBN-13 weights 1,3,1.. to a multiple of 10
+    private static boolean validCheckDigit(String line) {
+        String[] fields = line.split(", ");
+        String isbn = fields[fields.length - 2].replace("-", "");
+        int sum = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            int digit = isbn.charAt(i) - '0';
+            sum += isbn.length() == 10 ? (10 - i) * digit : (i % 2 == 0 ? 1 : 3) * digit;
+        }
+        return isbn.length() == 10 ? sum % 11 == 0 : isbn.length() == 13 && sum % 10 == 0;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/* Append-only log of catalog mutations, replayed on top of the last snapshot at startup.
+   Every record sets state rather than changing it (put this book, drop this ISBN, set this
+   availability), so replaying a record that is already in the snapshot is harmless.
+
+   Record layout: int payload length, payload, int CRC32 of the payload.
+   Payload: byte op, long ISBN, then for ADD int pubYear, int availability and the
+   UTF-8 title and author (each int length + bytes), for AVAILABILITY int availability.
+
+   Appends only go to a memory buffer. commit() writes and fsyncs everything appended
+   so far, so threads committing at the same time share a single fsync (group commit).
+   When that write fails the whole group fails: the file is cut back to where the group
+   started, so no torn record sits between intact ones, and every commit() of a record in
+   the group throws. If even the cut fails the journal refuses all further commits.
+ */
+public class CatalogJournal implements Closeable {
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte AVAILABILITY = 3;
+
+    // Callbacks for replay(), in the order the records were logged
+    public interface Handler {
+        void add(Book book);
+        void remove(long isbn);
+        void availability(long isbn, int availability);
+    }
+
+    private final FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+    private long appendedSequence;
+    // Every record up to here is either on disk or in one of the failed groups
+    private long durableSequence;
+    // First sequence of each failed group -> that group, failures are rare and kept for good
+    private final TreeMap<Long, FailedGroup> failedGroups = new TreeMap<>();
+    // Set when a failed group could not be cut off the file
+    private IOException broken;
+    private final Object syncLock = new Object();
+    private final CRC32 crc = new CRC32();
+
+    private CatalogJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    private static class FailedGroup {
+        final long last;
+        final IOException cause;
+
+        FailedGroup(long last, IOException cause) {
+            this.last = last;
+            this.cause = cause;
+        }
+    }
+
+    /* Replays every intact record into the handler and opens the journal for appending.
+       A torn record at the end (crash mid-write) is cut off, nothing after it was committed.
+     */
+    public static CatalogJournal open(Path path, Handler handler) throws IOException {
+        return open(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE), handler);
+    }
+
+    // Takes over the channel, which must be readable and writable; tests pass one that fails on demand
+    static CatalogJournal open(FileChannel channel, Handler handler) throws IOException {
+        try {
+            long validEnd = replay(channel, handler);
+            if (validEnd < channel.size()) {
+                channel.truncate(validEnd);
+                channel.force(true);
+            }
+            channel.position(validEnd);
+            return new CatalogJournal(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Returns the file offset just past the last intact record
+    private static long replay(FileChannel channel, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), 1 << 16));
+        CRC32 crc = new CRC32();
+        long offset = 0;
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                if (length < 9 || length > channel.size() - offset) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if (in.readInt() != (int) crc.getValue()) {
+                    break;
+                }
+                offset += 4 + length + 4;
+            } catch (EOFException e) {
+                break;
+            }
+            apply(ByteBuffer.wrap(payload), handler);
+        }
+        return offset;
+    }
+
+    private static void apply(ByteBuffer payload, Handler handler) throws IOException {
+        byte op = payload.get();
+        long isbn = payload.getLong();
+        switch (op) {
+            case ADD:
+                int pubYear = payload.getInt();
+                int availability = payload.getInt();
+                String title = readString(payload);
+                String author = readString(payload);
+                handler.add(new Book(title, author, isbn, pubYear, availability));
+                break;
+            case REMOVE:
+                handler.remove(isbn);
+                break;
+            case AVAILABILITY:
+                handler.availability(isbn, payload.getInt());
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + op);
+        }
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Each log method returns the record's sequence number, to pass to commit()
+    public synchronized long logAdd(Book book) {
+        byte[] title = book.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] author = book.getAuthor().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + 4 + 4 + title.length + 4 + author.length);
+        payload.put(ADD).putLong(book.getISBN()).putInt(book.getPubYear()).putInt(book.getAvailability());
+        payload.putInt(title.length).put(title).putInt(author.length).put(author);
+        return append(payload);
+    }
+
+    public synchronized long logRemove(long isbn) {
+        return append(ByteBuffer.allocate(1 + 8).put(REMOVE).putLong(isbn));
+    }
+
+    public synchronized long logAvailability(long isbn, int availability) {
+        return append(ByteBuffer.allocate(1 + 8 + 4).put(AVAILABILITY).putLong(isbn).putInt(availability));
+    }
+
+    private long append(ByteBuffer payload) {
+        payload.flip();
+        int length = payload.remaining();
+        crc.reset();
+        crc.update(payload.duplicate());
+        if (pending.remaining() < 4 + length + 4) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + 8 + length));
+            pending.flip();
+            pending = bigger.put(pending);
+        }
+        pending.putInt(length).put(payload).putInt((int) crc.getValue());
+        return ++appendedSequence;
+    }
+
+    /* Returns once the record with this sequence number is on disk, or throws if the write
+       of its group failed.
+       Whoever gets the sync lock flushes every record appended so far with one fsync,
+       commits waiting behind it usually find their record already durable.
+     */
+    public void commit(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (durableSequence >= sequence) {
+                Map.Entry<Long, FailedGroup> failed = failedGroups.floorEntry(sequence);
+                if (failed != null && sequence <= failed.getValue().last) {
+                    throw new IOException("Journal write failed: " + failed.getValue().cause.getMessage(),
+                            failed.getValue().cause);
+                }
+                return;
+            }
+            if (broken != null) {
+                throw new IOException("Journal is unusable after a failed write: " + broken.getMessage(), broken);
+            }
+            long batchEnd;
+            synchronized (this) {
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                batchEnd = appendedSequence;
+            }
+            long batchStart = channel.position();
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failedGroups.put(durableSequence + 1, new FailedGroup(batchEnd, e));
+                durableSequence = batchEnd;
+                dropFailedGroup(batchStart, e);
+                throw e;
+            } finally {
+                writing.clear();
+            }
+            durableSequence = batchEnd;
+        }
+    }
+
+    // Cuts a partly written group off the end of the file, later groups append after the last intact one
+    private void dropFailedGroup(long batchStart, IOException failure) {
+        try {
+            channel.truncate(batchStart);
+            channel.position(batchStart);
+        } catch (IOException e) {
+            e.addSuppressed(failure);
+            broken = e;
+        }
+    }
+
+    // Drops every record, for use right after the catalog was written to a fresh snapshot
+    public void reset() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                pending.clear();
+                durableSequence = appendedSequence;
+            }
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            broken = null;
+        }
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (syncLock) {
+                // Nothing to do when the last group is on disk or already failed
+                if (durableSequence < appendedSequence()) {
+                    commit(appendedSequence());
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private synchronized long appendedSequence() {
+        return appendedSequence;
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Checks that journaled changes survive a restart, that a torn last record is
+   dropped, that compaction folds the journal into the snapshot, that
+   concurrent commits all end up in the log, and that a failed write fails its
+   whole group without spoiling the records around it.
+ */
+public class CatalogJournalTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Catalog Journal Test ===");
+        Path dir = Files.createTempDirectory("catalog-journal-test");
+        Path snapshot = dir.resolve("catalog.snap");
+        Path journal = dir.resolve("catalog.journal");
+
+        try {
+            System.out.println("\n1. Changes are replayed after a restart:");
+            Library library = Library.openDurable(snapshot.toString(), journal.toString());
+            library.addBook(new Book("Clean Code", "Martin, Robert", 132350882L, 2008));
+            library.addBook(new Book("Dune", "Herbert, Frank", 441172717L, 1965));
+            library.addBook(new Book("The Hobbit", "Tolkien, J. R. R.", 261102217L, 1937));
+            library.borrowBook(441172717L);
+            library.removeBook(261102217L);
+            List<String> expected = describe(library);
+            library.closeJournal();
+
+            Library reopened = Library.openDurable(snapshot.toString(), journal.toString());
+            check("same books and availability", expected.equals(describe(reopened)));
+            reopened.closeJournal();
+
+            System.out.println("\n2. A torn record at the end is dropped:");
+            long intactSize = Files.size(journal);
+            Files.write(journal, new byte[]{0, 0, 0, 40, 3, 1, 2}, StandardOpenOption.APPEND);
+            reopened = Library.openDurable(snapshot.toString(), journal.toString());
+            check("same books and availability", expected.equals(describe(reopened)));
+            check("journal truncated to the last intact record", Files.size(journal) == intactSize);
+
+            System.out.println("\n3. Compaction folds the journal into the snapshot:");
+            reopened.compactJournal();
+            check("journal is empty", Files.size(journal) == 0);
+            reopened.returnBook(441172717L);
+            reopened.borrowBook(132350882L);
+            expected = describe(reopened);
+            reopened.closeJournal();
+            Library compacted = Library.openDurable(snapshot.toString(), journal.toString());
+            check("snapshot plus new records give the same state", expected.equals(describe(compacted)));
+            compacted.closeJournal();
+
+            System.out.println("\n4. Concurrent commits share fsyncs and none are lost:");
+            Path shared = dir.resolve("shared.journal");
+            CatalogJournal log = CatalogJournal.open(shared, new CountingHandler());
+            int threads = 8;
+            int perThread = 250;
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final long base = t * 1000L;
+                Thread worker = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            log.commit(log.logAvailability(base + i, i % 2));
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            log.close();
+            CountingHandler counter = new CountingHandler();
+            CatalogJournal.open(shared, counter).close();
+            check("all " + threads * perThread + " records replayed", counter.count.get() == threads * perThread);
+            Files.deleteIfExists(shared);
+
+            System.out.println("\n5. A write that fails partway fails its group and nothing else:");
+            Path faulty = dir.resolve("faulty.journal");
+            FailingChannel channel = new FailingChannel(FileChannel.open(faulty, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+            CatalogJournal failing = CatalogJournal.open(channel, new CountingHandler());
+            failing.commit(failing.logAvailability(1, 1));
+            long second = failing.logAdd(new Book("Lost", "Writer, A", 2, 2000));
+            long third = failing.logAvailability(3, 0);
+            channel.failAfter = 10;
+            check("committer sees the failure", throwsOnCommit(failing, third));
+            check("every record of the group fails", throwsOnCommit(failing, second));
+            failing.commit(failing.logAvailability(4, 1));
+            failing.logAvailability(5, 0);
+            failing.close();
+            RecordingHandler replayed = new RecordingHandler();
+            CatalogJournal.open(faulty, replayed).close();
+            check("replay has the records before and after the group", replayed.isbns.equals(List.of(1L, 4L, 5L)));
+            Files.deleteIfExists(faulty);
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static class CountingHandler implements CatalogJournal.Handler {
+        final AtomicInteger count = new AtomicInteger();
+
+        public void add(Book book) { count.incrementAndGet(); }
+        public void remove(long isbn) { count.incrementAndGet(); }
+        public void availability(long isbn, int availability) { count.incrementAndGet(); }
+    }
+
+    private static boolean throwsOnCommit(CatalogJournal journal, long sequence) {
+        try {
+            journal.commit(sequence);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static class RecordingHandler implements CatalogJournal.Handler {
+        final List<Long> isbns = new ArrayList<>();
+
+        public void add(Book book) { isbns.add(book.getISBN()); }
+        public void remove(long isbn) { isbns.add(isbn); }
+        public void availability(long isbn, int availability) { isbns.add(isbn); }
+    }
+
+    /* File channel that, once failAfter is set, writes that many more bytes and then
+       throws from write(), as a full disk would. Everything else goes to the real channel.
+     */
+    private static class FailingChannel extends FileChannel {
+        private final FileChannel file;
+        int failAfter = -1;
+
+        FailingChannel(FileChannel file) {
+            this.file = file;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failAfter < 0) {
+                return file.write(src);
+            }
+            if (failAfter == 0) {
+                failAfter = -1;
+                throw new IOException("No space left on device");
+            }
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + Math.min(failAfter, part.remaining()));
+            int written = file.write(part);
+            src.position(src.position() + written);
+            failAfter -= written;
+            return written;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return file.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return file.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return file.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return file.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            file.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            file.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            file.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return file.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return file.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return file.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+
+    // Every book in title order with its availability, one line each
+    private static List<String> describe(Library library) {
+        List<String> lines = new ArrayList<>();
+        String cursor = null;
+        do {
+            BookPage page = library.getPage(BookFilter.ALL, cursor, 100);
+            for (Book book : page.getBooks()) {
+                lines.add(book.toString() + " [" + book.getAvailability() + "]");
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return lines;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Reads the "Title, by Author, 0-12-345678-9, 2001" catalog format for Library(String).
+   The file is cut into chunks that end on a line break, the chunks are parsed in
+   parallel on the common ForkJoinPool and merged in file order, so a later line
+   with the same ISBN still replaces an earlier one. UTF-8 and ASCII chunks are
+   memory-mapped and parsed by MappedCatalogParser, other charsets are decoded first.
+ */
+public class CatalogLoader {
+    // Files smaller than this are parsed as one chunk on the calling thread
+    static final long PARALLEL_THRESHOLD = 1 << 20;
+    static final int CHUNK_SIZE = 8 << 20;
+
+    public static LongBookMap load(Path path) throws IOException {
+        return load(path, null);
+    }
+
+    // Also adds the number of lines that were skipped without being blank to rejectedLines
+    public static LongBookMap load(Path path, LongAdder rejectedLines) throws IOException {
+        return load(path, rejectedLines, null);
+    }
+
+    // Also shares equal titles and authors through the pool, unless it is null
+    public static LongBookMap load(Path path, LongAdder rejectedLines, StringPool pool) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            // Chunks can only be cut on '\n' bytes if the charset encodes it as one byte
+            if (size < PARALLEL_THRESHOLD || "\n".getBytes(charset).length != 1) {
+                tasks.add(new ChunkTask(channel, charset, 0, size, pool));
+            } else {
+                long start = 0;
+                while (start < size) {
+                    long end = lineEndAfter(channel, Math.min(start + CHUNK_SIZE, size), size);
+                    tasks.add(new ChunkTask(channel, charset, start, end, pool));
+                    start = end;
+                }
+            }
+
+            try {
+                if (tasks.size() == 1) {
+                    tasks.get(0).invoke();
+                } else {
+                    ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>() {
+                        @Override
+                        protected Void compute() {
+                            ForkJoinTask.invokeAll(tasks);
+                            return null;
+                        }
+                    });
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int parsed = 0;
+            for (ChunkTask task : tasks) {
+                parsed += task.join().size();
+                if (rejectedLines != null) {
+                    rejectedLines.add(task.rejected);
+                }
+            }
+            LongBookMap catalog = new LongBookMap(parsed);
+            for (ChunkTask task : tasks) {
+                for (Book book : task.join()) {
+                    catalog.put(book.getISBN(), book);
+                }
+            }
+            return catalog;
+        }
+    }
+
+    /* Parses one line the way Library(String) always has, returns null for lines it skips.
+       Handles an optional "[...]" prefix and hyphenated ISBNs. A trailing comma makes the
+       year field unparsable, so those lines are skipped as well.
+     */
+    public static Book parseLine(String line) {
+        line = line.trim();
+
+        if (line.isEmpty()) return null;
+
+        if (line.startsWith("[")) {
+            int endBracket = line.indexOf("]");
+            if (endBracket != -1 && endBracket < line.length() - 1) {
+                line = line.substring(endBracket + 1).trim();
+            } else {
+                return null;
+            }
+        }
+
+        int lastComma = line.lastIndexOf(',');
+        if (lastComma == line.length() - 1) {
+            lastComma = line.lastIndexOf(',', lastComma - 1);
+        }
+
+        if (lastComma == -1) return null;
+
+        String yearString = line.substring(lastComma + 1).trim();
+        String front = line.substring(0, lastComma).trim();
+
+        int isbnComma = front.lastIndexOf(',');
+        if (isbnComma == -1) return null;
+
+        String isbnString = front.substring(isbnComma + 1).
+                trim().replaceAll("-", "");
+        String titleAndAuthor = front.substring(0, isbnComma).trim();
+
+        int byIndex = titleAndAuthor.indexOf(", by");
+        // Nothing after ", by" used to throw out of the constructor, now the line is skipped
+        if (byIndex == -1 || byIndex + 5 > titleAndAuthor.length()) return null;
+
+        String title = titleAndAuthor.substring(0, byIndex).trim();
+        String authorBlock = titleAndAuthor.
+                substring(byIndex + 5).trim();
+
+        // Stores the author block directly (e.g., "Perez, Lee, et al"), Library's AuthorIndex splits it into names
+        String authorString = authorBlock;
+
+        try {
+            int releaseYear = Integer.parseInt(yearString);
+            // A trailing 'X' is only taken as the check digit of a valid ISBN-10
+            boolean checkX = isbnString.endsWith("X") || isbnString.endsWith("x");
+            long ISBN = checkX ? Isbn.parse(isbnString) : Isbn.canonical(Long.parseLong(isbnString));
+            if (ISBN == -1) return null;
+
+            return new Book(title, authorString, ISBN, releaseYear);
+        } catch (NumberFormatException e) {
+            // Error or incomplete line
+            return null;
+        }
+    }
+
+    // Position just past the first '\n' at or after 'from', or 'size' if there is none
+    private static long lineEndAfter(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long pos = from;
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    // Parses the lines of [start, end) into books, in file order
+    private static class ChunkTask extends RecursiveTask<List<Book>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Charset charset;
+        private final long start;
+        private final long end;
+        private final StringPool pool;
+        // Written before compute() returns, read after join()
+        private int rejected;
+
+        ChunkTask(FileChannel channel, Charset charset, long start, long end, StringPool pool) {
+            this.channel = channel;
+            this.charset = charset;
+            this.start = start;
+            this.end = end;
+            this.pool = pool;
+        }
+
+        @Override
+        protected List<Book> compute() {
+            try {
+                if (MappedCatalogParser.supports(charset)) {
+                    List<Book> books = new ArrayList<>();
+                    rejected = MappedCatalogParser.parse(
+                            channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), charset, books, pool);
+                    return books;
+                }
+                ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, start + bytes.position()) < 0) break;
+                }
+                bytes.flip();
+                String text = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(bytes).toString();
+                List<Book> books = new ArrayList<>();
+                rejected = parseLines(text, books, pool);
+                return books;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Splits on the same line terminators java.util.Scanner.nextLine() recognises
+    static List<Book> parseLines(String text) {
+        List<Book> books = new ArrayList<>();
+        parseLines(text, books);
+        return books;
+    }
+
+    // Appends the books in text order, returns the number of lines skipped that were not blank
+    static int parseLines(String text, List<Book> books) {
+        return parseLines(text, books, null);
+    }
+
+    // Same, sharing titles and authors through the pool unless it is null
+    static int parseLines(String text, List<Book> books, StringPool pool) {
+        int rejected = 0;
+        int lineStart = 0;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : '\n';
+            if (c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085') {
+                String line = text.substring(lineStart, i);
+                Book book = parseLine(line);
+                if (book != null && pool != null) {
+                    books.add(new Book(pool.intern(book.getTitle()), pool.intern(book.getAuthor()),
+                            book.getISBN(), book.getPubYear()));
+                } else if (book != null) {
+                    books.add(book);
+                } else if (!line.trim().isEmpty()) {
+                    rejected++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return rejected;
+    }
+}
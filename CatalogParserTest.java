@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* Differential test: MappedCatalogParser must accept exactly the lines that
+   CatalogLoader.parseLine() accepts, and produce the same books from them.
+ */
+public class CatalogParserTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Catalog Parser Differential Test ===");
+
+        List<String> lines = new ArrayList<>();
+        // Shapes the loader has to handle, valid and invalid
+        String[] handWritten = {
+                "The Art of Programming, by Knuth, Donald, 0-12-345678-9, 1968",
+                "[Donation 12] Clean Code, by Martin, Robert, 0-13-235088-2, 2008",
+                "[Donation 12]",
+                "[] Empty prefix, by X, 123, 2000",
+                "[no closing bracket, by X, 123, 2000",
+                "Trailing comma, by Perez, Lee, et al, 0-26-203384-4, 1990,",
+                "Two trailing commas, by A, 1, 2000,,",
+                "No by here, Smith, 1234567890, 2001",
+                "Nothing after by, by, 123, 2000",
+                "Short, by",
+                "Glued author, byron, 1234567890, 2001",
+                "Signed, by A, +123, +2001",
+                "Negative year, by A, 123, -44",
+                "Sign only, by A, +, 2001",
+                "Hyphen only, by A, ---, 2001",
+                "Hyphen sign, by A, -+12, 2001",
+                "Double sign, by A, ++12, 2001",
+                "Inner space, by A, 12 34, 2001",
+                "Space hyphen, by A, - 12, 2001",
+                "Year overflow, by A, 123, 2147483648",
+                "Year min, by A, 123, -2147483648",
+                "Year max, by A, 123, 2147483647",
+                "ISBN max, by A, 9223372036854775807, 2001",
+                "ISBN overflow, by A, 9223372036854775808, 2001",
+                "Leading zeros, by A, 0000000000000000000000123, 0000002001",
+                "Tabs\t, by\tA\t,\t123\t,\t2001\t",
+                "  padded  ,  by  A  ,  123  ,  2001  ",
+                "Unicode title \u00dcber, by M\u00fcller, J\u00fcrgen, 3-16-148410-0, 1999",
+                "Multibyte after by, by\u00dcber, 123, 2001",
+                "Arabic digits, by A, 123, \u0662\u0660\u0660\u0661",
+                "Fullwidth ISBN, by A, \uff11\uff12\uff13, 2001",
+                "Line\u2028separator, by A, 123, 2001",
+                "Next\u0085line, by A, 123, 2001",
+                "Para\u2029graph, by A, 123, 2001",
+                "Emoji \ud83d\udcda, by \ud83d\udcda, 123, 2001",
+                "Surrogate after by, by\ud83d\udcda, 123, 2001",
+                ", by A, 123, 2001",
+                "Empty fields, by , , ",
+                "",
+                "   ",
+                ",",
+                ",,",
+                "just text",
+        };
+        for (String line : handWritten) {
+            lines.add(line);
+        }
+
+        // Random lines assembled from the same pieces, seeded so failures are repeatable
+        Random random = new Random(42);
+        String[] pieces = {"The", "and", "\u00dcber", ",", ", by", " by ", "[", "]", "-", "+", " ",
+                "\t", "0", "12", "345678", "9", "2001", "x", "et al", "\u0663"};
+        for (int i = 0; i < 200000; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (i % 2 == 0) {
+                // Mostly well-formed, with random noise inside each field
+                sb.append(randomField(random, pieces)).append(", by ").append(randomField(random, pieces))
+                        .append(", ").append(randomField(random, pieces))
+                        .append(", ").append(randomField(random, pieces));
+            } else {
+                int count = 1 + random.nextInt(12);
+                for (int j = 0; j < count; j++) {
+                    sb.append(pieces[random.nextInt(pieces.length)]);
+                }
+            }
+            lines.add(sb.toString());
+        }
+
+        System.out.println("\n1. Comparing line by line:");
+        for (String line : lines) {
+            compareLine(line);
+        }
+        System.out.printf("  %d lines compared, %d mismatches\n", lines.size(), failures);
+
+        System.out.println("\n2. Comparing a memory-mapped file:");
+        compareMappedFile(lines);
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String randomField(Random random, String[] pieces) {
+        StringBuilder sb = new StringBuilder();
+        int count = random.nextInt(3);
+        for (int j = 0; j < count; j++) {
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static void compareLine(String line) {
+        List<Book> expected = CatalogLoader.parseLines(line);
+        List<Book> actual = new ArrayList<>();
+        MappedCatalogParser.parse(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, actual);
+        if (!sameBooks(expected, actual)) {
+            failures++;
+            if (failures <= 20) {
+                System.out.printf("  MISMATCH for \"%s\": expected %s, got %s\n", line, expected, actual);
+            }
+        }
+    }
+
+    private static void compareMappedFile(List<String> lines) throws IOException {
+        Path file = Files.createTempFile("catalog-parser-test", ".txt");
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            List<Book> expected = CatalogLoader.parseLines(text);
+
+            List<Book> actual = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedCatalogParser.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                        StandardCharsets.UTF_8, actual);
+            }
+            boolean same = sameBooks(expected, actual);
+            if (!same) {
+                failures++;
+            }
+            System.out.printf("  %d books parsed from %d lines: %s\n", actual.size(), lines.size(),
+                    same ? "MATCH" : "MISMATCH (expected " + expected.size() + ")");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static boolean sameBooks(List<Book> expected, List<Book> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Book a = expected.get(i);
+            Book b = actual.get(i);
+            if (!a.getTitle().equals(b.getTitle()) || !a.getAuthor().equals(b.getAuthor())
+                    || a.getISBN() != b.getISBN() || a.getPubYear() != b.getPubYear()
+                    || a.getAvailability() != b.getAvailability()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/* Binary catalog snapshot, a faster cold start than re-parsing the text format.
+   Unlike the text format it keeps each book's availability.
+
+   Layout (big-endian):
+     header      magic "LIBS", version, book count n, string heap size
+     isbns       long[n]
+     pubYears    int[n]
+     available   int[n]
+     offsets     int[2n + 1], string k is heap[offsets[k], offsets[k + 1]),
+                 the title of book i is string 2i and its author is string 2i + 1
+     heap        UTF-8 bytes of every title and author
+ */
+public class CatalogSnapshot {
+    private static final int MAGIC = 0x4C494253;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // Books are written in iteration order, every section in one pass
+    public static void write(Path path, Collection<Book> books) throws IOException {
+        AtomicFile.write(path, channel -> {
+            long n = books.size();
+            long isbnStart = HEADER_BYTES;
+            long yearStart = isbnStart + n * 8;
+            long availabilityStart = yearStart + n * 4;
+            long offsetStart = availabilityStart + n * 4;
+            long heapStart = offsetStart + (2 * n + 1) * 4;
+
+            Section isbns = new Section(channel, isbnStart);
+            Section years = new Section(channel, yearStart);
+            Section availability = new Section(channel, availabilityStart);
+            Section offsets = new Section(channel, offsetStart);
+            Section heap = new Section(channel, heapStart);
+
+            long heapSize = 0;
+            offsets.putInt(0);
+            for (Book book : books) {
+                isbns.putLong(book.getISBN());
+                years.putInt(book.getPubYear());
+                availability.putInt(book.getAvailability());
+                for (String value : new String[]{book.getTitle(), book.getAuthor()}) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    heap.put(bytes);
+                    heapSize += bytes.length;
+                    if (heapSize > Integer.MAX_VALUE) {
+                        throw new IOException("Snapshot string heap is larger than 2 GB.");
+                    }
+                    offsets.putInt((int) heapSize);
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt((int) n).putInt((int) heapSize).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            isbns.flush();
+            years.flush();
+            availability.flush();
+            offsets.flush();
+            heap.flush();
+        });
+    }
+
+    // Maps each section read-only and materializes the books in snapshot order
+    public static List<Book> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a catalog snapshot: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a catalog snapshot: " + path);
+            }
+            int n = header.getInt();
+            int heapSize = header.getInt();
+
+            long isbnStart = HEADER_BYTES;
+            long yearStart = isbnStart + (long) n * 8;
+            long availabilityStart = yearStart + (long) n * 4;
+            long offsetStart = availabilityStart + (long) n * 4;
+            long heapStart = offsetStart + (2L * n + 1) * 4;
+            if (n < 0 || heapSize < 0 || channel.size() != heapStart + heapSize) {
+                throw new IOException("Truncated catalog snapshot: " + path);
+            }
+
+            ByteBuffer isbns = channel.map(FileChannel.MapMode.READ_ONLY, isbnStart, (long) n * 8);
+            ByteBuffer years = channel.map(FileChannel.MapMode.READ_ONLY, yearStart, (long) n * 4);
+            ByteBuffer availability = channel.map(FileChannel.MapMode.READ_ONLY, availabilityStart, (long) n * 4);
+            ByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetStart, (2L * n + 1) * 4);
+            ByteBuffer heap = channel.map(FileChannel.MapMode.READ_ONLY, heapStart, heapSize);
+
+            List<Book> books = new ArrayList<>(n);
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < n; i++) {
+                String[] strings = new String[2];
+                for (int k = 0; k < 2; k++) {
+                    int start = offsets.getInt((2 * i + k) * 4);
+                    int end = offsets.getInt((2 * i + k + 1) * 4);
+                    if (start < 0 || end < start || end > heapSize) {
+                        throw new IOException("Corrupt catalog snapshot: " + path);
+                    }
+                    if (scratch.length < end - start) {
+                        scratch = new byte[Math.max(end - start, scratch.length * 2)];
+                    }
+                    heap.get(start, scratch, 0, end - start);
+                    strings[k] = new String(scratch, 0, end - start, StandardCharsets.UTF_8);
+                }
+                books.add(new Book(strings[0], strings[1], isbns.getLong(i * 8),
+                        years.getInt(i * 4), availability.getInt(i * 4)));
+            }
+            return books;
+        }
+    }
+
+    // Buffered sequential writer for one section of the file, using positional writes
+    private static class Section {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private long position;
+
+        Section(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/* Round-trip test for the binary snapshot: text -> snapshot -> text must give back
+   the same catalog, and the snapshot must also keep availability. Concurrent saves of
+   one file must each leave a complete file.
+ */
+public class CatalogSnapshotTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Catalog Snapshot Round-Trip Test ===");
+        Path dir = Files.createTempDirectory("catalog-snapshot-test");
+        Path text = dir.resolve("catalog.txt");
+        Path snapshot = dir.resolve("catalog.snap");
+        Path textFromLibrary = dir.resolve("from-library.txt");
+        Path textFromSnapshot = dir.resolve("from-snapshot.txt");
+
+        try {
+            Files.write(text, Arrays.asList(
+                    "The Art of Programming, by Knuth, Donald, 0-12-345678-9, 1968",
+                    "[Donation 3] Clean Code, by Martin, Robert, 0-13-235088-2, 2008",
+                    "Design Patterns, by Gamma, Helm, et al, 0-20-163361-2, 1994",
+                    "Dune, by Herbert, Frank, 0-44-117271-7, 1965",
+                    "Dune, by Someone Else, 0-44-117271-8, 1999",
+                    "Empty author, by , 42, 2000",
+                    "Negative year, by A, 77, -44"));
+
+            Library library = new Library(text.toString());
+            library.borrowBook(132350882L);
+            library.borrowBook(441172717L);
+
+            System.out.println("\n1. Text -> snapshot keeps every field:");
+            library.writeSnapshot(snapshot.toString());
+            Library restored = Library.fromSnapshot(snapshot.toString());
+            check("same books with availability", describe(library, true).equals(describe(restored, true)));
+            check("same available count", library.getAvailableBooksCount() == restored.getAvailableBooksCount());
+            check("same borrowed count", library.getBorrowedBooksCount() == restored.getBorrowedBooksCount());
+            check("search still works", restored.searchBooks("dune").size() == 2);
+
+            System.out.println("\n2. Snapshot -> text matches the text saved directly:");
+            library.saveCatalog(textFromLibrary.toString());
+            restored.saveCatalog(textFromSnapshot.toString());
+            check("identical text files",
+                    Arrays.equals(Files.readAllBytes(textFromLibrary), Files.readAllBytes(textFromSnapshot)));
+            Library reparsed = new Library(textFromSnapshot.toString());
+            check("text reload has the same books", describe(library, false).equals(describe(reparsed, false)));
+
+            System.out.println("\n3. Bad snapshot files:");
+            Library missing = Library.fromSnapshot(dir.resolve("missing.snap").toString());
+            check("missing file gives empty library", missing.getTotalBooks() == 0);
+            Library notSnapshot = Library.fromSnapshot(text.toString());
+            check("text file is rejected", notSnapshot.getTotalBooks() == 0);
+            byte[] bytes = Files.readAllBytes(snapshot);
+            Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 3));
+            Library truncated = Library.fromSnapshot(snapshot.toString());
+            check("truncated file is rejected", truncated.getTotalBooks() == 0);
+
+            System.out.println("\n4. Concurrent saves of one file:");
+            check("each save leaves a complete file", concurrentSaves(dir));
+        } finally {
+            for (Path path : new Path[]{text, snapshot, textFromLibrary, textFromSnapshot}) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /* Saves hold only the read lock, so two can write one file at once. Both writers wait
+       for each other after opening their temp file and again before it is renamed, so they
+       overlap for sure; each must still land a complete file.
+     */
+    private static boolean concurrentSaves(Path dir) throws IOException {
+        Path target = dir.resolve("saved.txt");
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        byte[][] contents = {new byte[4000], new byte[1000]};
+        Arrays.fill(contents[0], (byte) 'a');
+        Arrays.fill(contents[1], (byte) 'b');
+        IOException[] errors = new IOException[2];
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < 2; t++) {
+            int writer = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    AtomicFile.write(target, channel -> {
+                        await(barrier);
+                        channel.write(ByteBuffer.wrap(contents[writer]));
+                        await(barrier);
+                    });
+                } catch (IOException e) {
+                    errors[writer] = e;
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            byte[] saved = Files.readAllBytes(target);
+            boolean complete = errors[0] == null && errors[1] == null
+                    && (Arrays.equals(saved, contents[0]) || Arrays.equals(saved, contents[1]));
+            try (Stream<Path> files = Files.list(dir)) {
+                complete &= files.noneMatch(path -> path.toString().endsWith(".tmp"));
+            }
+            return complete;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) throws IOException {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Every book in title order, one line each
+    private static List<String> describe(Library library, boolean withAvailability) {
+        List<String> lines = new ArrayList<>();
+        String cursor = null;
+        do {
+            BookPage page = library.getPage(BookFilter.ALL, cursor, 100);
+            for (Book book : page.getBooks()) {
+                lines.add(book.toString() + (withAvailability ? " [" + book.getAvailability() + "]" : ""));
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return lines;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
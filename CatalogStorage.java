@@ -0,0 +1,5 @@
+// Where a Library keeps its book records, chosen when the library is created
+public enum CatalogStorage {
+    HEAP,
+    OFF_HEAP
+}
@@ -0,0 +1,54 @@
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/* Record storage behind Library: books by ISBN, their availability, and title order for paging.
+   Library does the locking. put() and remove() run under its write lock, everything
+   else under the read lock, and setAvailability() also under the ISBN's stripe lock.
+ */
+public interface CatalogStore {
+    // Title order of every listing, ties broken by ISBN
+    Comparator<Book> TITLE_ORDER = Comparator.comparing(Book::getTitle).thenComparingLong(Book::getISBN);
+
+    int size();
+
+    // Null when no book has this ISBN
+    Book get(long isbn);
+
+    boolean contains(long isbn);
+
+    // Adds or replaces the book with the same ISBN, returns the replaced book or null
+    Book put(Book book);
+
+    // Returns the removed book, or null
+    Book remove(long isbn);
+
+    // Current availability of a book that is in the store
+    int availability(long isbn);
+
+    // Returns false when no book has this ISBN
+    boolean setAvailability(long isbn, int availability);
+
+    // Books matching the filter, O(1)
+    int count(BookFilter filter);
+
+    // Every book in no particular order, the cheapest way to scan the store
+    Iterable<Book> books();
+
+    // Every book in title order, its spliterator splits for ParallelScan
+    Collection<Book> byTitle();
+
+    // Up to 'size' matching books starting at or after 'from' (the first book when null)
+    List<Book> pageFrom(BookFilter filter, Book from, boolean inclusive, int size);
+
+    // Up to 'size' matching books right before 'before' (the end when null), in title order
+    List<Book> pageBefore(BookFilter filter, Book before, int size);
+
+    // Whether a matching book comes before / after the key in title order
+    boolean hasBefore(BookFilter filter, Book key);
+
+    boolean hasAfter(BookFilter filter, Book key);
+
+    // Matching book at a position in title order, null past the end
+    Book bookAt(BookFilter filter, int index);
+}
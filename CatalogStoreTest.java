@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/* Runs the same operations against a heap and an off-heap Library and checks that
+   every listing, count, search and saved file comes out the same, then checks that
+   the off-heap string arena survives being compacted, and that filtered paging over
+   many title-order blocks matches a plain scan in both stores.
+ */
+public class CatalogStoreTest {
+    private static int failures = 0;
+
+    private static final String[] TITLES = {
+            "Dune", "Clean Code", "The Hobbit", "Caf\u00E9 Society", "\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC",
+            "\uD83D\uDCDA Stack", "\uFF21 Fullwidth", "", "dune", "Dune Messiah"};
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Catalog Store Test ===");
+        Path dir = Files.createTempDirectory("catalog-store-test");
+        Path text = dir.resolve("catalog.txt");
+        Path heapSaved = dir.resolve("heap.txt");
+        Path offHeapSaved = dir.resolve("offheap.txt");
+
+        try {
+            Files.write(text, Arrays.asList(
+                    "The Art of Programming, by Knuth, Donald, 0-12-345678-9, 1968",
+                    "Clean Code, by Martin, Robert, 0-13-235088-2, 2008",
+                    "Dune, by Herbert, Frank, 0-44-117271-7, 1965",
+                    "Dune, by Someone Else, 0-44-117271-8, 1999"));
+            Library heap = new Library(text.toString(), CatalogStorage.HEAP);
+            Library offHeap = new Library(text.toString(), CatalogStorage.OFF_HEAP);
+
+            System.out.println("\n1. Loaded catalogs match:");
+            compare(heap, offHeap);
+
+            System.out.println("\n2. Random adds, removes, borrows and returns keep them in step:");
+            Random random = new Random(42);
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int i = 0; i < 3000; i++) {
+                long isbn = 1000 + random.nextInt(400);
+                int op = random.nextInt(4);
+                if (op == 0) {
+                    String title = TITLES[random.nextInt(TITLES.length)] + (random.nextBoolean() ? "" : " " + random.nextInt(50));
+                    Book book = new Book(title, "Author " + random.nextInt(20), isbn, 1900 + random.nextInt(120));
+                    heap.addBook(book);
+                    offHeap.addBook(new Book(book.getTitle(), book.getAuthor(), isbn, book.getPubYear()));
+                } else if (op == 1) {
+                    heap.removeBook(isbn);
+                    offHeap.removeBook(isbn);
+                } else if (op == 2) {
+                    heap.borrowBook(isbn);
+                    offHeap.borrowBook(isbn);
+                } else {
+                    heap.returnBook(isbn);
+                    offHeap.returnBook(isbn);
+                }
+            }
+            System.setOut(out);
+            compare(heap, offHeap);
+
+            System.out.println("\n3. Saved catalogs are identical:");
+            heap.saveCatalog(heapSaved.toString());
+            offHeap.saveCatalog(offHeapSaved.toString());
+            check("same bytes", Arrays.equals(Files.readAllBytes(heapSaved), Files.readAllBytes(offHeapSaved)));
+
+            System.out.println("\n4. Off-heap string arena is compacted without losing strings:");
+            OffHeapCatalogStore store = new OffHeapCatalogStore();
+            for (int i = 0; i < 100; i++) {
+                store.put(new Book("Kept \u03B1 " + i, "Author " + i, i, 2000));
+            }
+            char[] filler = new char[100_000];
+            Arrays.fill(filler, 'x');
+            String big = new String(filler);
+            for (int i = 0; i < 1000; i++) {
+                store.put(new Book(big, big, 1_000_000L, 2000));
+                store.remove(1_000_000L);
+            }
+            boolean intact = store.size() == 100;
+            for (int i = 0; i < 100 && intact; i++) {
+                Book book = store.get(i);
+                intact = book != null && book.getTitle().equals("Kept \u03B1 " + i)
+                        && book.getAuthor().equals("Author " + i);
+            }
+            check("100 books intact after 200 MB of churn", intact);
+
+            System.out.println("\n5. Filtered paging across title-order blocks matches a scan:");
+            sameFilteredPaging();
+        } finally {
+            for (Path path : new Path[]{text, heapSaved, offHeapSaved}) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void compare(Library heap, Library offHeap) {
+        check("same counts", heap.getTotalBooks() == offHeap.getTotalBooks()
+                && heap.getAvailableBooksCount() == offHeap.getAvailableBooksCount()
+                && heap.getBorrowedBooksCount() == offHeap.getBorrowedBooksCount());
+        for (BookFilter filter : BookFilter.values()) {
+            check(filter + " pages forward", forward(heap, filter).equals(forward(offHeap, filter)));
+            check(filter + " pages backward", backward(heap, filter).equals(backward(offHeap, filter)));
+        }
+        boolean sameSearches = true;
+        for (String query : new String[]{"", "d", "dune", "\u03B5\u03BB\u03BB", "author 1", "12", "0-44-1"}) {
+            sameSearches &= sorted(heap.searchBooks(query)).equals(sorted(offHeap.searchBooks(query)));
+        }
+        check("same search results", sameSearches);
+    }
+
+    // Every page from the first, one line per book with its availability and page total
+    private static List<String> forward(Library library, BookFilter filter) {
+        List<String> lines = new ArrayList<>();
+        String cursor = null;
+        do {
+            BookPage page = library.getPage(filter, cursor, 7);
+            for (Book book : page.getBooks()) {
+                lines.add(book + " [" + book.getAvailability() + "] of " + page.getTotalBooks());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return lines;
+    }
+
+    // Walks forward to the last page, then back to the first through the previous cursors
+    private static List<String> backward(Library library, BookFilter filter) {
+        BookPage page = library.getPage(filter, null, 7);
+        while (page.getNextCursor() != null) {
+            page = library.getPage(filter, page.getNextCursor(), 7);
+        }
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            for (Book book : page.getBooks()) {
+                lines.add(book.toString());
+            }
+            if (page.getPreviousCursor() == null) {
+                return lines;
+            }
+            page = library.getPage(filter, page.getPreviousCursor(), 7);
+        }
+    }
+
+    // Thousands of books, so the off-heap title order spans many blocks that split, merge and empty
+    private static void sameFilteredPaging() {
+        Random random = new Random(12);
+        HeapCatalogStore heap = new HeapCatalogStore();
+        OffHeapCatalogStore offHeap = new OffHeapCatalogStore();
+        boolean same = true;
+        for (int round = 0; round < 40_000; round++) {
+            long isbn = random.nextInt(6000);
+            int op = random.nextInt(10);
+            // Mostly borrowed, so AVAILABLE books are sparse and whole blocks hold none
+            int availability = random.nextInt(64) == 0 ? 1 : 0;
+            if (op < 5) {
+                Book book = new Book("Title " + random.nextInt(3000), "Author", isbn, 2000, availability);
+                heap.put(book);
+                offHeap.put(new Book(book.getTitle(), book.getAuthor(), isbn, 2000, availability));
+            } else if (op < 7) {
+                heap.remove(isbn);
+                offHeap.remove(isbn);
+            } else if (heap.contains(isbn)) {
+                heap.setAvailability(isbn, availability);
+                offHeap.setAvailability(isbn, availability);
+            }
+            if (round % 4000 == 3999) {
+                same &= samePaging(heap, offHeap, random);
+            }
+        }
+        check("pages, neighbours and positions", same);
+    }
+
+    // Both stores against a scan of every book in title order, with the same random keys
+    private static boolean samePaging(CatalogStore heap, CatalogStore offHeap, Random random) {
+        List<Book> ordered = new ArrayList<>();
+        heap.books().forEach(ordered::add);
+        ordered.sort(CatalogStore.TITLE_ORDER);
+        long seed = random.nextLong();
+        return heap.size() == offHeap.size()
+                && matchesScan(heap, ordered, new Random(seed)) && matchesScan(offHeap, ordered, new Random(seed))
+                && text(new ArrayList<>(heap.byTitle())).equals(text(ordered))
+                && text(new ArrayList<>(offHeap.byTitle())).equals(text(ordered))
+                && heap.byTitle().parallelStream().count() == ordered.size()
+                && offHeap.byTitle().parallelStream().count() == ordered.size();
+    }
+
+    private static boolean matchesScan(CatalogStore store, List<Book> ordered, Random random) {
+        boolean same = true;
+        for (BookFilter filter : BookFilter.values()) {
+            List<Book> matching = new ArrayList<>();
+            for (Book book : ordered) {
+                if (filter == BookFilter.ALL || (filter == BookFilter.AVAILABLE
+                        ? book.getAvailability() > 0 : book.getAvailability() == 0)) {
+                    matching.add(book);
+                }
+            }
+            same &= store.count(filter) == matching.size();
+            same &= text(store.pageFrom(filter, null, true, 50)).equals(text(slice(matching, 0, 50)));
+            same &= text(store.pageBefore(filter, null, 50))
+                    .equals(text(slice(matching, matching.size() - 50, matching.size())));
+            for (int k = 0; k < 20; k++) {
+                Book key = new Book("Title " + random.nextInt(3000), "Author", random.nextInt(6000), 2000);
+                boolean inclusive = random.nextBoolean();
+                int from = firstNotBefore(matching, key, inclusive);
+                int at = firstNotBefore(matching, key, true);
+                same &= text(store.pageFrom(filter, key, inclusive, 30)).equals(text(slice(matching, from, from + 30)));
+                same &= text(store.pageBefore(filter, key, 30)).equals(text(slice(matching, at - 30, at)));
+                same &= store.hasBefore(filter, key) == (at > 0);
+                same &= store.hasAfter(filter, key) == (firstNotBefore(matching, key, false) < matching.size());
+                int index = random.nextInt(matching.size() + 2);
+                same &= store.bookAt(filter, index) == null ? index >= matching.size()
+                        : store.bookAt(filter, index).toString().equals(matching.get(index).toString());
+            }
+        }
+        return same;
+    }
+
+    // Index of the first book not before the key (after it, when not inclusive)
+    private static int firstNotBefore(List<Book> books, Book key, boolean inclusive) {
+        int i = 0;
+        while (i < books.size()) {
+            int c = CatalogStore.TITLE_ORDER.compare(books.get(i), key);
+            if (c > 0 || (c == 0 && inclusive)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static List<Book> slice(List<Book> books, int from, int to) {
+        return books.subList(Math.max(0, from), Math.min(books.size(), to));
+    }
+
+    private static List<String> text(List<Book> books) {
+        List<String> lines = new ArrayList<>();
+        for (Book book : books) {
+            lines.add(book + " [" + book.getAvailability() + "]");
+        }
+        return lines;
+    }
+
+    private static List<String> sorted(List<Book> books) {
+        List<String> lines = new ArrayList<>();
+        for (Book book : books) {
+            lines.add(book + " [" + book.getAvailability() + "]");
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
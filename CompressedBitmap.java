@@ -0,0 +1,412 @@
+import java.util.Arrays;
+
+/* Set of non-negative ints in the style of a Roaring bitmap, used by AvailabilityIndex.
+   Values are grouped by their high 16 bits. Each group of 65,536 values is a sorted
+   char[] while it holds at most ARRAY_MAX of them (2 bytes per value), and a 1024-long
+   bitmap above that (8 KB, whatever the count). Sparse sets stay small, dense ones cost
+   one bit per value, and and()/or()/andNot() work a group at a time: word by word
+   between bitmaps, by merging or probing otherwise.
+   Not synchronized.
+ */
+public class CompressedBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    // Sorted high halves, the group for keys[i] is in containers[i]
+    private char[] keys = new char[4];
+    private Object[] containers = new Object[4];
+    private int[] counts = new int[4];
+    private int groups;
+    private int cardinality;
+
+    // Returns false if the value was already there
+    public boolean add(int value) {
+        int i = groupIndex(value >>> 16);
+        if (i < 0) {
+            i = -i - 1;
+            insertGroup(i, (char) (value >>> 16), new char[4]);
+        }
+        char low = (char) value;
+        Object container = containers[i];
+        if (container instanceof long[]) {
+            long[] words = (long[]) container;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+        } else {
+            char[] values = (char[]) container;
+            int count = counts[i];
+            int at = Arrays.binarySearch(values, 0, count, low);
+            if (at >= 0) {
+                return false;
+            }
+            at = -at - 1;
+            if (count == ARRAY_MAX) {
+                long[] words = toWords(values, count);
+                words[low >>> 6] |= 1L << low;
+                containers[i] = words;
+            } else {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX, count * 2));
+                    containers[i] = values;
+                }
+                System.arraycopy(values, at, values, at + 1, count - at);
+                values[at] = low;
+            }
+        }
+        counts[i]++;
+        cardinality++;
+        return true;
+    }
+
+    // Returns false if the value was not there
+    public boolean remove(int value) {
+        int i = groupIndex(value >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object container = containers[i];
+        int count = counts[i];
+        if (container instanceof long[]) {
+            long[] words = (long[]) container;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~bit;
+            if (count - 1 == ARRAY_MAX) {
+                containers[i] = toValues(words, ARRAY_MAX);
+            }
+        } else {
+            char[] values = (char[]) container;
+            int at = Arrays.binarySearch(values, 0, count, low);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(values, at + 1, values, at, count - at - 1);
+        }
+        cardinality--;
+        if (--counts[i] == 0) {
+            removeGroup(i);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int i = groupIndex(value >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object container = containers[i];
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, counts[i], low) >= 0;
+    }
+
+    // O(1), kept up to date by every change
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    // Values in both sets
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < groups && j < other.groups) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendGroup(keys[i], combine(containers[i], counts[i],
+                        other.containers[j], other.counts[j], AND));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in either set
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < groups || j < other.groups) {
+            if (j == other.groups || i < groups && keys[i] < other.keys[j]) {
+                result.appendGroup(keys[i], copy(containers[i], counts[i]));
+                i++;
+            } else if (i == groups || keys[i] > other.keys[j]) {
+                result.appendGroup(other.keys[j], copy(other.containers[j], other.counts[j]));
+                j++;
+            } else {
+                result.appendGroup(keys[i], combine(containers[i], counts[i],
+                        other.containers[j], other.counts[j], OR));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in this set and not in the other
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < groups; i++) {
+            while (j < other.groups && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.groups && other.keys[j] == keys[i]) {
+                result.appendGroup(keys[i], combine(containers[i], counts[i],
+                        other.containers[j], other.counts[j], AND_NOT));
+            } else {
+                result.appendGroup(keys[i], copy(containers[i], counts[i]));
+            }
+        }
+        return result;
+    }
+
+    // O(c) time complexity, c = cardinality, values in ascending order
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int n = 0;
+        for (int i = 0; i < groups; i++) {
+            int high = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof long[]) {
+                long[] words = (long[]) container;
+                for (int w = 0; w < WORDS; w++) {
+                    for (long word = words[w]; word != 0; word &= word - 1) {
+                        values[n++] = high | (w << 6) + Long.numberOfTrailingZeros(word);
+                    }
+                }
+            } else {
+                char[] lows = (char[]) container;
+                for (int k = 0; k < counts[i]; k++) {
+                    values[n++] = high | lows[k];
+                }
+            }
+        }
+        return values;
+    }
+
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /* O(n) time complexity, n = to - from
+       The values in [from, to), which must be ascending, built a group at a time rather
+       than added one by one. Repeated values are kept once.
+     */
+    public static CompressedBitmap ofSorted(int[] values, int from, int to) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int start = from; start < to; ) {
+            int high = values[start] >>> 16;
+            int end = start;
+            while (end < to && values[end] >>> 16 == high) {
+                end++;
+            }
+            if (end - start > ARRAY_MAX) {
+                long[] words = new long[WORDS];
+                for (int k = start; k < end; k++) {
+                    words[(char) values[k] >>> 6] |= 1L << values[k];
+                }
+                bitmap.appendGroup((char) high, words);
+            } else {
+                char[] lows = new char[end - start];
+                int n = 0;
+                for (int k = start; k < end; k++) {
+                    if (n == 0 || lows[n - 1] != (char) values[k]) {
+                        lows[n++] = (char) values[k];
+                    }
+                }
+                bitmap.appendGroup((char) high, n == lows.length ? lows : Arrays.copyOf(lows, n));
+            }
+            start = end;
+        }
+        return bitmap;
+    }
+
+    /* O(w) time complexity, w = words.length
+       The set bits of a plain bitset, value i being bit i % 64 of words[i / 64], for sets
+       whose values are too many to sort first but fall in a known range.
+     */
+    public static CompressedBitmap ofWords(long[] words) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int from = 0; from < words.length; from += WORDS) {
+            long[] group = Arrays.copyOfRange(words, from, from + WORDS);
+            int count = 0;
+            for (long word : group) {
+                count += Long.bitCount(word);
+            }
+            if (count > 0) {
+                bitmap.appendGroup((char) (from / WORDS), count > ARRAY_MAX ? group : toValues(group, count));
+            }
+        }
+        return bitmap;
+    }
+
+    // Approximate heap taken by the groups, for comparing against other representations
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (int i = 0; i < groups; i++) {
+            bytes += containers[i] instanceof long[] ? WORDS * 8 : ((char[]) containers[i]).length * 2;
+        }
+        return bytes + groups * 10L;
+    }
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int AND_NOT = 2;
+
+    // One group of the result, null when it is empty. Arrays are compared through bitmaps
+    // only when one side already is one, two arrays are merged.
+    private static Object combine(Object a, int countA, Object b, int countB, int op) {
+        if (a instanceof char[] && b instanceof char[]) {
+            return mergeValues((char[]) a, countA, (char[]) b, countB, op);
+        }
+        if (op == AND && a instanceof char[] || op == AND_NOT && a instanceof char[]) {
+            char[] values = (char[]) a;
+            long[] words = (long[]) b;
+            char[] kept = new char[countA];
+            int n = 0;
+            for (int k = 0; k < countA; k++) {
+                boolean inB = (words[values[k] >>> 6] & (1L << values[k])) != 0;
+                if (inB == (op == AND)) {
+                    kept[n++] = values[k];
+                }
+            }
+            return n == 0 ? null : Arrays.copyOf(kept, n);
+        }
+        if (op == AND && b instanceof char[]) {
+            return combine(b, countB, a, countA, AND);
+        }
+        long[] left = a instanceof long[] ? ((long[]) a).clone() : toWords((char[]) a, countA);
+        long[] right = b instanceof long[] ? (long[]) b : toWords((char[]) b, countB);
+        int count = 0;
+        for (int w = 0; w < WORDS; w++) {
+            left[w] = op == AND ? left[w] & right[w] : op == OR ? left[w] | right[w] : left[w] & ~right[w];
+            count += Long.bitCount(left[w]);
+        }
+        if (count == 0) {
+            return null;
+        }
+        return count > ARRAY_MAX ? left : toValues(left, count);
+    }
+
+    private static Object mergeValues(char[] a, int countA, char[] b, int countB, int op) {
+        char[] merged = new char[op == OR ? countA + countB : countA];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < countA || j < countB && op == OR) {
+            if (j == countB || i < countA && a[i] < b[j]) {
+                if (op != AND) {
+                    merged[n++] = a[i];
+                }
+                i++;
+            } else if (i == countA || a[i] > b[j]) {
+                if (op == OR) {
+                    merged[n++] = b[j];
+                }
+                j++;
+            } else {
+                if (op != AND_NOT) {
+                    merged[n++] = a[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        if (n == 0) {
+            return null;
+        }
+        return n > ARRAY_MAX ? toWords(merged, n) : Arrays.copyOf(merged, n);
+    }
+
+    private static Object copy(Object container, int count) {
+        return container instanceof long[] ? ((long[]) container).clone()
+                : Arrays.copyOf((char[]) container, count);
+    }
+
+    private static long[] toWords(char[] values, int count) {
+        long[] words = new long[WORDS];
+        for (int k = 0; k < count; k++) {
+            words[values[k] >>> 6] |= 1L << values[k];
+        }
+        return words;
+    }
+
+    private static char[] toValues(long[] words, int count) {
+        char[] values = new char[count];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+
+    private static int countOf(Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+        int count = 0;
+        for (long word : (long[]) container) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private int groupIndex(int high) {
+        return Arrays.binarySearch(keys, 0, groups, (char) high);
+    }
+
+    // Groups of a result arrive in key order, empty ones are left out
+    private void appendGroup(char key, Object container) {
+        if (container != null) {
+            insertGroup(groups, key, container);
+            counts[groups - 1] = countOf(container);
+            cardinality += counts[groups - 1];
+        }
+    }
+
+    private void insertGroup(int at, char key, Object container) {
+        if (groups == keys.length) {
+            keys = Arrays.copyOf(keys, groups * 2);
+            containers = Arrays.copyOf(containers, groups * 2);
+            counts = Arrays.copyOf(counts, groups * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, groups - at);
+        System.arraycopy(containers, at, containers, at + 1, groups - at);
+        System.arraycopy(counts, at, counts, at + 1, groups - at);
+        keys[at] = key;
+        containers[at] = container;
+        counts[at] = 0;
+        groups++;
+    }
+
+    private void removeGroup(int at) {
+        System.arraycopy(keys, at + 1, keys, at, groups - at - 1);
+        System.arraycopy(containers, at + 1, containers, at, groups - at - 1);
+        System.arraycopy(counts, at + 1, counts, at, groups - at - 1);
+        groups--;
+        containers[groups] = null;
+    }
+}
@@ -0,0 +1,6 @@
+// What Library.importCatalog() does with a record whose ISBN is already in the catalog
+public enum ConflictPolicy {
+    SKIP,           // keep the catalog's book
+    OVERWRITE,      // take the imported record
+    KEEP_NEWER      // take the imported record if its pubYear is later
+}
@@ -0,0 +1,41 @@
+import java.io.PrintStream;
+
+// Prints the messages Library used to print itself, for LibraryUserDriver
+public class ConsoleEventSink implements LibraryEventSink {
+    private final PrintStream out;
+
+    // Prints to whatever System.out is at the time of each event
+    public ConsoleEventSink() {
+        this(null);
+    }
+
+    public ConsoleEventSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onEvent(Operation operation, OperationResult result, long isbn, Book book) {
+        (out != null ? out : System.out).println(message(operation, result, isbn, book));
+    }
+
+    static String message(Operation operation, OperationResult result, long isbn, Book book) {
+        switch (result) {
+            case ADDED:
+                return book.getTitle() + " added to library.";
+            case DUPLICATE:
+                return "Error: Book with ISBN already exists.";
+            case REMOVED:
+                return book.getTitle() + " removed from catalog.";
+            case BORROWED:
+                return book.getTitle() + " has been borrowed.";
+            case UNAVAILABLE:
+                return "Book is currently unavailable";
+            case RETURNED:
+                return book.getTitle() + " returned. Thank you.";
+            case ALREADY_AVAILABLE:
+                return book.getTitle() + " was already available.";
+            default:
+                return (operation == Operation.REMOVE ? "Error: " : "") + "Book with ISBN " + isbn + " not found.";
+        }
+    }
+}
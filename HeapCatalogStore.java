@@ -0,0 +1,477 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/* Default CatalogStore, one Book object per record.
+   Books are kept in an ISBN map plus one title order that the pages are read from. The
+   books handed out are the stored objects, so their availability is always current.
+   The title order is a list of sorted blocks of at most BLOCK books, each counting its
+   available and borrowed books: about 4 bytes per book rather than a tree node per book
+   and state, a filtered page skips the blocks with nothing to show, and an insert only
+   shifts one block.
+ */
+public class HeapCatalogStore implements CatalogStore {
+    private static final int BLOCK = 256;
+
+    private final LongBookMap books;
+
+    // Borrow/return change the block and store counters under the read lock, so they are atomic
+    private Block[] blocks = new Block[4];
+    private int blockCount;
+    private final AtomicInteger availableCount = new AtomicInteger();
+    private final AtomicInteger borrowedCount = new AtomicInteger();
+
+    public HeapCatalogStore() {
+        this(new LongBookMap());
+    }
+
+    // Takes over the map, e.g. the one CatalogLoader.load() returns
+    public HeapCatalogStore(LongBookMap books) {
+        this.books = books;
+        Book[] sorted = new Book[books.size()];
+        int n = 0;
+        for (Book book : books.values()) {
+            sorted[n++] = book;
+            track(book.getAvailability(), 1);
+        }
+        Arrays.sort(sorted, TITLE_ORDER);
+        fillBlocks(sorted);
+    }
+
+    @Override
+    public int size() {
+        return books.size();
+    }
+
+    @Override
+    public Book get(long isbn) {
+        return books.get(isbn);
+    }
+
+    @Override
+    public boolean contains(long isbn) {
+        return books.containsKey(isbn);
+    }
+
+    // O(log n + BLOCK) for the title order insert
+    @Override
+    public Book put(Book book) {
+        Book previous = books.put(book.getISBN(), book);
+        if (previous != null) {
+            removeFromOrder(previous);
+            track(previous.getAvailability(), -1);
+        }
+        insertInOrder(book);
+        track(book.getAvailability(), 1);
+        return previous;
+    }
+
+    @Override
+    public Book remove(long isbn) {
+        Book removed = books.remove(isbn);
+        if (removed != null) {
+            removeFromOrder(removed);
+            track(removed.getAvailability(), -1);
+        }
+        return removed;
+    }
+
+    @Override
+    public int availability(long isbn) {
+        return books.get(isbn).getAvailability();
+    }
+
+    // O(log n) to find the book's block, all availability changes go through here so the counts stay accurate
+    @Override
+    public boolean setAvailability(long isbn, int availability) {
+        Book book = books.get(isbn);
+        if (book == null) {
+            return false;
+        }
+        Block block = blocks[(int) (position(book, true) >>> 32)];
+        int old = book.getAvailability();
+        track(old, -1);
+        block.track(old, -1);
+        book.setAvailability(availability);
+        track(availability, 1);
+        block.track(availability, 1);
+        return true;
+    }
+
+    private void track(int availability, int delta) {
+        if (availability > 0) {
+            availableCount.addAndGet(delta);
+        } else if (availability == 0) {
+            borrowedCount.addAndGet(delta);
+        }
+    }
+
+    @Override
+    public int count(BookFilter filter) {
+        switch (filter) {
+            case AVAILABLE:
+                return availableCount.get();
+            case BORROWED:
+                return borrowedCount.get();
+            default:
+                return books.size();
+        }
+    }
+
+    @Override
+    public Iterable<Book> books() {
+        return books.values();
+    }
+
+    @Override
+    public Collection<Book> byTitle() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public int size() {
+                return books.size();
+            }
+
+            @Override
+            public Iterator<Book> iterator() {
+                return new Iterator<Book>() {
+                    private int block = 0;
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return block < blockCount;
+                    }
+
+                    @Override
+                    public Book next() {
+                        if (block >= blockCount) {
+                            throw new NoSuchElementException();
+                        }
+                        Book book = blocks[block].books[next++];
+                        if (next == blocks[block].size) {
+                            block++;
+                            next = 0;
+                        }
+                        return book;
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<Book> spliterator() {
+                int[] starts = new int[blockCount + 1];
+                for (int b = 0; b < blockCount; b++) {
+                    starts[b + 1] = starts[b] + blocks[b].size;
+                }
+                return new TitleSpliterator(starts, 0, 0, blockCount);
+            }
+        };
+    }
+
+    /* Blocks [block, end) of the title order from position 'next' in the first, split in
+       halves by block for parallel scans. starts[b] is the title position of block b.
+     */
+    private class TitleSpliterator implements Spliterator<Book> {
+        private final int[] starts;
+        private int block;
+        private int next;
+        private final int end;
+
+        TitleSpliterator(int[] starts, int block, int next, int end) {
+            this.starts = starts;
+            this.block = block;
+            this.next = next;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Book> action) {
+            if (block >= end) {
+                return false;
+            }
+            action.accept(blocks[block].books[next++]);
+            if (next == blocks[block].size) {
+                block++;
+                next = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<Book> trySplit() {
+            int middle = (block + end) >>> 1;
+            if (middle <= block) {
+                return null;
+            }
+            Spliterator<Book> front = new TitleSpliterator(starts, block, next, middle);
+            block = middle;
+            next = 0;
+            return front;
+        }
+
+        @Override
+        public long estimateSize() {
+            return starts[end] - starts[block] - next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    // --- PAGING ---
+
+    /* O(log n + n / BLOCK + p x BLOCK) time complexity, p = page size
+       Books the filter leaves out are passed over, and whole blocks with none it keeps.
+     */
+    @Override
+    public List<Book> pageFrom(BookFilter filter, Book from, boolean inclusive, int size) {
+        List<Book> page = new ArrayList<>(size);
+        for (long at = firstMatch(filter, from == null ? 0 : position(from, inclusive));
+                at >= 0 && page.size() < size; at = firstMatch(filter, at + 1)) {
+            page.add(bookAt(at));
+        }
+        return page;
+    }
+
+    @Override
+    public List<Book> pageBefore(BookFilter filter, Book before, int size) {
+        List<Book> page = new ArrayList<>(size);
+        for (long at = lastMatchBefore(filter, before == null ? (long) blockCount << 32 : position(before, true));
+                at >= 0 && page.size() < size; at = lastMatchBefore(filter, at)) {
+            page.add(bookAt(at));
+        }
+        Collections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public boolean hasBefore(BookFilter filter, Book key) {
+        return lastMatchBefore(filter, position(key, true)) >= 0;
+    }
+
+    @Override
+    public boolean hasAfter(BookFilter filter, Book key) {
+        return firstMatch(filter, position(key, false)) >= 0;
+    }
+
+    // O(n / BLOCK + BLOCK), whole blocks are counted off
+    @Override
+    public Book bookAt(BookFilter filter, int index) {
+        for (int b = 0; b < blockCount; b++) {
+            Block block = blocks[b];
+            int matching = block.count(filter);
+            if (index >= matching) {
+                index -= matching;
+                continue;
+            }
+            // Counts can lag a concurrent borrow, then the rest of the index goes on to the next block
+            for (int i = 0; i < block.size; i++) {
+                if (matches(filter, block.books[i]) && index-- == 0) {
+                    return block.books[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /* Title positions are block << 32 | offset, at + 1 may point one past the end of a block.
+       The first matching position at or after 'at', or -1.
+     */
+    private long firstMatch(BookFilter filter, long at) {
+        for (int b = (int) (at >>> 32), i = (int) at; b < blockCount; b++, i = 0) {
+            Block block = blocks[b];
+            if (block.count(filter) == 0) {
+                continue;
+            }
+            for (; i < block.size; i++) {
+                if (matches(filter, block.books[i])) {
+                    return (long) b << 32 | i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // The last matching position before 'at', or -1
+    private long lastMatchBefore(BookFilter filter, long at) {
+        for (int b = (int) (at >>> 32), i = (int) at - 1; b >= 0; i = --b >= 0 ? blocks[b].size - 1 : -1) {
+            if (b == blockCount || blocks[b].count(filter) == 0) {
+                continue;
+            }
+            for (; i >= 0; i--) {
+                if (matches(filter, blocks[b].books[i])) {
+                    return (long) b << 32 | i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(BookFilter filter, Book book) {
+        switch (filter) {
+            case AVAILABLE:
+                return book.getAvailability() > 0;
+            case BORROWED:
+                return book.getAvailability() == 0;
+            default:
+                return true;
+        }
+    }
+
+    private Book bookAt(long at) {
+        return blocks[(int) (at >>> 32)].books[(int) at];
+    }
+
+    // --- TITLE ORDER ---
+
+    // First position in the title order not before the key (after it, when not inclusive), O(log n)
+    private long position(Book key, boolean inclusive) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before(blocks[mid].books[blocks[mid].size - 1], key, inclusive)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == blockCount) {
+            return (long) blockCount << 32;
+        }
+        Block block = blocks[low];
+        int from = 0;
+        int to = block.size - 1;
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (before(block.books[mid], key, inclusive)) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return (long) low << 32 | from;
+    }
+
+    private static boolean before(Book book, Book key, boolean inclusive) {
+        int c = TITLE_ORDER.compare(book, key);
+        return c < 0 || (c == 0 && !inclusive);
+    }
+
+    // Shifts at most one block, a full block is split in two
+    private void insertInOrder(Book book) {
+        long at = position(book, true);
+        int b = (int) (at >>> 32);
+        int i = (int) at;
+        if (blockCount == 0) {
+            insertBlock(0, new Block());
+        } else if (b == blockCount) {
+            b--;
+            i = blocks[b].size;
+        }
+        if (blocks[b].size == BLOCK) {
+            Block upper = new Block();
+            blocks[b].moveTo(upper, BLOCK / 2);
+            insertBlock(b + 1, upper);
+            if (i > BLOCK / 2) {
+                b++;
+                i -= BLOCK / 2;
+            }
+        }
+        Block block = blocks[b];
+        System.arraycopy(block.books, i, block.books, i + 1, block.size - i);
+        block.books[i] = book;
+        block.size++;
+        block.track(book.getAvailability(), 1);
+    }
+
+    // Merges what is left of the block into its neighbour once both fit in half a block
+    private void removeFromOrder(Book book) {
+        long at = position(book, true);
+        int b = (int) (at >>> 32);
+        int i = (int) at;
+        Block block = blocks[b];
+        System.arraycopy(block.books, i + 1, block.books, i, block.size - i - 1);
+        block.books[--block.size] = null;
+        block.track(book.getAvailability(), -1);
+        if (block.size == 0) {
+            removeBlock(b);
+        } else if (b + 1 < blockCount && block.size + blocks[b + 1].size <= BLOCK / 2) {
+            blocks[b + 1].moveTo(block, 0);
+            removeBlock(b + 1);
+        } else if (b > 0 && block.size + blocks[b - 1].size <= BLOCK / 2) {
+            block.moveTo(blocks[b - 1], 0);
+            removeBlock(b);
+        }
+    }
+
+    // Cuts the sorted books into blocks 3/4 full, so the first inserts do not split them
+    private void fillBlocks(Book[] sorted) {
+        int fill = BLOCK * 3 / 4;
+        for (int start = 0; start < sorted.length; start += fill) {
+            Block block = new Block();
+            block.size = Math.min(fill, sorted.length - start);
+            System.arraycopy(sorted, start, block.books, 0, block.size);
+            for (int i = 0; i < block.size; i++) {
+                block.track(block.books[i].getAvailability(), 1);
+            }
+            insertBlock(blockCount, block);
+        }
+    }
+
+    private void insertBlock(int at, Block block) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        System.arraycopy(blocks, at, blocks, at + 1, blockCount - at);
+        blocks[at] = block;
+        blockCount++;
+    }
+
+    private void removeBlock(int at) {
+        System.arraycopy(blocks, at + 1, blocks, at, blockCount - at - 1);
+        blocks[--blockCount] = null;
+    }
+
+    /* A run of the title order with the counts of its available and borrowed books.
+       The counts change under the read lock with setAvailability(), from any stripe.
+     */
+    private static final class Block {
+        final Book[] books = new Book[BLOCK];
+        int size;
+        final AtomicInteger available = new AtomicInteger();
+        final AtomicInteger borrowed = new AtomicInteger();
+
+        void track(int availability, int delta) {
+            if (availability > 0) {
+                available.addAndGet(delta);
+            } else if (availability == 0) {
+                borrowed.addAndGet(delta);
+            }
+        }
+
+        int count(BookFilter filter) {
+            switch (filter) {
+                case AVAILABLE:
+                    return available.get();
+                case BORROWED:
+                    return borrowed.get();
+                default:
+                    return size;
+            }
+        }
+
+        // Appends the books from position 'from' on to the other block and drops them from this one
+        void moveTo(Block other, int from) {
+            for (int i = from; i < size; i++) {
+                other.books[other.size++] = books[i];
+                other.track(books[i].getAvailability(), 1);
+                track(books[i].getAvailability(), -1);
+                books[i] = null;
+            }
+            size = from;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// Counts returned by Library.importCatalog()
+public class ImportResult {
+    private final int added;
+    private final int updated;
+    private final int skipped;
+    private final long rejected;
+
+    public ImportResult(int added, int updated, int skipped, long rejected) {
+        this.added = added;
+        this.updated = updated;
+        this.skipped = skipped;
+        this.rejected = rejected;
+    }
+
+    // New ISBNs
+    public int getAdded() { return added; }
+
+    // Existing books replaced under the conflict policy
+    public int getUpdated() { return updated; }
+
+    // Existing books kept, by the policy or because the record was identical
+    public int getSkipped() { return skipped; }
+
+    // Lines that were not blank and could not be parsed
+    public long getRejected() { return rejected; }
+
+    @Override
+    public String toString() {
+        return String.format("%d added, %d updated, %d skipped, %d rejected", added, updated, skipped, rejected);
+    }
+}
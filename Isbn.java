@@ -0,0 +1,147 @@
+/* ISBN-10 and ISBN-13 checking, normalization and printing.
+   The catalog keys every book by one long. A book has an ISBN-10 and an ISBN-13
+   ("978" + the first 9 digits + a new check digit), and both map to the same key:
+   the ISBN-10 as a number, since that is what catalogs have always stored. The
+   exceptions are ISBN-10s whose check digit is 'X', which cannot be a number and are
+   keyed by their ISBN-13, and "979" ISBN-13s, which have no ISBN-10.
+ */
+public class Isbn {
+    private static final long TEN_DIGITS = 10_000_000_000L;
+    private static final long PREFIX_978 = 978_000_000_000L;
+
+    /* O(1) time complexity
+       Key of a complete ISBN-10 or ISBN-13 with a valid check digit, hyphens and spaces
+       allowed, or -1 if the text is not one.
+     */
+    public static long parse(String text) {
+        long digits = 0;
+        int count = 0;
+        boolean x = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (x || count == 13) {
+                return -1;
+            }
+            if ((c == 'X' || c == 'x') && count == 9) {
+                x = true;
+                count++;
+            } else if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                count++;
+            } else {
+                return -1;
+            }
+        }
+        if (count == 10) {
+            long body = x ? digits : digits / 10;
+            int check = x ? 10 : (int) (digits % 10);
+            return check10(body) == check ? key10(body) : -1;
+        }
+        if (count == 13) {
+            return check13(digits / 10) == digits % 10 ? canonical(digits) : -1;
+        }
+        return -1;
+    }
+
+    /* Key for text typed where an ISBN is expected: parse(), or failing that the digits
+       as a plain number, since older catalogs hold numbers that are not real ISBNs.
+       -1 if the text is neither.
+     */
+    public static long lenient(String text) {
+        long key = parse(text);
+        if (key != -1) {
+            return key;
+        }
+        String digits = text.replace("-", "").replace(" ", "");
+        if (digits.isEmpty() || digits.length() > 18 || !digits.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            return -1;
+        }
+        return canonical(Long.parseLong(digits));
+    }
+
+    /* O(1) time complexity
+       Key for a number read from a catalog line or typed in, which may not be an ISBN
+       at all: a valid 978 ISBN-13 becomes its ISBN-10 key, anything else is kept.
+     */
+    public static long canonical(long number) {
+        if (number / TEN_DIGITS != 978 || check13(number / 10) != number % 10) {
+            return number;
+        }
+        return key10((number - PREFIX_978 * 10) / 10);
+    }
+
+    // True if the key is a 9-digit body plus its numeric check digit, a printable ISBN-10
+    public static boolean isIsbn10(long key) {
+        return key >= 0 && key < TEN_DIGITS && check10(key / 10) == key % 10;
+    }
+
+    /* Digits as printed: an ISBN-10 key padded to 10 digits (0441172717 rather than
+       441172717), anything else as the number.
+     */
+    public static String digits(long key) {
+        String digits = String.valueOf(key);
+        if (isIsbn10(key) && digits.length() < 10) {
+            return "0".repeat(10 - digits.length()) + digits;
+        }
+        return digits;
+    }
+
+    /* The digits of every form the key is written in: an ISBN-10 also as its 978 ISBN-13
+       (0441172717 and 9780441172719), since catalogs hold either. Partial ISBNs are
+       matched against these.
+     */
+    public static String[] printedForms(long key) {
+        if (!isIsbn10(key)) {
+            return new String[]{digits(key)};
+        }
+        long first12 = PREFIX_978 + key / 10;
+        return new String[]{digits(key), String.valueOf(first12 * 10 + check13(first12))};
+    }
+
+    /* Hyphenated as 0-12-345678-9 or 978-0-12-345678-9. Real group lengths depend on
+       the publisher, these fixed ones match the catalog files. Keys that are not 10 or
+       13 digits print as the number.
+     */
+    public static String format(long key) {
+        String digits = digits(key);
+        if (digits.length() == 10) {
+            return digits.substring(0, 1) + "-" + digits.substring(1, 3) + "-"
+                    + digits.substring(3, 9) + "-" + digits.substring(9);
+        }
+        if (digits.length() == 13) {
+            return digits.substring(0, 3) + "-" + digits.substring(3, 4) + "-" + digits.substring(4, 6)
+                    + "-" + digits.substring(6, 12) + "-" + digits.substring(12);
+        }
+        return digits;
+    }
+
+    // The key for a 9-digit ISBN-10 body, its ISBN-13 if the check digit would be 'X'
+    private static long key10(long body) {
+        int check = check10(body);
+        if (check == 10) {
+            long first12 = PREFIX_978 + body;
+            return first12 * 10 + check13(first12);
+        }
+        return body * 10 + check;
+    }
+
+    // 0 to 10, 10 is written 'X'
+    private static int check10(long body) {
+        int sum = 0;
+        for (int weight = 2; weight <= 10; weight++, body /= 10) {
+            sum += weight * (int) (body % 10);
+        }
+        return (11 - sum % 11) % 11;
+    }
+
+    private static int check13(long first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++, first12 /= 10) {
+            sum += (i % 2 == 0 ? 3 : 1) * (int) (first12 % 10);
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+import java.util.HashSet;
+
+/* Growable list of ISBNs, the postings of one key in the catalog indexes.
+   remove() does not look for the ISBN: it leaves a tombstone in a set of removed ISBNs
+   that readers skip, and add() of a removed ISBN just takes its tombstone back, as when
+   Library replaces a book. The list is compacted once a quarter of it is tombstones, so
+   add() and remove() are O(1) amortized however long the list is.
+   Changes happen under the catalog write lock; readers may run concurrently.
+ */
+public class IsbnPostings {
+    private long[] isbns = new long[4];
+    // Entries in isbns, tombstoned ones included
+    private int length;
+    // Null while nothing is removed
+    private HashSet<Long> removed;
+    private boolean sorted = true;
+
+    public void add(long isbn) {
+        if (removed != null && removed.remove(isbn)) {
+            return;
+        }
+        if (length == isbns.length) {
+            isbns = Arrays.copyOf(isbns, length * 2);
+        }
+        if (length > 0 && isbns[length - 1] > isbn) {
+            sorted = false;
+        }
+        isbns[length++] = isbn;
+    }
+
+    // The ISBN must be in the list
+    public void remove(long isbn) {
+        if (removed == null) {
+            removed = new HashSet<>();
+        }
+        removed.add(isbn);
+        if (removed.size() * 4 > length) {
+            compact();
+        }
+    }
+
+    public int size() {
+        return removed == null ? length : length - removed.size();
+    }
+
+    // O(n) time complexity, the ISBNs in the list in no particular order
+    public long[] toArray() {
+        long[] result = new long[size()];
+        copyTo(result, 0);
+        return result;
+    }
+
+    // Copies the ISBNs to target from index at on, size() of them
+    public void copyTo(long[] target, int at) {
+        if (removed == null || removed.isEmpty()) {
+            System.arraycopy(isbns, 0, target, at, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            if (!removed.contains(isbns[i])) {
+                target[at++] = isbns[i];
+            }
+        }
+    }
+
+    /* The ISBNs in ascending order, valid up to size() and until the next change; the array
+       is the list's own, not a copy. Sorts and compacts on the first call after changes,
+       readers can call it concurrently so it is synchronized. Mostly sorted after a few
+       changes, which Arrays.sort handles in close to linear time.
+     */
+    public synchronized long[] sorted() {
+        if (removed != null && !removed.isEmpty()) {
+            compact();
+        }
+        if (!sorted) {
+            Arrays.sort(isbns, 0, length);
+            sorted = true;
+        }
+        return isbns;
+    }
+
+    // Drops the tombstoned entries, keeping the order of the rest
+    private void compact() {
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            if (!removed.contains(isbns[i])) {
+                isbns[kept++] = isbns[i];
+            }
+        }
+        length = kept;
+        removed = null;
+    }
+}
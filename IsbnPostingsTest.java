@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/* Checks IsbnPostings against a plain set through random adds, removes and re-adds,
+   with and without compaction, and that sorted() stays in ISBN order.
+ */
+public class IsbnPostingsTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        System.out.println("=== ISBN Postings Test ===");
+
+        System.out.println("\n1. Same ISBNs as a set:");
+        Random random = new Random(25);
+        IsbnPostings postings = new IsbnPostings();
+        HashSet<Long> expected = new HashSet<>();
+        List<Long> present = new ArrayList<>();
+        boolean same = true;
+        boolean ordered = true;
+        for (int round = 0; round < 20_000; round++) {
+            if (present.isEmpty() || random.nextInt(3) > 0) {
+                long isbn = random.nextInt(5000);
+                if (expected.add(isbn)) {
+                    postings.add(isbn);
+                    present.add(isbn);
+                }
+            } else {
+                long isbn = present.remove(random.nextInt(present.size()));
+                expected.remove(isbn);
+                postings.remove(isbn);
+                if (random.nextBoolean()) {
+                    // Replaced, as Library does when a book is put again
+                    postings.add(isbn);
+                    expected.add(isbn);
+                    present.add(isbn);
+                }
+            }
+            if (round % 97 == 0) {
+                long[] sorted = Arrays.copyOf(postings.sorted(), postings.size());
+                for (int i = 1; i < sorted.length; i++) {
+                    ordered &= sorted[i - 1] < sorted[i];
+                }
+                same &= sorted.length == expected.size();
+            }
+            same &= postings.size() == expected.size() && setOf(postings.toArray()).equals(expected);
+        }
+        check("contents", same);
+        check("sorted", ordered);
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static HashSet<Long> setOf(long[] isbns) {
+        HashSet<Long> set = new HashSet<>();
+        for (long isbn : isbns) {
+            set.add(isbn);
+        }
+        return set;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/* Checks ISBN-10/ISBN-13 validation and normalization, that catalogs load either form
+   under one key, that a complete ISBN is looked up directly, and that partial ISBNs
+   match anywhere in either printed form through the ISBN trigram index.
+ */
+public class IsbnTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== ISBN Test ===");
+
+        System.out.println("\n1. Validation and normalization:");
+        check("ISBN-10", Isbn.parse("0-306-40615-2") == 306406152L);
+        check("ISBN-13 of the same book", Isbn.parse("978-0-306-40615-7") == 306406152L);
+        check("wrong check digit", Isbn.parse("0-306-40615-3") == -1 && Isbn.parse("978-0-306-40615-8") == -1);
+        check("'X' keyed by its ISBN-13", Isbn.parse("0-8044-2957-x") == 9780804429573L
+                && Isbn.parse("978 0 8044 2957 3") == 9780804429573L);
+        check("979 kept", Isbn.parse("979-10-90636-07-1") == 9791090636071L);
+        check("not an ISBN", Isbn.parse("12345") == -1 && Isbn.parse("03064061X2") == -1
+                && Isbn.parse("dune") == -1 && Isbn.parse("") == -1);
+        check("lenient takes plain numbers", Isbn.lenient("1-2-3") == 123 && Isbn.lenient("12a") == -1);
+        check("printed", Isbn.format(441172717L).equals("0-44-117271-7")
+                && Isbn.format(9791090636071L).equals("979-1-09-063607-1") && Isbn.format(42).equals("42"));
+        Random random = new Random(20);
+        boolean roundTrips = true;
+        for (int i = 0; i < 10_000; i++) {
+            String body = String.format("%09d", random.nextInt(1_000_000_000));
+            long key10 = -1;
+            long key13 = -1;
+            for (String check : new String[]{"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "X"}) {
+                key10 = Math.max(key10, Isbn.parse(body + check));
+                key13 = check.equals("X") ? key13 : Math.max(key13, Isbn.parse("978" + body + check));
+            }
+            roundTrips &= key10 != -1 && key10 == key13 && Isbn.parse(Isbn.format(key10)) == key10;
+        }
+        check("format then parse", roundTrips);
+
+        System.out.println("\n2. Catalogs load both forms under one key:");
+        Path file = Files.createTempFile("isbn-test", ".txt");
+        PrintStream out = System.out;
+        try {
+            Files.write(file, Arrays.asList(
+                    "Dune, by Herbert, Frank, 978-0-441-17271-9, 1965",
+                    "Numbers, by Author, A., 0-8044-2957-X, 2000",
+                    "Broken, by Author, B., 0-306-40615-X, 2000",
+                    "Legacy, by Author, C., 1234567890, 2001"));
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library library = new Library(file.toString());
+            System.setOut(out);
+            check("3 loaded", library.getTotalBooks() == 3);
+            check("ISBN-13 keyed as ISBN-10", library.searchBooks("0-441-17271-7").size() == 1
+                    && library.searchBooks("0441172717").get(0).toString()
+                    .equals("Dune, by Herbert, Frank, 0-44-117271-7, 1965"));
+            check("'X' check digit", library.searchBooks("080442957X").size() == 1);
+            check("unchecked number still found", library.searchBooks("1-23-456789-0").size() == 1);
+            check("valid but absent", library.searchBooks("0-306-40615-2").isEmpty());
+            check("partial, hyphenated or not", library.searchBooks("0-44-1").size() == 1
+                    && library.searchBooks("978").size() == 2 && library.searchBooks("0").size() == 3);
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println("\n3. Partial ISBNs match a scan of both printed forms:");
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Library[] libraries = {new Library("missing-catalog-for-isbn-test.txt", CatalogStorage.HEAP),
+                new Library("missing-catalog-for-isbn-test.txt", CatalogStorage.OFF_HEAP)};
+        System.setOut(out);
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            long key = random.nextInt(3) == 0 ? random.nextInt(100_000)
+                    : Isbn.canonical(9_780_000_000_000L + random.nextInt(1_000_000) * 10L + random.nextInt(10));
+            if (libraries[0].addBook(new Book("Title", "Author", key, 2000)) == OperationResult.ADDED) {
+                libraries[1].addBook(new Book("Title", "Author", key, 2000));
+                keys.add(key);
+            }
+        }
+        boolean[] same = {true, true};
+        for (int round = 0; round < 200; round++) {
+            long gone = keys.remove(random.nextInt(keys.size()));
+            for (Library library : libraries) {
+                library.removeBook(gone);
+            }
+            String[] forms = Isbn.printedForms(keys.get(random.nextInt(keys.size())));
+            String sample = forms[random.nextInt(forms.length)];
+            int from = random.nextInt(sample.length());
+            String partial = sample.substring(from, from + 1 + random.nextInt(sample.length() - from));
+            Set<Long> expected = new HashSet<>();
+            for (long key : keys) {
+                if (String.join(" ", Isbn.printedForms(key)).contains(partial)) {
+                    expected.add(key);
+                }
+            }
+            for (int s = 0; s < 2; s++) {
+                Set<Long> found = new HashSet<>();
+                for (Book book : libraries[s].searchBooks(partial)) {
+                    found.add(book.getISBN());
+                }
+                same[s] &= Isbn.parse(partial) != -1 ? found.size() <= 1 && expected.containsAll(found)
+                        : found.equals(expected);
+            }
+        }
+        check("heap", same[0]);
+        check("off-heap", same[1]);
+
+        System.out.println("\n4. Partial ISBN-13s find a book keyed by its ISBN-10:");
+        Library dune = libraries[0];
+        dune.addBook(new Book("Dune", "Herbert, Frank", 9780441172719L, 1965));
+        boolean foundDune = true;
+        for (String partial : new String[]{"978044117271", "9780441", "978-0-44-117", "0-44-117", "117271", "72719"}) {
+            boolean found = false;
+            for (Book book : dune.searchBooks(partial)) {
+                found |= book.getISBN() == 441172717L;
+            }
+            foundDune &= found;
+        }
+        check("either form, from the start or inside", foundDune);
+        Set<Long> with978 = new HashSet<>();
+        for (Book book : dune.searchBooks("978")) {
+            with978.add(book.getISBN());
+        }
+        boolean everyIsbn10 = true;
+        for (long key : keys) {
+            everyIsbn10 &= !Isbn.isIsbn10(key) || with978.contains(key);
+        }
+        check("'978' finds every ISBN-10", everyIsbn10);
+
+        System.out.println("\n5. Either form through add, search, borrow and remove:");
+        boolean[] roundTrip = {true, true};
+        for (int s = 0; s < 2; s++) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library library = new Library("missing-catalog-for-isbn-test.txt",
+                    s == 0 ? CatalogStorage.HEAP : CatalogStorage.OFF_HEAP);
+            System.setOut(out);
+            boolean ok = library.addBook(new Book("Dune", "Herbert, Frank", 9780441172719L, 1965)) == OperationResult.ADDED
+                    && library.addBook(new Book("Dune", "Herbert, Frank", 441172717L, 1965)) == OperationResult.DUPLICATE
+                    && library.getTotalBooks() == 1;
+            ok &= library.searchBooks("978-0-441-17271-9").size() == 1 && library.searchBooks("0-441-17271-7").size() == 1
+                    && library.searchBooks("Dune").get(0).getISBN() == 441172717L;
+            ok &= library.borrowBook(441172717L) == OperationResult.BORROWED
+                    && library.borrowBook(9780441172719L) == OperationResult.UNAVAILABLE
+                    && library.returnBook(9780441172719L) == OperationResult.RETURNED;
+            ok &= library.removeBook(9780441172719L) == OperationResult.REMOVED && library.getTotalBooks() == 0;
+
+            long[] thirteens = {9780441172719L, 9780306406157L};
+            ok &= library.addBooks(Arrays.asList(new Book("Dune", "Herbert, Frank", thirteens[0], 1965),
+                    new Book("Data Structures", "Smith, Jones", thirteens[1], 1985))).count(OperationResult.ADDED) == 2;
+            ok &= library.borrowBooks(new long[]{441172717L, 306406152L}).count(OperationResult.BORROWED) == 2
+                    && library.returnBooks(thirteens).count(OperationResult.RETURNED) == 2
+                    && thirteens[0] == 9780441172719L;
+            ok &= library.removeBooks(new long[]{441172717L, thirteens[1]}).count(OperationResult.REMOVED) == 2
+                    && library.getTotalBooks() == 0;
+            roundTrip[s] = ok;
+        }
+        check("heap", roundTrip[0]);
+        check("off-heap", roundTrip[1]);
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Log-linear histogram of non-negative longs (latencies in nanoseconds, result sizes),
+   laid out like HdrHistogram: every power of two is split into 64 equal buckets, so a
+   recorded value is off by at most 1/64 (1.6%) and the whole range up to 2^40 fits in
+   about 2,200 counters. record() is one atomic add on the bucket, safe from any thread.
+   Values above 2^40 (18 minutes in ns) are counted in the last bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final long MAX_TRACKABLE = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.getAndIncrement(index(Math.min(value, MAX_TRACKABLE)));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    // Not an atomic cut across threads, a record() racing with it may be half counted
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    // Values below 2 x HALF get a bucket each, above that HALF buckets per power of two
+    private static int index(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    // Largest value that lands in the bucket
+    private static long highestIn(int index) {
+        if (index < 2 * HALF) {
+            return index;
+        }
+        int shift = (index >>> (SUB_BITS - 1)) - 1;
+        long lowest = (long) (index - (shift << (SUB_BITS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // Immutable copy of the counts, the getters make it readable as a JMX CompositeData
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getP50() {
+            return valueAtPercentile(50);
+        }
+
+        public long getP90() {
+            return valueAtPercentile(90);
+        }
+
+        public long getP99() {
+            return valueAtPercentile(99);
+        }
+
+        public long getP999() {
+            return valueAtPercentile(99.9);
+        }
+
+        // O(buckets), the largest value of the bucket holding that share of the recorded values
+        public long valueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestIn(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d",
+                    count, getMean(), getP50(), getP90(), getP99(), getP999(), max);
+        }
+    }
+}
@@ -1,303 +1,1228 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/* Library is safe to share between threads.
+   catalogLock guards the shape of the catalog: adding or removing books takes the write
+   lock, everything else takes the read lock. Borrow/return additionally lock the ISBN's
+   stripe, so the availability check and change happen as one step and two desks can
+   never both lend the same copy, while borrows of different ISBNs run in parallel.
+ */
 public class Library {
-    private HashMap<Long, Book> catalog;
+    private CatalogStore catalog;
     private String FILE_HEADER = "";
 
+    private final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private static final int STRIPES = 256;
+    // Books merged per write lock by importCatalog()
+    private static final int IMPORT_CHUNK = 4096;
+    // Most distinct titles and authors a load shares through its StringPool
+    private static final int LOAD_POOL_ENTRIES = 1 << 20;
+    // query() scans the whole catalog unless an index narrows it to less than 1/SCAN_RATIO
+    private static final int SCAN_RATIO = 4;
+    // query() intersects every such index at most INTERSECT_RATIO times the smallest one
+    private static final int INTERSECT_RATIO = 2;
+    private final Object[] stripes = new Object[STRIPES];
+
+    // Search indexes, kept in step with catalog by indexBook()/unindexBook()
+    private TrigramIndex textIndex = new TrigramIndex();
+    // Trigrams of the printed ISBNs, both forms of an ISBN-10 (see Isbn.printedForms)
+    private TrigramIndex isbnIndex = new TrigramIndex();
+    private WordIndex wordIndex = new WordIndex();
+    private AuthorIndex authorIndex = new AuthorIndex();
+    private YearIndex yearIndex = new YearIndex();
+    private AvailabilityIndex availabilityIndex = new AvailabilityIndex();
+    private final CatalogStorage storage;
+
+    // Only set for libraries opened with openDurable(), every mutation is logged to it
+    private volatile CatalogJournal journal;
+    private String snapshotFile;
+
+    private final LibraryMetrics metrics = new LibraryMetrics();
+    // Outcomes of add/remove/borrow/return go here instead of System.out
+    private volatile LibraryEventSink events = LibraryEventSink.NONE;
+
     // --- CONSTRUCTOR ---
+    // Parsing is done by CatalogLoader, in parallel for large files
     public Library(String filename) {
-        this.catalog = new HashMap<>();
+        this(filename, CatalogStorage.HEAP);
+    }
+
+    // OFF_HEAP keeps the records out of the Java heap, see OffHeapCatalogStore
+    public Library(String filename, CatalogStorage storage) {
+        this(storage);
+
+        try {
+            // Index once the map is final, the loader has already resolved duplicate ISBNs
+            long start = System.nanoTime();
+            LongAdder rejected = new LongAdder();
+            // Books by the same author share one author String, the pool is dropped after the load
+            StringPool pool = new StringPool(LOAD_POOL_ENTRIES);
+            load(CatalogLoader.load(Paths.get(filename), rejected, pool));
+            pool.clear();
+            metrics.loaded(System.nanoTime() - start, catalog.size(), rejected.sum());
+            metrics.pooled(pool);
+            System.out.println("Library loaded successfully. Total books: " + catalog.size());
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("File '%s' not found. Starting with empty library.\n", filename);
+        }
+    }
 
-        File f = new File(filename);
-        try (Scanner sc = new Scanner(f)) {
-            String line;
+    private Library(CatalogStorage storage) {
+        this.storage = storage;
+        this.catalog = storage == CatalogStorage.OFF_HEAP ? new OffHeapCatalogStore() : new HeapCatalogStore();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
 
-            while (sc.hasNextLine()) {
-                line = sc.nextLine().trim();
+    // Replaces the catalog with freshly loaded books and indexes them
+    private void load(LongBookMap books) {
+        catalog = storage == CatalogStorage.OFF_HEAP
+                ? new OffHeapCatalogStore(books.values(), books.size()) : new HeapCatalogStore(books);
+        for (Book book : books.values()) {
+            indexBook(book);
+        }
+    }
 
-                if (line.isEmpty()) continue;
+    /* Loads a binary snapshot written by writeSnapshot(), availability included.
+       Starts with an empty library if the file is missing or not a snapshot.
+     */
+    public static Library fromSnapshot(String filename) {
+        return fromSnapshot(filename, CatalogStorage.HEAP);
+    }
 
-                if (line.startsWith("[")) {
-                    int endBracket = line.indexOf("]");
-                    if (endBracket != -1 && endBracket < line.length() - 1) {
-                        line = line.substring(endBracket + 1).trim();
-                    } else {
-                        continue;
-                    }
+    public static Library fromSnapshot(String filename, CatalogStorage storage) {
+        Library library = new Library(storage);
+        try {
+            long start = System.nanoTime();
+            List<Book> books = CatalogSnapshot.read(Paths.get(filename));
+            LongBookMap byIsbn = new LongBookMap(books.size());
+            for (Book book : books) {
+                byIsbn.put(book.getISBN(), book);
+            }
+            library.load(byIsbn);
+            library.metrics.loaded(System.nanoTime() - start, library.catalog.size(), 0);
+            System.out.println("Library loaded successfully. Total books: " + library.catalog.size());
+        } catch (NoSuchFileException e) {
+            System.out.printf("File '%s' not found. Starting with empty library.\n", filename);
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("Could not load snapshot '%s' (%s). Starting with empty library.\n",
+                    filename, e.getMessage());
+        }
+        return library;
+    }
+
+    /* Loads the snapshot (if there is one), replays the journal on top of it and keeps
+       logging every add/remove/borrow/return to the journal, so nothing is lost between
+       saves. compactJournal() folds the journal back into the snapshot.
+     */
+    public static Library openDurable(String snapshotFile, String journalFile) {
+        return openDurable(snapshotFile, journalFile, CatalogStorage.HEAP);
+    }
+
+    public static Library openDurable(String snapshotFile, String journalFile, CatalogStorage storage) {
+        Library library = fromSnapshot(snapshotFile, storage);
+        library.snapshotFile = snapshotFile;
+        try {
+            int[] replayed = {0};
+            library.journal = CatalogJournal.open(Paths.get(journalFile), new CatalogJournal.Handler() {
+                public void add(Book book) {
+                    library.putBook(book);
+                    replayed[0]++;
                 }
 
-                int lastComma = line.lastIndexOf(',');
-                if (lastComma == line.length() - 1) {
-                    lastComma = line.lastIndexOf(',', lastComma - 1);
+                public void remove(long isbn) {
+                    library.dropBook(isbn);
+                    replayed[0]++;
                 }
 
-                if (lastComma == -1) continue;
+                public void availability(long isbn, int availability) {
+                    library.setAvailability(isbn, availability);
+                    replayed[0]++;
+                }
+            });
+            System.out.printf("Replayed %d journal records. Total books: %d\n",
+                    replayed[0], library.catalog.size());
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("Could not open journal '%s' (%s). Changes will not be journaled.\n",
+                    journalFile, e.getMessage());
+        }
+        return library;
+    }
 
-                String yearString = line.substring(lastComma + 1).trim();
-                String front = line.substring(0, lastComma).trim();
+    /* O(n) time complexity, writes a fresh snapshot and empties the journal.
+       Journal records only set state, so a crash between the two steps is harmless,
+       the old records are simply replayed again on top of the new snapshot.
+     */
+    public void compactJournal() {
+        if (journal == null) {
+            System.out.println("Error: Library was not opened with a journal.");
+            return;
+        }
+        // The write lock keeps borrow/return from logging records the snapshot would miss
+        catalogLock.writeLock().lock();
+        try {
+            CatalogSnapshot.write(Paths.get(snapshotFile), catalog.byTitle());
+            journal.reset();
+            System.out.printf("Journal compacted into %s.\n", snapshotFile);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Error compacting journal: " + e.getMessage());
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
 
-                int isbnComma = front.lastIndexOf(',');
-                if (isbnComma == -1) continue;
+    // Flushes and closes the journal, further changes are kept in memory only
+    public void closeJournal() {
+        catalogLock.writeLock().lock();
+        try {
+            if (journal == null) {
+                return;
+            }
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("Error closing journal: " + e.getMessage());
+        } finally {
+            journal = null;
+            catalogLock.writeLock().unlock();
+        }
+    }
 
-                String isbnString = front.substring(isbnComma + 1).
-                        trim().replaceAll("-", "");
-                String titleAndAuthor = front.substring(0, isbnComma).trim();
+    // --- GETTERS FOR TESTING/UI ---
+    public int getTotalBooks() {
+        catalogLock.readLock().lock();
+        try {
+            return catalog.size();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
 
-                int byIndex = titleAndAuthor.indexOf(", by");
-                if (byIndex == -1) continue;
+    // Where add/remove/borrow/return report their outcome, null for none (the default)
+    public void setEventSink(LibraryEventSink sink) {
+        events = sink != null ? sink : LibraryEventSink.NONE;
+    }
 
-                String title = titleAndAuthor.substring(0, byIndex).trim();
-                String authorBlock = titleAndAuthor.
-                        substring(byIndex + 5).trim();
+    // Latency and outcome figures, off until enabled, see LibraryMetrics
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
 
-                // Stores the author block directly (e.g., "Perez, Lee, et al")
-                String authorString = authorBlock;
+    // O(1), the store counts availability on every add/remove/borrow/return
+    public int getAvailableBooksCount() {
+        return catalog.count(BookFilter.AVAILABLE);
+    }
 
-                try {
-                    Integer releaseYear = Integer.parseInt(yearString);
-                    Long ISBN = Long.parseLong(isbnString);
+    public int getBorrowedBooksCount() {
+        return catalog.count(BookFilter.BORROWED);
+    }
 
-                    Book temp = new Book(title, authorString, ISBN, releaseYear);
-                    catalog.put(ISBN, temp);
-                } catch (NumberFormatException e) {
-                    // Error or incomplete line
+    // The ISBN may be given as an ISBN-10 or ISBN-13, the book is kept under Isbn.canonical() of it
+    public OperationResult addBook(Book book) {
+        long start = metrics.start();
+        book = canonical(book);
+        OperationResult result = OperationResult.DUPLICATE;
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.writeLock().lock();
+        try {
+            log = journal;
+            if (!catalog.contains(book.getISBN())) {
+                putBook(book);
+                result = OperationResult.ADDED;
+                if (log != null) {
+                    sequence = log.logAdd(book);
                 }
             }
-            System.out.println("Library loaded successfully. Total books: " + catalog.size());
-        } catch (FileNotFoundException e) {
-            System.out.printf("File '%s' not found. Starting with empty library.\n", filename);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        if (result == OperationResult.ADDED) {
+            commitJournal(log, sequence);
         }
+        metrics.add(start, result);
+        events.onEvent(LibraryEventSink.Operation.ADD, result, book.getISBN(), book);
+        return result;
     }
 
-    // --- GETTERS FOR TESTING/UI ---
-    public int getTotalBooks() {
-        return catalog.size();
+    public OperationResult removeBook(long isbn) {
+        long start = metrics.start();
+        isbn = Isbn.canonical(isbn);
+        Book removed;
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.writeLock().lock();
+        try {
+            log = journal;
+            removed = dropBook(isbn);
+            if (removed != null && log != null) {
+                sequence = log.logRemove(isbn);
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        OperationResult result = OperationResult.NOT_FOUND;
+        if (removed != null) {
+            commitJournal(log, sequence);
+            result = OperationResult.REMOVED;
+        }
+        metrics.remove(start, result);
+        events.onEvent(LibraryEventSink.Operation.REMOVE, result, isbn, removed);
+        return result;
     }
 
-    public int getAvailableBooksCount() {
-        int count = 0;
-        for (Book book : catalog.values()) {
-            if (book.getAvailability() > 0) {
-                count++;
+    public OperationResult borrowBook(long isbn) {
+        long start = metrics.start();
+        isbn = Isbn.canonical(isbn);
+        Book book;
+        OperationResult result = OperationResult.NOT_FOUND;
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.readLock().lock();
+        try {
+            log = journal;
+            book = catalog.get(isbn);
+            if (book != null) {
+                result = OperationResult.UNAVAILABLE;
+                synchronized (stripeFor(isbn)) {
+                    if (catalog.availability(isbn) > 0) {
+                        setAvailability(isbn, 0);
+                        result = OperationResult.BORROWED;
+                        if (log != null) {
+                            sequence = log.logAvailability(isbn, 0);
+                        }
+                    }
+                }
             }
+        } finally {
+            catalogLock.readLock().unlock();
         }
-        return count;
+        if (result == OperationResult.BORROWED) {
+            commitJournal(log, sequence);
+        }
+        metrics.borrow(start, result);
+        events.onEvent(LibraryEventSink.Operation.BORROW, result, isbn, book);
+        return result;
     }
 
-    public int getBorrowedBooksCount() {
-        int count = 0;
-        for (Book book : catalog.values()) {
-            if (book.getAvailability() == 0) {
-                count++;
+    public OperationResult returnBook(long isbn) {
+        long start = metrics.start();
+        isbn = Isbn.canonical(isbn);
+        Book book;
+        OperationResult result = OperationResult.NOT_FOUND;
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.readLock().lock();
+        try {
+            log = journal;
+            book = catalog.get(isbn);
+            if (book != null) {
+                result = OperationResult.ALREADY_AVAILABLE;
+                synchronized (stripeFor(isbn)) {
+                    if (catalog.availability(isbn) == 0) {
+                        setAvailability(isbn, 1);
+                        result = OperationResult.RETURNED;
+                        if (log != null) {
+                            sequence = log.logAvailability(isbn, 1);
+                        }
+                    }
+                }
             }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        if (result == OperationResult.RETURNED) {
+            commitJournal(log, sequence);
         }
-        return count;
+        metrics.returnBook(start, result);
+        events.onEvent(LibraryEventSink.Operation.RETURN, result, isbn, book);
+        return result;
     }
 
-    public void addBook(Book book) {
-        if (catalog.containsKey(book.getISBN())) {
-            System.out.println("Error: Book with ISBN already exists.");
-        } else {
-            catalog.put(book.getISBN(), book);
-            System.out.println(book.getTitle() + " added to library.");
+    /* O(b log b) time complexity for the sort, b = batch size, then the same work per item as borrowBook()
+       Borrows every ISBN in the array, the outcome for isbns[i] is result.get(i).
+       Items are handled in hash order, which walks the ISBN table front to back and groups
+       them by stripe: the batch takes the read lock once, each stripe lock once per run of
+       items, and commits the journal once. An ISBN listed twice is borrowed by the first.
+     */
+    public BatchResult borrowBooks(long[] isbns) {
+        return changeAvailability(isbns, LibraryEventSink.Operation.BORROW);
+    }
+
+    // Batch version of returnBook(), same as borrowBooks() time complexity
+    public BatchResult returnBooks(long[] isbns) {
+        return changeAvailability(isbns, LibraryEventSink.Operation.RETURN);
+    }
+
+    // Batch version of addBook(), one write lock and one journal commit for the whole list
+    public BatchResult addBooks(List<Book> books) {
+        long start = metrics.start();
+        Book[] items = new Book[books.size()];
+        long[] isbns = new long[items.length];
+        for (int i = 0; i < isbns.length; i++) {
+            items[i] = canonical(books.get(i));
+            isbns[i] = items[i].getISBN();
         }
+        int[] order = hashOrder(isbns);
+        BatchResult results = new BatchResult(isbns.length);
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.writeLock().lock();
+        try {
+            log = journal;
+            for (int item : order) {
+                Book book = items[item];
+                if (catalog.contains(isbns[item])) {
+                    results.set(item, OperationResult.DUPLICATE);
+                    continue;
+                }
+                putBook(book);
+                results.set(item, OperationResult.ADDED);
+                if (log != null) {
+                    sequence = log.logAdd(book);
+                }
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        if (sequence > 0) {
+            commitJournal(log, sequence);
+        }
+        metrics.batch(start, LibraryEventSink.Operation.ADD, results);
+        report(LibraryEventSink.Operation.ADD, isbns, items, results);
+        return results;
     }
 
-    public boolean removeBook(Long isbn) {
-        if (catalog.containsKey(isbn)) {
-            Book removed = catalog.remove(isbn);
-            System.out.println(removed.getTitle() + " removed from catalog.");
-            return true;
-        } else {
-            System.out.println("Error: Book with ISBN " + isbn + " not found.");
-            return false;
+    // Batch version of removeBook(), one write lock and one journal commit for the whole array
+    public BatchResult removeBooks(long[] isbns) {
+        long start = metrics.start();
+        isbns = canonical(isbns);
+        int[] order = hashOrder(isbns);
+        BatchResult results = new BatchResult(isbns.length);
+        Book[] removed = new Book[isbns.length];
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.writeLock().lock();
+        try {
+            log = journal;
+            for (int item : order) {
+                removed[item] = dropBook(isbns[item]);
+                if (removed[item] == null) {
+                    results.set(item, OperationResult.NOT_FOUND);
+                    continue;
+                }
+                results.set(item, OperationResult.REMOVED);
+                if (log != null) {
+                    sequence = log.logRemove(isbns[item]);
+                }
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        if (sequence > 0) {
+            commitJournal(log, sequence);
         }
+        metrics.batch(start, LibraryEventSink.Operation.REMOVE, results);
+        report(LibraryEventSink.Operation.REMOVE, isbns, removed, results);
+        return results;
     }
 
-    public boolean borrowBook(Long isbn) {
-        Book book = catalog.get(isbn);
-        if (book != null && book.getAvailability() > 0) {
-            book.setAvailability(0);
-            System.out.println(book.getTitle() + " has been borrowed.");
-            return true;
-        } else if (book != null) {
-            System.out.println("Book is currently unavailable");
-            return false;
+    /* O(n) time complexity plus the index work per added or updated book, n = records in the file
+       Merges another catalog file, in the constructor's format, into this one. The file is
+       parsed in parallel by CatalogLoader (a later line wins over an earlier one with the
+       same ISBN), then merged in chunks of IMPORT_CHUNK books, each under the write lock on
+       its own, so borrows and returns carry on between chunks. A book replaced under the
+       policy keeps the availability of the one it replaces.
+     */
+    public ImportResult importCatalog(String filename, ConflictPolicy policy) {
+        LongAdder rejected = new LongAdder();
+        LongBookMap books;
+        try {
+            books = CatalogLoader.load(Paths.get(filename), rejected, new StringPool(LOAD_POOL_ENTRIES));
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("Could not import '%s' (%s).\n", filename, e.getMessage());
+            return new ImportResult(0, 0, 0, 0);
         }
-        System.out.println("Book with ISBN " + isbn + " not found.");
-        return false;
+
+        int added = 0, updated = 0, skipped = 0;
+        // LongBookMap iterates in hash order, the order the catalog's own ISBN table is laid out in
+        Iterator<Book> pending = books.values().iterator();
+        while (pending.hasNext()) {
+            long sequence = 0;
+            CatalogJournal log;
+            catalogLock.writeLock().lock();
+            try {
+                log = journal;
+                for (int n = 0; n < IMPORT_CHUNK && pending.hasNext(); n++) {
+                    Book book = pending.next();
+                    Book existing = catalog.get(book.getISBN());
+                    if (existing == null) {
+                        added++;
+                    } else if (replaces(policy, existing, book)) {
+                        book.setAvailability(existing.getAvailability());
+                        updated++;
+                    } else {
+                        skipped++;
+                        continue;
+                    }
+                    putBook(book);
+                    if (log != null) {
+                        sequence = log.logAdd(book);
+                    }
+                }
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            if (sequence > 0) {
+                commitJournal(log, sequence);
+            }
+            // The lock is not fair, let the threads queued behind this chunk in before the next one
+            for (int spins = 0; spins < 1000 && catalogLock.hasQueuedThreads(); spins++) {
+                Thread.yield();
+            }
+        }
+
+        ImportResult result = new ImportResult(added, updated, skipped, rejected.sum());
+        System.out.printf("Imported %s: %s.\n", filename, result);
+        return result;
     }
 
-    public boolean returnBook(Long isbn) {
-        Book book = catalog.get(isbn);
-        if (book != null && book.getAvailability() == 0) {
-            book.setAvailability(1);
-            System.out.println(book.getTitle() + " returned. Thank you.");
-            return true;
-        } else if (book != null) {
-            System.out.println(book.getTitle() + " was already available.");
-            return true;
+    private static boolean replaces(ConflictPolicy policy, Book existing, Book imported) {
+        switch (policy) {
+            case OVERWRITE:
+                return !existing.getTitle().equals(imported.getTitle())
+                        || !existing.getAuthor().equals(imported.getAuthor())
+                        || existing.getPubYear() != imported.getPubYear();
+            case KEEP_NEWER:
+                return imported.getPubYear() > existing.getPubYear();
+            default:
+                return false;
         }
-        System.out.println("Book with ISBN " + isbn + " not found.");
-        return false;
     }
 
-    /* Search method is: O(n x (t + a + i)) time complexity
-       n = number of books in catalog
+    private BatchResult changeAvailability(long[] isbns, LibraryEventSink.Operation operation) {
+        long start = metrics.start();
+        isbns = canonical(isbns);
+        boolean borrow = operation == LibraryEventSink.Operation.BORROW;
+        int[] order = hashOrder(isbns);
+        BatchResult results = new BatchResult(isbns.length);
+        Book[] books = new Book[isbns.length];
+        long sequence = 0;
+        CatalogJournal log;
+        catalogLock.readLock().lock();
+        try {
+            log = journal;
+            int i = 0;
+            while (i < order.length) {
+                Object stripe = stripeFor(isbns[order[i]]);
+                synchronized (stripe) {
+                    // Every following item in hash order on the same stripe
+                    do {
+                        int item = order[i++];
+                        long isbn = isbns[item];
+                        books[item] = catalog.get(isbn);
+                        if (books[item] == null) {
+                            results.set(item, OperationResult.NOT_FOUND);
+                        } else if (borrow ? catalog.availability(isbn) > 0 : catalog.availability(isbn) == 0) {
+                            setAvailability(isbn, borrow ? 0 : 1);
+                            results.set(item, borrow ? OperationResult.BORROWED : OperationResult.RETURNED);
+                            if (log != null) {
+                                sequence = log.logAvailability(isbn, borrow ? 0 : 1);
+                            }
+                        } else {
+                            results.set(item, borrow ? OperationResult.UNAVAILABLE : OperationResult.ALREADY_AVAILABLE);
+                        }
+                    } while (i < order.length && stripeFor(isbns[order[i]]) == stripe);
+                }
+            }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        if (sequence > 0) {
+            commitJournal(log, sequence);
+        }
+        metrics.batch(start, operation, results);
+        report(operation, isbns, books, results);
+        return results;
+    }
+
+    // The book under its Isbn.canonical() key, a copy when it was given an ISBN-13
+    private static Book canonical(Book book) {
+        long key = Isbn.canonical(book.getISBN());
+        if (key == book.getISBN()) {
+            return book;
+        }
+        return new Book(book.getTitle(), book.getAuthor(), key, book.getPubYear(), book.getAvailability());
+    }
+
+    // Isbn.canonical() of each ISBN, in a new array so the caller's is left alone
+    private static long[] canonical(long[] isbns) {
+        long[] keys = new long[isbns.length];
+        for (int i = 0; i < isbns.length; i++) {
+            keys[i] = Isbn.canonical(isbns[i]);
+        }
+        return keys;
+    }
+
+    /* O(b log b) time complexity, stable merge sort of item positions by LongBookMap.spread()
+       Equal ISBNs stay in the order they were given.
+     */
+    private static int[] hashOrder(long[] isbns) {
+        int n = isbns.length;
+        long[] keys = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = LongBookMap.spread(isbns[i]);
+            order[i] = i;
+        }
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int low = 0; low < n - width; low += width << 1) {
+                int mid = low + width;
+                int high = Math.min(low + (width << 1), n);
+                int left = low, right = mid, out = low;
+                while (left < mid && right < high) {
+                    buffer[out++] = Long.compareUnsigned(keys[order[right]], keys[order[left]]) < 0
+                            ? order[right++] : order[left++];
+                }
+                while (left < mid) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < high) {
+                    buffer[out++] = order[right++];
+                }
+                System.arraycopy(buffer, low, order, low, high - low);
+            }
+        }
+        return order;
+    }
+
+    // Per-item events in the order the items were given
+    private void report(LibraryEventSink.Operation operation, long[] isbns, Book[] books, BatchResult results) {
+        LibraryEventSink sink = events;
+        if (sink == LibraryEventSink.NONE) {
+            return;
+        }
+        for (int i = 0; i < isbns.length; i++) {
+            sink.onEvent(operation, results.get(i), isbns[i], books[i]);
+        }
+    }
+
+    // Lock guarding the availability of one ISBN, shared with every ISBN hashing to the same stripe
+    private Object stripeFor(long isbn) {
+        return stripes[(int) (LongBookMap.spread(isbn) >>> 56)];
+    }
+
+    /* Search method is: O(q + c x (t + a) + m + r log r) time complexity
+       q = length of query, c = number of candidate books from the trigram index
        t = length of title string
        a = length of author string
-       i = length of ISBN string
-       Must check every book for a match
+       m = number of candidate books from the ISBN trigram index
+       r = number of results
+       Digits, ignoring spaces and hyphens, also match anywhere in the ISBN, printed as an
+       ISBN-10 or as its 978 ISBN-13, so 9780441, 0-44-117 and 117271 all find 0-441-17271-7.
+       Queries shorter than a trigram still check every title, author and ISBN, O(n x (t + a) / p)
+       on p cores, and need no sort
+       A complete ISBN-10 or ISBN-13 with a valid check digit is one O(1) lookup instead.
+       Results are in title order.
     */
     public List<Book> searchBooks(String query) {
+        return searchBooks(query, BookFilter.ALL);
+    }
+
+    /* Same, keeping only available or borrowed books. The title, author and ISBN trigram
+       candidates are cut down with the availability bitmaps before any Book is read,
+       and a short query scans only the borrowed (or available) books when there are few.
+     */
+    public List<Book> searchBooks(String query, BookFilter filter) {
+        long start = metrics.start();
+        List<Book> results;
+        catalogLock.readLock().lock();
+        try {
+            results = searchIndexed(query, filter, Integer.MAX_VALUE);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        metrics.searched(start, results.size());
+        return results;
+    }
+
+    /* O(q + c x (t + a) + m + (c + m) log k) time complexity, k = limit
+       Same, keeping only the first limit books in title order. A query shorter than a
+       trigram walks the title order until it has them instead of checking every book, and
+       a longer one holds at most 2 x limit matches at a time instead of the full list.
+     */
+    public List<Book> searchBooks(String query, int limit) {
+        long start = metrics.start();
+        List<Book> results;
+        catalogLock.readLock().lock();
+        try {
+            results = searchIndexed(query, BookFilter.ALL, Math.max(limit, 0));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        metrics.searched(start, results.size());
+        return results;
+    }
+
+    private List<Book> searchIndexed(String query, BookFilter filter, int limit) {
+        List<Book> results = new ArrayList<>();
+        long exact = Isbn.parse(query);
+        if (exact != -1) {
+            if (limit > 0 && availabilityIndex.matches(exact, filter)) {
+                results.add(catalog.get(exact));
+            }
+            return results;
+        }
+
         String rawQuery = query.toLowerCase();
         // This is to search
         String isbnQuery = rawQuery.replaceAll("[\\s-]", "");
+        boolean digits = !isbnQuery.isEmpty() && isbnQuery.chars().allMatch(c -> c >= '0' && c <= '9');
+        long[] isbnCandidates = digits ? isbnIndex.candidates(isbnQuery) : new long[0];
+        // Digits too short for the ISBN trigrams are checked on every book along with the text
+        Predicate<Book> anyField = book -> matchesText(book, rawQuery)
+                || digits && matchesIsbn(book.getISBN(), isbnQuery);
 
-        List<Book> results = new ArrayList<>();
-        for (Book book : catalog.values()) {
-            // Check Title/Author (using raw query)
-            if (book.getTitle().toLowerCase().contains(rawQuery) ||
-                    book.getAuthor().toLowerCase().contains(rawQuery) ||
-                    // Check ISBN (using fixed query)
-                    String.valueOf(book.getISBN()).contains(isbnQuery)) {
-                results.add(book);
+        long[] textCandidates = isbnCandidates == null ? null : textIndex.candidates(rawQuery);
+        boolean everyBook = textCandidates == null;
+        if (textCandidates == null && filter != BookFilter.ALL
+                && availabilityIndex.count(filter) < catalog.size() / SCAN_RATIO) {
+            textCandidates = availabilityIndex.isbns(filter);
+        } else if (textCandidates != null && filter != BookFilter.ALL) {
+            textCandidates = availabilityIndex.retain(textCandidates, filter);
+        }
+        // A full scan comes back in title order already
+        boolean sorted = textCandidates == null;
+        if (textCandidates == null && limit == Integer.MAX_VALUE) {
+            results = ParallelScan.filter(catalog, book -> anyField.test(book) && matches(book, filter));
+        } else if (textCandidates == null) {
+            for (Iterator<Book> books = catalog.byTitle().iterator(); books.hasNext() && results.size() < limit; ) {
+                Book book = books.next();
+                if (anyField.test(book) && matches(book, filter)) {
+                    results.add(book);
+                }
+            }
+        } else {
+            for (long isbn : textCandidates) {
+                Book book = catalog.get(isbn);
+                if (everyBook ? anyField.test(book) : matchesText(book, rawQuery)) {
+                    results.add(book);
+                    keepFirst(results, limit);
+                }
             }
         }
-        return results;
+
+        // ISBN candidates are checked on the key alone, skipping books the text side found
+        if (!everyBook && isbnCandidates.length > 0) {
+            for (long isbn : filter == BookFilter.ALL ? isbnCandidates : availabilityIndex.retain(isbnCandidates, filter)) {
+                if (!matchesIsbn(isbn, isbnQuery)) {
+                    continue;
+                }
+                Book book = catalog.get(isbn);
+                if (!matchesText(book, rawQuery)) {
+                    results.add(book);
+                    keepFirst(results, limit);
+                    sorted = false;
+                }
+            }
+        }
+        if (!sorted) {
+            results.sort(CatalogStore.TITLE_ORDER);
+        }
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    // Once results hold twice the limit, drops all but the first limit in title order
+    private static void keepFirst(List<Book> results, int limit) {
+        if (results.size() - limit >= limit) {
+            results.sort(CatalogStore.TITLE_ORDER);
+            results.subList(limit, results.size()).clear();
+        }
+    }
+
+    private static boolean matches(Book book, BookFilter filter) {
+        switch (filter) {
+            case AVAILABLE:
+                return book.getAvailability() > 0;
+            case BORROWED:
+                return book.getAvailability() == 0;
+            default:
+                return true;
+        }
     }
 
-    /* O(n + m log m) time complexity for viewing available books
-       O(n) for finding all available/borrowed books, then (O m log m) to sort.
+    /* O(n x f / p) time complexity, f = cost of the predicate, p = cores
+       Books the predicate accepts, in title order, for conditions no index covers. Large
+       catalogs are scanned on every core, see ParallelScan. The predicate runs on pool
+       threads under the read lock, so it must not call back into the library.
      */
-    public void viewAvailableBooks(Scanner scanner) {
-        int PAGE_SIZE = 10;
-        int startIndex = 0;
+    public List<Book> searchBooks(Predicate<Book> predicate) {
+        long start = metrics.start();
+        List<Book> results;
+        catalogLock.readLock().lock();
+        try {
+            results = ParallelScan.filter(catalog, predicate);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        metrics.searched(start, results.size());
+        return results;
+    }
 
-        while (true) {
-            List<Book> availableBooks = new ArrayList<>();
-            for (Book book : catalog.values()) {
-                if (book.getAvailability() > 0) {
-                    availableBooks.add(book);
+    /* O(k x w x log p) time complexity for a broad query, w = number of words in the query,
+       p = number of books holding its most common word (see WordIndex.top)
+       Returns at most limit books, best first: the book whose ISBN is the query, then books
+       by how many query words appear as whole words in their title (worth 2) and author
+       (worth 1), ties by lower ISBN. Unlike searchBooks, a part of a word matches nothing,
+       and a query matching most of the catalog costs about the same as a narrow one.
+     */
+    public List<Book> searchRanked(String query, int limit) {
+        long start = metrics.start();
+        List<Book> results = new ArrayList<>();
+        catalogLock.readLock().lock();
+        try {
+            Book exact = exactIsbn(query);
+            if (exact != null && limit > 0) {
+                results.add(exact);
+            }
+            int wanted = Math.min(limit, catalog.size());
+            // One more than wanted when the exact book may be among them and get skipped
+            for (long isbn : wordIndex.top(WordIndex.words(query), exact == null ? wanted : wanted + 1)) {
+                if (results.size() == wanted) {
+                    break;
+                }
+                if (exact == null || isbn != exact.getISBN()) {
+                    results.add(catalog.get(isbn));
                 }
             }
-            availableBooks.sort(Comparator.comparing(Book::getTitle));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        metrics.searched(start, results.size());
+        return results;
+    }
 
-            int totalBooks = availableBooks.size();
-            if (totalBooks == 0) {
-                System.out.println("\n--- Available Books ---");
-                System.out.println("No books are currently available.");
-                System.out.println("------------------------");
-                break;
+    /* O(p + m log m) time complexity, p = number of books by authors with that surname,
+       m = number of books by the named author
+       Books by one author, in title order: "Herbert", "Herbert, Frank" or "Frank Herbert".
+       Unlike searchBooks, "Lee" does not find "Lee Child" as a given name or "Leeds" as part
+       of one, see AuthorIndex for how author blocks are split.
+     */
+    public List<Book> findBooksByAuthor(String name) {
+        long start = metrics.start();
+        List<Book> results = new ArrayList<>();
+        catalogLock.readLock().lock();
+        try {
+            for (long isbn : authorIndex.find(name)) {
+                results.add(catalog.get(isbn));
             }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        results.sort(CatalogStore.TITLE_ORDER);
+        metrics.searched(start, results.size());
+        return results;
+    }
+
+    /* O(e + s log s + k x c + r log r) time complexity, e = cost of sizing the indexes (the
+       author's postings, the years in range, a trigram lookup per title term), s = ISBNs of
+       the intersected sources, k = books left after intersecting them, c = cost of checking
+       the other conditions, r = number of results
+       Books matching every condition of the query, in its order and up to its limit. The
+       planner sizes every index that can serve a condition: author index, year index, the
+       available and borrowed bitmaps, trigram index for title terms. It takes the smallest,
+       and any other at most INTERSECT_RATIO times its size, as bitmaps of book ordinals
+       (see AvailabilityIndex.ordinals) and ANDs them, ANDs the result with the availability
+       bitmaps a shard at a time, and only then reads the remaining books to check the
+       conditions no index answered exactly. When no index narrows the catalog below
+       1/SCAN_RATIO, a ParallelScan checks every book instead.
+     */
+    public List<Book> query(BookQuery query) {
+        long start = metrics.start();
+        List<Book> results;
+        catalogLock.readLock().lock();
+        try {
+            results = plan(query).run();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        metrics.searched(start, results.size());
+        return results;
+    }
+
+    // The sources query() intersects and their sizes, e.g. "author index (12 books)"
+    public String explain(BookQuery query) {
+        catalogLock.readLock().lock();
+        try {
+            return plan(query).toString();
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
 
-            if (startIndex >= totalBooks) {
-                startIndex = Math.max(0, totalBooks - PAGE_SIZE);
+    // Sizes the candidate sources under the read lock, see QueryPlan for which are used
+    private QueryPlan plan(BookQuery query) {
+        QueryPlan plan = new QueryPlan(query);
+        if (query.getAuthor() != null) {
+            long[] byAuthor = authorIndex.find(query.getAuthor());
+            Arrays.sort(byAuthor);
+            plan.authorIsbns = byAuthor;
+            plan.consider("author index", byAuthor.length, () -> availabilityIndex.ordinals(byAuthor));
+        }
+        if (query.hasYearRange()) {
+            int from = query.getFromYear();
+            int to = query.getToYear();
+            plan.consider("year index", yearIndex.count(from, to),
+                    () -> availabilityIndex.ordinals(yearIndex.isbns(from, to)));
+        }
+        if (query.getFilter() != BookFilter.ALL) {
+            plan.consider(query.getFilter().name().toLowerCase() + " bitmap", availabilityIndex.count(query.getFilter()),
+                    () -> availabilityIndex.ordinals(query.getFilter()));
+        }
+        for (String term : query.getTitleTerms()) {
+            long[] candidates = textIndex.candidates(term);
+            if (candidates != null) {
+                plan.consider("title index", candidates.length, () -> availabilityIndex.ordinals(candidates));
             }
-            startIndex = Math.max(0, startIndex);
+        }
+        return plan;
+    }
 
+    /* Starts as a full scan. Every index narrowing the catalog below 1/SCAN_RATIO is a
+       source; run() uses the smallest and those at most INTERSECT_RATIO times its size,
+       since building a bitmap costs one ordinal lookup per ISBN while checking a book costs
+       reading it from the store.
+     */
+    private class QueryPlan {
+        private final BookQuery query;
+        private final int scanLimit = catalog.size() / SCAN_RATIO;
+        private final List<Source> sources = new ArrayList<>();
+        // Sorted, only set when the query names an author
+        private long[] authorIsbns;
 
-            int endIndex = Math.min(startIndex + PAGE_SIZE, totalBooks);
-            System.out.printf("\n--- Available Books " +
-                            "(Showing %d to %d of %d) ---\n", startIndex + 1,
-                    endIndex, totalBooks);
+        QueryPlan(BookQuery query) {
+            this.query = query;
+        }
 
-            for (int i = startIndex; i < endIndex; i++) {
-                Book book = availableBooks.get(i);
-                System.out.printf("%d. %s (%d), Author: %s (ISBN: %d)\n",
-                        i + 1, book.getTitle(), book.getPubYear(),
-                        book.getAuthor(), book.getISBN());
+        void consider(String name, int size, Supplier<CompressedBitmap> ordinals) {
+            if (size < scanLimit) {
+                sources.add(new Source(name, size, ordinals));
             }
+        }
 
-            String prompt = "Enter book # to borrow, 'N' for next page, " +
-                    "'P' for previous page, or 'M' for menu: ";
-            System.out.print(prompt);
-            String input = scanner.nextLine().trim();
+        // Smallest first, ties in the order considered
+        List<Source> used() {
+            sources.sort(Comparator.comparingInt(source -> source.size));
+            List<Source> used = new ArrayList<>();
+            for (Source source : sources) {
+                if (used.isEmpty() || source.size <= (long) used.get(0).size * INTERSECT_RATIO) {
+                    used.add(source);
+                }
+            }
+            return used;
+        }
 
-            if (input.equalsIgnoreCase("M")) {
-                System.out.println("Returning to main menu...");
-                break;
-            } else if (input.equalsIgnoreCase("N")) {
-                if (endIndex < totalBooks) {
-                    startIndex = endIndex;
-                } else {
-                    System.out.println("Already on the last page.");
+        List<Book> run() {
+            List<Book> results;
+            List<Source> used = used();
+            if (used.isEmpty()) {
+                results = ParallelScan.filter(catalog, this::matches);
+            } else {
+                CompressedBitmap ordinals = used.get(0).ordinals.get();
+                for (int i = 1; i < used.size() && !ordinals.isEmpty(); i++) {
+                    ordinals = ordinals.and(used.get(i).ordinals.get());
                 }
-            } else if (input.equalsIgnoreCase("P")) {
-                if (startIndex > 0) {
-                    startIndex = Math.max(0, startIndex - PAGE_SIZE);
-                } else {
-                    System.out.println("Already on the first page.");
+                results = new ArrayList<>();
+                for (long isbn : availabilityIndex.isbns(ordinals, query.getFilter())) {
+                    Book book = catalog.get(isbn);
+                    if (matches(book)) {
+                        results.add(book);
+                    }
                 }
-            } else {
-                try {
-                    int bookNumber = Integer.parseInt(input);
+            }
+            if (query.getOrder() != BookQuery.Order.TITLE || !used.isEmpty()) {
+                results.sort(query.getOrder().comparator());
+            }
+            return results.size() > query.getLimit()
+                    ? new ArrayList<>(results.subList(0, query.getLimit())) : results;
+        }
 
-                    if (bookNumber >= 1 && bookNumber <= totalBooks) {
-                        Book bookToBorrow = availableBooks.get(bookNumber - 1);
-                        borrowBook(bookToBorrow.getISBN());
-                    } else {
-                        System.out.println("Invalid book number. " +
-                                "Please enter a number between 1 and "
-                                + totalBooks + ".");
+        // Every condition, including the one the source already guarantees
+        boolean matches(Book book) {
+            int year = book.getPubYear();
+            if (year < query.getFromYear() || year > query.getToYear()) {
+                return false;
+            }
+            if (!Library.matches(book, query.getFilter())) {
+                return false;
+            }
+            if (authorIsbns != null && Arrays.binarySearch(authorIsbns, book.getISBN()) < 0) {
+                return false;
+            }
+            if (!query.getTitleTerms().isEmpty()) {
+                String title = book.getTitle().toLowerCase();
+                for (String term : query.getTitleTerms()) {
+                    if (!title.contains(term)) {
+                        return false;
                     }
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid input. " +
-                            "Please enter a valid book number, " +
-                            "'N', 'P', or 'M'.");
                 }
             }
+            return true;
         }
-        System.out.println("--- End of List ---");
+
+        // e.g. "author index (12 books)" or "year index (900 books) and title index (2000 books)"
+        @Override
+        public String toString() {
+            List<Source> used = used();
+            if (used.isEmpty()) {
+                return "full scan (" + catalog.size() + " books)";
+            }
+            StringJoiner plan = new StringJoiner(" and ");
+            for (Source source : used) {
+                plan.add(source.name + " (" + source.size + " books)");
+            }
+            return plan.toString();
+        }
+    }
+
+    // One index that can serve a condition of a query, with its ISBNs as book ordinals
+    private static class Source {
+        final String name;
+        final int size;
+        final Supplier<CompressedBitmap> ordinals;
+
+        Source(String name, int size, Supplier<CompressedBitmap> ordinals) {
+            this.name = name;
+            this.size = size;
+            this.ordinals = ordinals;
+        }
+    }
+
+    // The book whose ISBN is the whole query, hyphens and spaces ignored, checked or not
+    private Book exactIsbn(String query) {
+        long key = Isbn.lenient(query);
+        return key == -1 ? null : catalog.get(key);
+    }
+
+    // Check ISBN (using fixed query) in each form it prints in
+    private static boolean matchesIsbn(long isbn, String isbnQuery) {
+        for (String form : Isbn.printedForms(isbn)) {
+            if (form.contains(isbnQuery)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Check Title/Author (using raw query)
+    private static boolean matchesText(Book book, String rawQuery) {
+        return book.getTitle().toLowerCase().contains(rawQuery) ||
+                book.getAuthor().toLowerCase().contains(rawQuery);
+    }
+
+    // Adds or replaces a book along with its index entries
+    private void putBook(Book book) {
+        Book previous = catalog.put(book);
+        if (previous != null) {
+            reindexBook(previous, book);
+        } else {
+            indexBook(book);
+        }
+    }
+
+    // Availability changes go through here so the availability index stays in step
+    private void setAvailability(long isbn, int availability) {
+        catalog.setAvailability(isbn, availability);
+        availabilityIndex.set(isbn, availability);
+    }
+
+    private Book dropBook(long isbn) {
+        Book removed = catalog.remove(isbn);
+        if (removed != null) {
+            unindexBook(removed);
+        }
+        return removed;
+    }
+
+    /* Called after the locks are released, so concurrent operations share one fsync.
+       The change is already applied in memory, this only reports a failure to make it durable.
+     */
+    private void commitJournal(CatalogJournal log, long sequence) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.commit(sequence);
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+        }
+    }
+
+    private void indexBook(Book book) {
+        textIndex.add(book.getISBN(), book.getTitle().toLowerCase(),
+                book.getAuthor().toLowerCase());
+        isbnIndex.add(book.getISBN(), Isbn.printedForms(book.getISBN()));
+        wordIndex.add(book.getISBN(), book.getTitle(), book.getAuthor());
+        authorIndex.add(book.getISBN(), book.getAuthor());
+        yearIndex.add(book.getPubYear(), book.getISBN());
+        availabilityIndex.add(book.getISBN(), book.getAvailability());
+    }
+
+    /* A book replaced under the same ISBN, as by an import: only the indexes whose fields
+       changed are updated, and the text indexes only for the trigrams and words that changed.
+     */
+    private void reindexBook(Book previous, Book book) {
+        long isbn = book.getISBN();
+        boolean titleChanged = !previous.getTitle().equals(book.getTitle());
+        boolean authorChanged = !previous.getAuthor().equals(book.getAuthor());
+        if (titleChanged || authorChanged) {
+            textIndex.replace(isbn,
+                    new String[]{previous.getTitle().toLowerCase(), previous.getAuthor().toLowerCase()},
+                    new String[]{book.getTitle().toLowerCase(), book.getAuthor().toLowerCase()});
+            wordIndex.replace(isbn, previous.getTitle(), previous.getAuthor(), book.getTitle(), book.getAuthor());
+        }
+        if (authorChanged) {
+            authorIndex.remove(isbn, previous.getAuthor());
+            authorIndex.add(isbn, book.getAuthor());
+        }
+        if (previous.getPubYear() != book.getPubYear()) {
+            yearIndex.remove(previous.getPubYear(), isbn);
+            yearIndex.add(book.getPubYear(), isbn);
+        }
+        availabilityIndex.set(isbn, book.getAvailability());
+    }
+
+    private void unindexBook(Book book) {
+        textIndex.remove(book.getISBN(), book.getTitle().toLowerCase(),
+                book.getAuthor().toLowerCase());
+        isbnIndex.remove(book.getISBN(), Isbn.printedForms(book.getISBN()));
+        wordIndex.remove(book.getISBN(), book.getTitle(), book.getAuthor());
+        authorIndex.remove(book.getISBN(), book.getAuthor());
+        yearIndex.remove(book.getPubYear(), book.getISBN());
+        availabilityIndex.remove(book.getISBN());
+    }
+
+    /* O(log n + n / 256 + p) time complexity per page, p = pageSize, with both stores: the books the filter
+       leaves out are passed over within blocks of 256 in title order, blocks holding none are skipped
+       Keyset pagination over the store's title order: a cursor names the book a page
+       starts after or ends before, so a deep page costs the same as the first one.
+       A null cursor returns the first page.
+     */
+    public BookPage getPage(BookFilter filter, String cursor, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1.");
+        }
+        catalogLock.readLock().lock();
+        try {
+            return pageOf(filter, cursor, pageSize);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    private BookPage pageOf(BookFilter filter, String cursor, int pageSize) {
+        int total = catalog.count(filter);
+
+        List<Book> page;
+        if (cursor == null) {
+            page = catalog.pageFrom(filter, null, true, pageSize);
+        } else {
+            String raw = decodeCursor(cursor);
+            char direction = raw.charAt(0);
+            Book key = cursorKey(raw);
+            if (direction == CURSOR_BEFORE) {
+                page = catalog.pageBefore(filter, key, pageSize);
+            } else {
+                page = catalog.pageFrom(filter, key, direction == CURSOR_FROM, pageSize);
+                if (page.isEmpty()) {
+                    // Nothing left at or after the key, previous page is everything before it
+                    return new BookPage(page, cursor, null,
+                            catalog.hasBefore(filter, key) ? encodeCursor(CURSOR_BEFORE, key) : null,
+                            total);
+                }
+            }
+        }
+        if (page.isEmpty()) {
+            return new BookPage(page, null, null, null, total);
+        }
+
+        Book first = page.get(0);
+        Book last = page.get(page.size() - 1);
+        return new BookPage(page,
+                encodeCursor(CURSOR_FROM, first),
+                catalog.hasAfter(filter, last) ? encodeCursor(CURSOR_AFTER, last) : null,
+                catalog.hasBefore(filter, first) ? encodeCursor(CURSOR_BEFORE, first) : null,
+                total);
+    }
+
+    // Pages through available books, each entry can be picked by number to borrow it
+    public void viewAvailableBooks(Scanner scanner) {
+        viewBooks(scanner, BookFilter.AVAILABLE, "Available Books",
+                "No books are currently available.", "borrow");
     }
 
     // Same as viewAvailableBooks() time complexity
     public void viewBorrowedBooks(Scanner scanner) {
+        viewBooks(scanner, BookFilter.BORROWED, "Borrowed Books",
+                "No books are currently borrowed.", "RETURN");
+    }
+
+    /* Interactive renderer over getPage(), one getPage() per page turn.
+       Positions are counted from the page cursors instead of being looked up,
+       picking a book number that is not on the current page walks the set.
+     */
+    private void viewBooks(Scanner scanner, BookFilter filter, String heading,
+                           String emptyMessage, String action) {
         final int PAGE_SIZE = 10;
         int startIndex = 0;
+        String cursor = null;
 
         while (true) {
-            List<Book> borrowedBooks = new ArrayList<>();
-            for (Book book : catalog.values()) {
-                if (book.getAvailability() == 0) {
-                    borrowedBooks.add(book);
-                }
+            BookPage page = getPage(filter, cursor, PAGE_SIZE);
+            if (page.isEmpty() && page.getPreviousCursor() != null) {
+                // Everything from the cursor on is gone, fall back to the last page
+                page = getPage(filter, page.getPreviousCursor(), PAGE_SIZE);
+                startIndex = page.getTotalBooks() - page.getBooks().size();
             }
-
-            borrowedBooks.sort(Comparator.comparing(Book::getTitle));
-
-            int totalBooks = borrowedBooks.size();
-            if (totalBooks == 0) {
-                System.out.println("\n--- Borrowed Books ---");
-                System.out.println("No books are currently borrowed.");
+            int totalBooks = page.getTotalBooks();
+            if (page.isEmpty()) {
+                System.out.println("\n--- " + heading + " ---");
+                System.out.println(emptyMessage);
                 System.out.println("------------------------");
                 break;
             }
+            List<Book> books = page.getBooks();
+            cursor = page.getCursor();
+            startIndex = Math.max(0, Math.min(startIndex, totalBooks - books.size()));
 
-            if (startIndex >= totalBooks) {
-                startIndex = Math.max(0, totalBooks - PAGE_SIZE);
-            }
-            startIndex = Math.max(0, startIndex);
 
-
-            int endIndex = Math.min(startIndex + PAGE_SIZE, totalBooks);
-            System.out.printf("\n--- Borrowed Books " +
+            int endIndex = startIndex + books.size();
+            System.out.printf("\n--- " + heading + " " +
                             "(Showing %d to %d of %d) ---\n", startIndex + 1,
                     endIndex, totalBooks);
 
             for (int i = startIndex; i < endIndex; i++) {
-                Book book = borrowedBooks.get(i);
-                System.out.printf("%d. %s (%d), Author: %s (ISBN: %d)\n",
+                Book book = books.get(i - startIndex);
+                System.out.printf("%d. %s (%d), Author: %s (ISBN: %s)\n",
                         i + 1, book.getTitle(), book.getPubYear(),
-                        book.getAuthor(), book.getISBN());
+                        book.getAuthor(), Isbn.format(book.getISBN()));
             }
 
-            String prompt = "Enter book # to RETURN, 'N' for next page," +
-                    " 'P' for previous page, or 'M' for menu: ";
-
+            String prompt = "Enter book # to " + action + ", 'N' for next page, " +
+                    "'P' for previous page, or 'M' for menu: ";
             System.out.print(prompt);
             String input = scanner.nextLine().trim();
 
@@ -305,14 +1230,17 @@ public class Library {
                 System.out.println("Returning to main menu...");
                 break;
             } else if (input.equalsIgnoreCase("N")) {
-                if (endIndex < totalBooks) {
+                if (page.getNextCursor() != null) {
+                    cursor = page.getNextCursor();
                     startIndex = endIndex;
                 } else {
                     System.out.println("Already on the last page.");
                 }
             } else if (input.equalsIgnoreCase("P")) {
-                if (startIndex > 0) {
-                    startIndex = Math.max(0, startIndex - PAGE_SIZE);
+                if (page.getPreviousCursor() != null) {
+                    BookPage previous = getPage(filter, page.getPreviousCursor(), PAGE_SIZE);
+                    cursor = previous.getCursor();
+                    startIndex = Math.max(0, startIndex - previous.getBooks().size());
                 } else {
                     System.out.println("Already on the first page.");
                 }
@@ -320,40 +1248,121 @@ public class Library {
                 try {
                     int bookNumber = Integer.parseInt(input);
 
-                    if (bookNumber >= 1 && bookNumber <= totalBooks) {
-                        Book bookToReturn = borrowedBooks.get(bookNumber - 1);
-                        returnBook(bookToReturn.getISBN());
+                    Book picked = bookNumber >= 1 && bookNumber <= totalBooks
+                            ? bookAt(filter, books, startIndex, bookNumber - 1) : null;
+                    if (picked != null) {
+                        OperationResult result = filter == BookFilter.BORROWED
+                                ? returnBook(picked.getISBN()) : borrowBook(picked.getISBN());
+                        if (result.isChange() && bookNumber <= startIndex) {
+                            startIndex--;
+                        }
                     } else {
                         System.out.println("Invalid book number. " +
-                                "Please enter a number between 1 and " + totalBooks + ".");
+                                "Please enter a number between 1 and "
+                                + totalBooks + ".");
                     }
                 } catch (NumberFormatException e) {
                     System.out.println("Invalid input. " +
-                            "Please enter a valid book number, 'N', 'P', or 'M'.");
+                            "Please enter a valid book number, " +
+                            "'N', 'P', or 'M'.");
                 }
             }
         }
         System.out.println("--- End of List ---");
     }
 
-    // O(n log n) time complexity, n is total number of books, copying and sorting operation
-    public void saveCatalog(String filename) {
-        try (PrintWriter writer = new PrintWriter(new File(filename))) {
-            writer.println(FILE_HEADER);
+    // Cursor = direction char + ISBN + ':' + title, Base64 encoded so callers treat it as opaque
+    private static final char CURSOR_FROM = 'F';
+    private static final char CURSOR_AFTER = 'A';
+    private static final char CURSOR_BEFORE = 'B';
 
-            // 1. Get available and unavailable books from the map
-            List<Book> books = new ArrayList<>(catalog.values());
+    private static String encodeCursor(char direction, Book key) {
+        String raw = direction + String.valueOf(key.getISBN()) + ":" + key.getTitle();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
 
-            // 2. Sorts the entire list
-            books.sort(Comparator.comparing(Book::getTitle));
+    // Returns the decoded cursor after checking its direction and ISBN parts
+    private static String decodeCursor(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+        }
+        int colon = raw.indexOf(':');
+        char direction = raw.isEmpty() ? 0 : raw.charAt(0);
+        if (colon < 2 || (direction != CURSOR_FROM && direction != CURSOR_AFTER
+                && direction != CURSOR_BEFORE) || !raw.substring(1, colon).matches("-?\\d{1,18}")) {
+            throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+        }
+        return raw;
+    }
 
-            // 3. Write the sorted list to the file
-            for (Book book : books) {
-                writer.println(book.toString());
-            }
+    // Probe book holding just the title and ISBN the sets are ordered by
+    private static Book cursorKey(String raw) {
+        int colon = raw.indexOf(':');
+        return new Book(raw.substring(colon + 1), "", Long.parseLong(raw.substring(1, colon)), 0);
+    }
+
+    /* Book at an absolute position, only asks the store when it is not on the current page.
+       Null when another thread has shrunk the list below that position in the meantime.
+     */
+    private Book bookAt(BookFilter filter, List<Book> page, int startIndex, int index) {
+        if (index >= startIndex && index < startIndex + page.size()) {
+            return page.get(index - startIndex);
+        }
+        catalogLock.readLock().lock();
+        try {
+            return catalog.bookAt(filter, index);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /* O(n) time complexity, n is total number of books
+       Streams the title-ordered index through a 64 KB buffer into a temp file,
+       which replaces the target only once it is fully written and synced.
+     */
+    public void saveCatalog(String filename) {
+        long start = metrics.start();
+        long[] bytes = {0};
+        catalogLock.readLock().lock();
+        try {
+            AtomicFile.write(Paths.get(filename), channel -> {
+                Writer writer = Channels.newWriter(channel, Charset.defaultCharset().newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE), 1 << 16);
+                String lineSeparator = System.lineSeparator();
+                writer.write(FILE_HEADER);
+                writer.write(lineSeparator);
+
+                for (Book book : catalog.byTitle()) {
+                    writer.write(book.toString());
+                    writer.write(lineSeparator);
+                }
+                writer.flush();
+                bytes[0] = channel.position();
+            });
+            metrics.saved(start, bytes[0]);
             System.out.printf("Catalog successfully saved to %s.\n", filename);
-        } catch (FileNotFoundException e) {
+        } catch (IOException | InvalidPathException e) {
             System.out.println("Error saving file: " + e.getMessage());
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    // O(n) time complexity, binary counterpart of saveCatalog() that also keeps availability
+    public void writeSnapshot(String filename) {
+        catalogLock.readLock().lock();
+        try {
+            CatalogSnapshot.write(Paths.get(filename), catalog.byTitle());
+            System.out.printf("Snapshot successfully saved to %s.\n", filename);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Error saving snapshot: " + e.getMessage());
+        } finally {
+            catalogLock.readLock().unlock();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/* Checks how author blocks are split into names, and that findBooksByAuthor() matches a
+   scan of the parsed names on both stores while books come and go.
+ */
+public class LibraryAuthorTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Library Author Test ===");
+
+        System.out.println("\n1. Author blocks:");
+        check("surnames with et al", AuthorIndex.names("Perez, Lee, et al").equals(List.of("perez", "lee")));
+        check("surname and given name", AuthorIndex.names("Herbert,  Frank").equals(List.of("herbert, frank")));
+        check("given name with an initial", AuthorIndex.names("Le Guin, Ursula K.").equals(List.of("le guin, ursula k")));
+        check("two surnames read both ways", AuthorIndex.names("Martinez, Jones")
+                .equals(List.of("martinez, jones", "jones")));
+        check("initials", AuthorIndex.names("Le Guin, U.K.").equals(AuthorIndex.names("le guin, u. k.")));
+        check("four surnames", AuthorIndex.names("Gamma, Helm, Johnson, Vlissides").size() == 4);
+        check("one name", AuthorIndex.names("Homer").equals(List.of("homer")));
+        check("repeated surname", AuthorIndex.names("Smith, Smith, et al").equals(List.of("smith")));
+        check("empty", AuthorIndex.names(" , ").isEmpty());
+
+        System.out.println("\n2. Lookups:");
+        Path file = Files.createTempFile("library-author-test", ".txt");
+        PrintStream out = System.out;
+        try {
+            Files.write(file, Arrays.asList(
+                    "Dune, by Herbert, Frank, 0-44-117271-7, 1965",
+                    "Dune Messiah, by Herbert, Frank, 0-44-117269-5, 1969",
+                    "Man of Two Worlds, by Herbert, Brian, 0-44-151857-5, 1986",
+                    "The Left Hand of Darkness, by Le Guin, Ursula K., 0-44-147812-3, 1969",
+                    "Design Patterns, by Gamma, Helm, et al, 0-20-163361-2, 1994",
+                    "Herbert the Turtle, by Leeds, Anna, 0-12-345678-9, 2001"));
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library library = new Library(file.toString());
+            System.setOut(out);
+            check("surname", titles(library.findBooksByAuthor("HERBERT"))
+                    .equals(List.of("Dune", "Dune Messiah", "Man of Two Worlds")));
+            check("surname, given", titles(library.findBooksByAuthor("herbert, frank"))
+                    .equals(List.of("Dune", "Dune Messiah")));
+            check("given surname", library.findBooksByAuthor("Frank Herbert").size() == 2
+                    && library.findBooksByAuthor("ursula k. le guin").size() == 1);
+            check("second author", library.findBooksByAuthor("Helm").size() == 1);
+            check("no partial names", library.findBooksByAuthor("Lee").isEmpty()
+                    && library.findBooksByAuthor("Frank").isEmpty());
+            library.removeBook(441172717L);
+            check("after remove", titles(library.findBooksByAuthor("Herbert, Frank")).equals(List.of("Dune Messiah")));
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println("\n3. Lookups match a scan of the parsed names:");
+        Path large = Files.createTempFile("library-author-test", ".txt");
+        try {
+            new CatalogGenerator(21).write(large, 20_000);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library[] libraries = {new Library(large.toString(), CatalogStorage.HEAP),
+                    new Library(large.toString(), CatalogStorage.OFF_HEAP)};
+            System.setOut(out);
+            List<Book> books = new ArrayList<>(libraries[0].searchBooks(""));
+            Random random = new Random(21);
+            boolean[] same = {true, true};
+            for (int round = 0; round < 100; round++) {
+                Book gone = books.remove(random.nextInt(books.size()));
+                for (Library library : libraries) {
+                    library.removeBook(gone.getISBN());
+                }
+                List<String> names = AuthorIndex.names(books.get(random.nextInt(books.size())).getAuthor());
+                String name = names.get(random.nextInt(names.size()));
+                String query = random.nextBoolean() ? name : name.split(", ")[0];
+                List<Long> expected = new ArrayList<>();
+                for (Book book : books) {
+                    for (String author : AuthorIndex.names(book.getAuthor())) {
+                        if (author.equals(query) || author.startsWith(query + ", ")) {
+                            expected.add(book.getISBN());
+                            break;
+                        }
+                    }
+                }
+                expected.sort(null);
+                for (int s = 0; s < 2; s++) {
+                    List<Long> found = new ArrayList<>();
+                    for (Book book : libraries[s].findBooksByAuthor(query)) {
+                        found.add(book.getISBN());
+                    }
+                    found.sort(null);
+                    same[s] &= found.equals(expected);
+                }
+            }
+            check("heap", same[0]);
+            check("off-heap", same[1]);
+
+            // The generator writes "Last, Last" blocks too, the second surname has to be found
+            int withJones = 0;
+            for (Book book : books) {
+                withJones += Arrays.asList(book.getAuthor().split(", ")).contains("Jones") ? 1 : 0;
+            }
+            check("every block naming Jones", withJones > 0
+                    && libraries[0].findBooksByAuthor("Jones").size() == withJones
+                    && libraries[1].findBooksByAuthor("Jones").size() == withJones);
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(large);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static List<String> titles(List<Book> books) {
+        List<String> titles = new ArrayList<>();
+        for (Book book : books) {
+            titles.add(book.getTitle());
+        }
+        return titles;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
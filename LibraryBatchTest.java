@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* Checks that batch add/remove/borrow/return give the same per-item results and leave
+   the same catalog as the single-item calls made in the given order, on both stores,
+   that batches are journaled, and that their events arrive in the given order.
+ */
+public class LibraryBatchTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Library Batch Test ===");
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Library[] batched = {new Library("missing-catalog-for-batch-test.txt", CatalogStorage.HEAP),
+                new Library("missing-catalog-for-batch-test.txt", CatalogStorage.OFF_HEAP)};
+        Library single = new Library("missing-catalog-for-batch-test.txt");
+        System.setOut(out);
+
+        System.out.println("\n1. Batches match single calls, duplicates and missing ISBNs included:");
+        Random random = new Random(17);
+        boolean[] sameResults = {true, true};
+        for (int round = 0; round < 40; round++) {
+            int size = 1 + random.nextInt(3000);
+            long[] isbns = new long[size];
+            for (int i = 0; i < size; i++) {
+                isbns[i] = random.nextInt(4000) - 100;
+            }
+            int op = random.nextInt(4);
+            BatchResult[] results = new BatchResult[2];
+            OperationResult[] expected = new OperationResult[size];
+            if (op == 0) {
+                List<Book> books = new ArrayList<>();
+                for (long isbn : isbns) {
+                    books.add(new Book("Title " + random.nextInt(500), "Author", isbn, 2000));
+                }
+                for (int s = 0; s < 2; s++) {
+                    List<Book> copies = new ArrayList<>();
+                    for (Book book : books) {
+                        copies.add(new Book(book.getTitle(), book.getAuthor(), book.getISBN(), book.getPubYear()));
+                    }
+                    results[s] = batched[s].addBooks(copies);
+                }
+                for (int i = 0; i < size; i++) {
+                    expected[i] = single.addBook(books.get(i));
+                }
+            } else {
+                for (int s = 0; s < 2; s++) {
+                    results[s] = op == 1 ? batched[s].removeBooks(isbns)
+                            : op == 2 ? batched[s].borrowBooks(isbns) : batched[s].returnBooks(isbns);
+                }
+                for (int i = 0; i < size; i++) {
+                    expected[i] = op == 1 ? single.removeBook(isbns[i])
+                            : op == 2 ? single.borrowBook(isbns[i]) : single.returnBook(isbns[i]);
+                }
+            }
+            for (int s = 0; s < 2; s++) {
+                for (int i = 0; i < size; i++) {
+                    sameResults[s] &= results[s].get(i) == expected[i];
+                }
+            }
+        }
+        check("heap results", sameResults[0]);
+        check("off-heap results", sameResults[1]);
+        check("heap catalog", listing(batched[0]).equals(listing(single)));
+        check("off-heap catalog", listing(batched[1]).equals(listing(single)));
+
+        System.out.println("\n2. Batches are journaled:");
+        Path dir = Files.createTempDirectory("library-batch-test");
+        Path snapshot = dir.resolve("catalog.snapshot");
+        Path journal = dir.resolve("catalog.journal");
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library durable = Library.openDurable(snapshot.toString(), journal.toString());
+            List<Book> books = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                books.add(new Book("Book " + i, "Author", 5000 + i, 1999));
+            }
+            durable.addBooks(books);
+            long[] isbns = new long[50];
+            for (int i = 0; i < 50; i++) {
+                isbns[i] = 5000 + 2 * i;
+            }
+            durable.borrowBooks(isbns);
+            durable.removeBooks(new long[]{5001, 5003});
+            durable.closeJournal();
+            Library reopened = Library.openDurable(snapshot.toString(), journal.toString());
+            System.setOut(out);
+            check("98 books, 50 borrowed after replay", reopened.getTotalBooks() == 98
+                    && reopened.getBorrowedBooksCount() == 50);
+            reopened.closeJournal();
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println("\n3. Events arrive in the order the items were given:");
+        List<Long> seen = new ArrayList<>();
+        Library library = batched[0];
+        library.setEventSink((operation, result, isbn, book) -> seen.add(isbn));
+        long[] isbns = {3999, 7, -5, 1234, 7, 88};
+        library.returnBooks(isbns);
+        check("in order", seen.equals(List.of(3999L, 7L, -5L, 1234L, 7L, 88L)));
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Every book with its availability, in title order
+    private static List<String> listing(Library library) {
+        List<String> lines = new ArrayList<>();
+        String cursor = null;
+        do {
+            BookPage page = library.getPage(BookFilter.ALL, cursor, 500);
+            for (Book book : page.getBooks()) {
+                lines.add(book + " [" + book.getAvailability() + "]");
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return lines;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
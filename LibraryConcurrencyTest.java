@@ -0,0 +1,129 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/* Hammers one Library from many threads: borrowers and returners fight over a small
+   set of ISBNs while other threads add/remove books and search. A successful borrow
+   must never hand out a copy someone else already holds, and the available/borrowed
+   counts must add up once everything has stopped.
+ */
+public class LibraryConcurrencyTest {
+    private static int failures = 0;
+
+    private static final int HOT_BOOKS = 16;
+    private static final long HOT_BASE = 1_000_000L;
+    private static final long CHURN_BASE = 2_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Library Concurrency Test ===");
+        Library library = new Library("missing-catalog-for-concurrency-test.txt");
+        for (int i = 0; i < HOT_BOOKS; i++) {
+            library.addBook(new Book("Hot Book " + i, "Author " + i, HOT_BASE + i, 2000));
+        }
+
+        int borrowers = 8;
+        int operations = 20_000;
+        AtomicIntegerArray held = new AtomicIntegerArray(HOT_BOOKS);
+        AtomicInteger doubleLoans = new AtomicInteger();
+        AtomicInteger loans = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < borrowers; t++) {
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    int book = random.nextInt(HOT_BOOKS);
+                    if (library.borrowBook(HOT_BASE + book) == OperationResult.BORROWED) {
+                        loans.incrementAndGet();
+                        // Only the holder may clear the flag, so a second winner finds it set
+                        if (!held.compareAndSet(book, 0, 1)) {
+                            doubleLoans.incrementAndGet();
+                            continue;
+                        }
+                        // Hold the copy for a moment so an overlapping loan has time to show up
+                        Thread.yield();
+                        held.set(book, 0);
+                        library.returnBook(HOT_BASE + book);
+                    }
+                }
+            }));
+        }
+        // Adds and removes change the catalog shape while the borrowers run
+        workers.add(new Thread(() -> {
+            for (int i = 0; i < operations / 4; i++) {
+                library.addBook(new Book("Churn " + i, "Churner", CHURN_BASE + i, 2001));
+                if (i % 2 == 0) {
+                    library.borrowBook(CHURN_BASE + i);
+                }
+                if (i >= 10) {
+                    library.removeBook(CHURN_BASE + i - 10);
+                }
+            }
+        }));
+        for (int t = 0; t < 2; t++) {
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < operations / 20; i++) {
+                    library.searchBooks("hot book");
+                    library.searchBooks("churn 1");
+                    library.getPage(BookFilter.BORROWED, null, 10);
+                }
+            }));
+        }
+        // The library reports every operation on System.out, keep the run quiet
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        for (Thread worker : workers) {
+            worker.setUncaughtExceptionHandler((thread, e) -> {
+                errors.incrementAndGet();
+                e.printStackTrace();
+            });
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        System.setOut(out);
+
+        System.out.println("\n1. Borrowers never share a copy:");
+        check("no double loans (" + loans.get() + " loans)", doubleLoans.get() == 0);
+        check("no exceptions in worker threads", errors.get() == 0);
+
+        System.out.println("\n2. Counts add up after the run:");
+        int available = 0;
+        int borrowed = 0;
+        String cursor = null;
+        do {
+            BookPage page = library.getPage(BookFilter.ALL, cursor, 500);
+            for (Book book : page.getBooks()) {
+                if (book.getAvailability() > 0) {
+                    available++;
+                } else if (book.getAvailability() == 0) {
+                    borrowed++;
+                }
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        check("total is 16 hot + 10 churn books", library.getTotalBooks() == HOT_BOOKS + 10);
+        check("available count matches a scan", library.getAvailableBooksCount() == available);
+        check("borrowed count matches a scan", library.getBorrowedBooksCount() == borrowed);
+        check("available + borrowed = total", available + borrowed == library.getTotalBooks());
+        check("borrowed page total matches", library.getPage(BookFilter.BORROWED, null, 10).getTotalBooks() == borrowed);
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
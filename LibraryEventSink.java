@@ -0,0 +1,13 @@
+/* Receives the outcome of every add/remove/borrow/return, see Library.setEventSink().
+   Called on the thread that ran the operation, after the catalog locks are released,
+   so an implementation should return quickly: NONE drops the events, ConsoleEventSink
+   prints them, AsyncEventSink hands them to a background thread.
+ */
+public interface LibraryEventSink {
+    enum Operation { ADD, REMOVE, BORROW, RETURN }
+
+    LibraryEventSink NONE = (operation, result, isbn, book) -> { };
+
+    // book is the book operated on, null when result is NOT_FOUND
+    void onEvent(Operation operation, OperationResult result, long isbn, Book book);
+}
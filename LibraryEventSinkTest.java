@@ -0,0 +1,118 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Checks the OperationResult of every outcome and the events behind it, that Library
+   prints nothing by default, the console messages, and that AsyncEventSink delivers
+   every event it accepts in order while dropping instead of blocking when full.
+ */
+public class LibraryEventSinkTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Library Event Sink Test ===");
+        PrintStream out = System.out;
+
+        System.out.println("\n1. Results come back as values, nothing is printed by default:");
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed));
+        Library library = new Library("missing-catalog-for-event-test.txt");
+        printed.reset();
+        Book dune = new Book("Dune", "Herbert, Frank", 441172717L, 1965);
+        List<OperationResult> results = new ArrayList<>();
+        results.add(library.addBook(dune));
+        results.add(library.addBook(dune));
+        results.add(library.borrowBook(441172717L));
+        results.add(library.borrowBook(441172717L));
+        results.add(library.returnBook(441172717L));
+        results.add(library.returnBook(441172717L));
+        results.add(library.borrowBook(1L));
+        results.add(library.removeBook(441172717L));
+        results.add(library.removeBook(441172717L));
+        System.setOut(out);
+        check("results", results.equals(List.of(OperationResult.ADDED, OperationResult.DUPLICATE,
+                OperationResult.BORROWED, OperationResult.UNAVAILABLE, OperationResult.RETURNED,
+                OperationResult.ALREADY_AVAILABLE, OperationResult.NOT_FOUND, OperationResult.REMOVED,
+                OperationResult.NOT_FOUND)));
+        check("nothing printed", printed.size() == 0);
+
+        System.out.println("\n2. The console sink prints the familiar messages:");
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        library.setEventSink(new ConsoleEventSink(new PrintStream(console, true)));
+        library.addBook(dune);
+        library.borrowBook(441172717L);
+        library.borrowBook(441172717L);
+        library.returnBook(441172717L);
+        library.returnBook(5L);
+        library.removeBook(5L);
+        String nl = System.lineSeparator();
+        check("messages", console.toString().equals("Dune added to library." + nl
+                + "Dune has been borrowed." + nl + "Book is currently unavailable" + nl
+                + "Dune returned. Thank you." + nl + "Book with ISBN 5 not found." + nl
+                + "Error: Book with ISBN 5 not found." + nl));
+
+        System.out.println("\n3. The async sink delivers every accepted event, in order per thread:");
+        int threads = 4;
+        int perThread = 200_000;
+        AtomicLongArray lastSeen = new AtomicLongArray(threads);
+        boolean[] inOrder = {true};
+        long[] delivered = {0};
+        AsyncEventSink async = new AsyncEventSink((operation, result, isbn, book) -> {
+            int thread = (int) (isbn >>> 32);
+            long sequence = isbn & 0xFFFFFFFFL;
+            inOrder[0] &= sequence > lastSeen.get(thread);
+            lastSeen.set(thread, sequence);
+            delivered[0]++;
+        }, 1024);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            long thread = t;
+            new Thread(() -> {
+                for (long i = 1; i <= perThread; i++) {
+                    async.onEvent(LibraryEventSink.Operation.BORROW, OperationResult.BORROWED, thread << 32 | i, null);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        async.flush();
+        async.close();
+        check("delivered + dropped = sent (" + delivered[0] + " + " + async.getDropped() + ")",
+                delivered[0] + async.getDropped() == (long) threads * perThread);
+        check("in order", inOrder[0]);
+
+        System.out.println("\n4. A slow sink makes the async sink drop, not block:");
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncEventSink stuck = new AsyncEventSink((operation, result, isbn, book) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 8);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            stuck.onEvent(LibraryEventSink.Operation.ADD, OperationResult.ADDED, i, null);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        check("at least 10000 - 9 dropped (" + stuck.getDropped() + ")", stuck.getDropped() >= 10_000 - 9);
+        check("callers not blocked (" + elapsedMillis + " ms)", elapsedMillis < 1000);
+        release.countDown();
+        stuck.close();
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Checks importCatalog() under each conflict policy, that replaced books keep their
+   availability and search entries follow them, that loans keep going during a
+   large import, and that overwriting imports scale linearly.
+ */
+public class LibraryImportTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.println("=== Library Import Test ===");
+        Path dir = Files.createTempDirectory("library-import-test");
+        Path base = dir.resolve("base.txt");
+        Path feed = dir.resolve("feed.txt");
+        Path large = dir.resolve("large.txt");
+        PrintStream out = System.out;
+
+        try {
+            Files.write(base, Arrays.asList(
+                    "Dune, by Herbert, Frank, 0-44-117271-7, 1965",
+                    "Clean Code, by Martin, Robert, 0-13-235088-2, 2008",
+                    "The Hobbit, by Tolkien, J. R. R., 0-26-110221-7, 1937"));
+            Files.write(feed, Arrays.asList(
+                    "Emma, by Austen, Jane, 0-14-143958-0, 1815",
+                    "Dune (Revised), by Herbert, Frank, 0-44-117271-7, 1990",
+                    "Clean Code Draft, by Martin, Robert, 0-13-235088-2, 2001",
+                    "The Hobbit, by Tolkien, J. R. R., 0-26-110221-7, 1937",
+                    "not a catalog line"));
+
+            System.out.println("\n1. Counts per policy:");
+            check("SKIP", run(base, feed, ConflictPolicy.SKIP).toString()
+                    .equals("1 added, 0 updated, 3 skipped, 1 rejected"));
+            check("OVERWRITE", run(base, feed, ConflictPolicy.OVERWRITE).toString()
+                    .equals("1 added, 2 updated, 1 skipped, 1 rejected"));
+            check("KEEP_NEWER", run(base, feed, ConflictPolicy.KEEP_NEWER).toString()
+                    .equals("1 added, 1 updated, 2 skipped, 1 rejected"));
+
+            System.out.println("\n2. Replaced books keep their loans and are searchable by the new title:");
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library library = new Library(base.toString());
+            library.borrowBook(441172717L);
+            library.importCatalog(feed.toString(), ConflictPolicy.KEEP_NEWER);
+            System.setOut(out);
+            List<Book> found = library.searchBooks("revised");
+            check("still borrowed", library.getBorrowedBooksCount() == 1
+                    && found.size() == 1 && found.get(0).getAvailability() == 0);
+            check("old title gone", library.searchBooks("dune").size() == 1
+                    && library.getTotalBooks() == 4);
+
+            System.out.println("\n3. Borrows and returns carry on during a large import:");
+            new CatalogGenerator(5).write(large, 100_000);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library busy = new Library(base.toString());
+            System.setOut(out);
+            AtomicBoolean importing = new AtomicBoolean(true);
+            AtomicLong loans = new AtomicLong();
+            AtomicLong slowestNanos = new AtomicLong();
+            Thread desk = new Thread(() -> {
+                while (importing.get()) {
+                    long start = System.nanoTime();
+                    busy.borrowBook(132350882L);
+                    busy.returnBook(132350882L);
+                    slowestNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+                    loans.incrementAndGet();
+                }
+            });
+            desk.start();
+            long start = System.nanoTime();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            ImportResult result = busy.importCatalog(large.toString(), ConflictPolicy.SKIP);
+            System.setOut(out);
+            long importMillis = (System.nanoTime() - start) / 1_000_000;
+            importing.set(false);
+            desk.join();
+            check("100000 added", result.getAdded() == 100_000 && busy.getTotalBooks() == 100_003);
+            check(loans.get() + " loans during a " + importMillis + " ms import, slowest "
+                    + slowestNanos.get() / 1_000_000 + " ms", loans.get() > 0
+                    && slowestNanos.get() / 1_000_000 < importMillis);
+
+            System.out.println("\n4. OVERWRITE imports grow linearly with the catalog:");
+            long smallNanos = Long.MAX_VALUE;
+            long largeNanos = Long.MAX_VALUE;
+            for (int run = 0; run < 2; run++) {
+                smallNanos = Math.min(smallNanos, overwriteNanos(base, feed, 8_000));
+                largeNanos = Math.min(largeNanos, overwriteNanos(base, feed, 32_000));
+            }
+            // Four times the books, about four times the time; a search of each postings list
+            // on removal would make it sixteen
+            check(String.format("8000 in %d ms, 32000 in %d ms", smallNanos / 1_000_000, largeNanos / 1_000_000),
+                    smallNanos > 0 && largeNanos > 0 && largeNanos < 8 * smallNanos);
+        } finally {
+            System.setOut(out);
+            for (Path path : new Path[]{base, feed, large}) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static ImportResult run(Path base, Path feed, ConflictPolicy policy) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return new Library(base.toString()).importCatalog(feed.toString(), policy);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /* Time to import over a catalog of n books that share their author, year and title words,
+       with a feed that changes all three, so every replacement leaves postings as long as the
+       catalog. -1 if the import went wrong.
+     */
+    private static long overwriteNanos(Path base, Path feed, int n) throws IOException {
+        List<String> books = new ArrayList<>();
+        List<String> changes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add("Common Title " + i + ", by Same, Author, " + (1_000_000 + i) + ", 2000");
+            changes.add("Other Name " + i + ", by Other, Writer, " + (1_000_000 + i) + ", 2001");
+        }
+        Files.write(base, books);
+        Files.write(feed, changes);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Library library = new Library(base.toString());
+            long start = System.nanoTime();
+            ImportResult result = library.importCatalog(feed.toString(), ConflictPolicy.OVERWRITE);
+            long nanos = System.nanoTime() - start;
+            return result.getUpdated() == n && library.findBooksByAuthor("Same").isEmpty() ? nanos : -1;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* Latency histograms and outcome counters for one Library, read through snapshot() or JMX.
+   Off unless the JVM runs with -Dlibrary.metrics=true or setEnabled(true) is called.
+   While off, an operation costs one volatile read: start() returns 0 without reading the
+   clock and every recording method returns straight away on a 0 start. Load figures are
+   recorded either way, they happen once per Library.
+ */
+public class LibraryMetrics implements LibraryMetricsMXBean {
+    private volatile boolean enabled = Boolean.getBoolean("library.metrics");
+
+    private final LatencyHistogram searchNanos = new LatencyHistogram();
+    private final LatencyHistogram searchResults = new LatencyHistogram();
+    private final LatencyHistogram borrowNanos = new LatencyHistogram();
+    private final LatencyHistogram returnNanos = new LatencyHistogram();
+    private final LatencyHistogram addNanos = new LatencyHistogram();
+    private final LatencyHistogram removeNanos = new LatencyHistogram();
+    private final LatencyHistogram saveNanos = new LatencyHistogram();
+    private final LatencyHistogram batchNanos = new LatencyHistogram();
+
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder borrowUnavailable = new LongAdder();
+    private final LongAdder borrowNotFound = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder returnAlreadyAvailable = new LongAdder();
+    private final LongAdder returnNotFound = new LongAdder();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder addDuplicates = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder removeNotFound = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    private volatile long loadNanos;
+    private volatile int loadedBooks;
+    private volatile long parseRejects;
+    private volatile long loadStrings;
+    private volatile long loadSharedStrings;
+    private volatile long loadBytesSaved;
+
+    private ObjectName mbeanName;
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Start of a timed operation, 0 while metrics are off
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void searched(long start, int results) {
+        if (start == 0) return;
+        searchNanos.record(System.nanoTime() - start);
+        searchResults.record(results);
+    }
+
+    void borrow(long start, OperationResult result) {
+        if (start == 0) return;
+        borrowNanos.record(System.nanoTime() - start);
+        counter(LibraryEventSink.Operation.BORROW, result).increment();
+    }
+
+    void returnBook(long start, OperationResult result) {
+        if (start == 0) return;
+        returnNanos.record(System.nanoTime() - start);
+        counter(LibraryEventSink.Operation.RETURN, result).increment();
+    }
+
+    void add(long start, OperationResult result) {
+        if (start == 0) return;
+        addNanos.record(System.nanoTime() - start);
+        counter(LibraryEventSink.Operation.ADD, result).increment();
+    }
+
+    void remove(long start, OperationResult result) {
+        if (start == 0) return;
+        removeNanos.record(System.nanoTime() - start);
+        counter(LibraryEventSink.Operation.REMOVE, result).increment();
+    }
+
+    // A whole batch is one latency sample, its items count towards the outcome counters
+    void batch(long start, LibraryEventSink.Operation operation, BatchResult results) {
+        if (start == 0) return;
+        batchNanos.record(System.nanoTime() - start);
+        for (OperationResult result : OperationResult.values()) {
+            int count = results.count(result);
+            if (count > 0) {
+                counter(operation, result).add(count);
+            }
+        }
+    }
+
+    private LongAdder counter(LibraryEventSink.Operation operation, OperationResult result) {
+        switch (result) {
+            case ADDED: return added;
+            case DUPLICATE: return addDuplicates;
+            case REMOVED: return removed;
+            case BORROWED: return borrowed;
+            case UNAVAILABLE: return borrowUnavailable;
+            case RETURNED: return returned;
+            case ALREADY_AVAILABLE: return returnAlreadyAvailable;
+            default:
+                return operation == LibraryEventSink.Operation.BORROW ? borrowNotFound
+                        : operation == LibraryEventSink.Operation.RETURN ? returnNotFound : removeNotFound;
+        }
+    }
+
+    void saved(long start, long bytes) {
+        if (start == 0) return;
+        saveNanos.record(System.nanoTime() - start);
+        savedBytes.add(bytes);
+    }
+
+    // Lines that were not blank and still could not be parsed count as rejects
+    void loaded(long nanos, int books, long rejectedLines) {
+        loadNanos = nanos;
+        loadedBooks = books;
+        parseRejects = rejectedLines;
+    }
+
+    // Titles and authors the load looked up in its StringPool, and how many were already there
+    void pooled(StringPool pool) {
+        loadStrings = pool.getLookups();
+        loadSharedStrings = pool.getHits();
+        loadBytesSaved = pool.getBytesSaved();
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return snapshot();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    // Clears the operation figures, the load figures stay
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{searchNanos, searchResults,
+                borrowNanos, returnNanos, addNanos, removeNanos, saveNanos, batchNanos}) {
+            histogram.reset();
+        }
+        for (LongAdder counter : new LongAdder[]{borrowed, borrowUnavailable, borrowNotFound,
+                returned, returnAlreadyAvailable, returnNotFound, added, addDuplicates,
+                removed, removeNotFound, savedBytes}) {
+            counter.reset();
+        }
+    }
+
+    /* Registers with the platform MBean server as librarymanagement:type=Library,name=<name>.
+       Returns false (and says why) if the name is taken or not a valid ObjectName value.
+     */
+    public synchronized boolean registerMBean(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName("librarymanagement:type=Library,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            // Registering again moves the bean to the new name
+            unregisterMBean();
+            mbeanName = objectName;
+            return true;
+        } catch (JMException e) {
+            System.out.println("Could not register metrics MBean: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            // Already gone
+        }
+        mbeanName = null;
+    }
+
+    // Point-in-time copy of every figure, latencies in nanoseconds
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot searchNanos;
+        private final LatencyHistogram.Snapshot searchResults;
+        private final LatencyHistogram.Snapshot borrowNanos;
+        private final LatencyHistogram.Snapshot returnNanos;
+        private final LatencyHistogram.Snapshot addNanos;
+        private final LatencyHistogram.Snapshot removeNanos;
+        private final LatencyHistogram.Snapshot saveNanos;
+        private final LatencyHistogram.Snapshot batchNanos;
+        private final long borrowed, borrowUnavailable, borrowNotFound;
+        private final long returned, returnAlreadyAvailable, returnNotFound;
+        private final long added, addDuplicates, removed, removeNotFound;
+        private final long savedBytes;
+        private final long loadNanos;
+        private final int loadedBooks;
+        private final long parseRejects;
+        private final long loadStrings, loadSharedStrings, loadBytesSaved;
+
+        private Snapshot(LibraryMetrics metrics) {
+            searchNanos = metrics.searchNanos.snapshot();
+            searchResults = metrics.searchResults.snapshot();
+            borrowNanos = metrics.borrowNanos.snapshot();
+            returnNanos = metrics.returnNanos.snapshot();
+            addNanos = metrics.addNanos.snapshot();
+            removeNanos = metrics.removeNanos.snapshot();
+            saveNanos = metrics.saveNanos.snapshot();
+            batchNanos = metrics.batchNanos.snapshot();
+            borrowed = metrics.borrowed.sum();
+            borrowUnavailable = metrics.borrowUnavailable.sum();
+            borrowNotFound = metrics.borrowNotFound.sum();
+            returned = metrics.returned.sum();
+            returnAlreadyAvailable = metrics.returnAlreadyAvailable.sum();
+            returnNotFound = metrics.returnNotFound.sum();
+            added = metrics.added.sum();
+            addDuplicates = metrics.addDuplicates.sum();
+            removed = metrics.removed.sum();
+            removeNotFound = metrics.removeNotFound.sum();
+            savedBytes = metrics.savedBytes.sum();
+            loadNanos = metrics.loadNanos;
+            loadedBooks = metrics.loadedBooks;
+            parseRejects = metrics.parseRejects;
+            loadStrings = metrics.loadStrings;
+            loadSharedStrings = metrics.loadSharedStrings;
+            loadBytesSaved = metrics.loadBytesSaved;
+        }
+
+        public LatencyHistogram.Snapshot getSearchNanos() { return searchNanos; }
+        public LatencyHistogram.Snapshot getSearchResults() { return searchResults; }
+        public LatencyHistogram.Snapshot getBorrowNanos() { return borrowNanos; }
+        public LatencyHistogram.Snapshot getReturnNanos() { return returnNanos; }
+        public LatencyHistogram.Snapshot getAddNanos() { return addNanos; }
+        public LatencyHistogram.Snapshot getRemoveNanos() { return removeNanos; }
+        public LatencyHistogram.Snapshot getSaveNanos() { return saveNanos; }
+        public LatencyHistogram.Snapshot getBatchNanos() { return batchNanos; }
+        public long getBorrowed() { return borrowed; }
+        public long getBorrowUnavailable() { return borrowUnavailable; }
+        public long getBorrowNotFound() { return borrowNotFound; }
+        public long getReturned() { return returned; }
+        public long getReturnAlreadyAvailable() { return returnAlreadyAvailable; }
+        public long getReturnNotFound() { return returnNotFound; }
+        public long getAdded() { return added; }
+        public long getAddDuplicates() { return addDuplicates; }
+        public long getRemoved() { return removed; }
+        public long getRemoveNotFound() { return removeNotFound; }
+        public long getSavedBytes() { return savedBytes; }
+        public long getLoadNanos() { return loadNanos; }
+        public int getLoadedBooks() { return loadedBooks; }
+        public long getParseRejects() { return parseRejects; }
+        public long getLoadStrings() { return loadStrings; }
+        public long getLoadSharedStrings() { return loadSharedStrings; }
+        public long getLoadBytesSaved() { return loadBytesSaved; }
+
+        // Share of the loaded titles and authors that reuse an earlier String, 0 to 1
+        public double getLoadDedupRatio() {
+            return loadStrings == 0 ? 0 : (double) loadSharedStrings / loadStrings;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("load: %d books in %d ms, %d rejected lines, "
+                            + "%d of %d strings shared (%d KB saved)%n"
+                            + "search (ns): %s%nsearch results: %s%n"
+                            + "borrow (ns): %s | borrowed=%d unavailable=%d not found=%d%n"
+                            + "return (ns): %s | returned=%d already available=%d not found=%d%n"
+                            + "add (ns): %s | added=%d duplicates=%d%n"
+                            + "remove (ns): %s | removed=%d not found=%d%n"
+                            + "save (ns): %s | %d bytes%n"
+                            + "batch (ns): %s",
+                    loadedBooks, loadNanos / 1_000_000, parseRejects,
+                    loadSharedStrings, loadStrings, loadBytesSaved / 1024, searchNanos, searchResults,
+                    borrowNanos, borrowed, borrowUnavailable, borrowNotFound,
+                    returnNanos, returned, returnAlreadyAvailable, returnNotFound,
+                    addNanos, added, addDuplicates, removeNanos, removed, removeNotFound,
+                    saveNanos, savedBytes, batchNanos);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/* JMX view of a Library's metrics, registered by LibraryMetrics.registerMBean().
+   The snapshot shows up in jconsole/VisualVM as nested CompositeData.
+ */
+public interface LibraryMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    LibraryMetrics.Snapshot getSnapshot();
+
+    void reset();
+}
@@ -0,0 +1,145 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/* Checks the histogram's accuracy, that every Library outcome lands in its counter,
+   that nothing is recorded while metrics are off, and the JMX view.
+ */
+public class LibraryMetricsTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Library Metrics Test ===");
+
+        System.out.println("\n1. Histogram percentiles are within 1.6%:");
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot values = histogram.snapshot();
+        check("count and max", values.getCount() == 1_000_000 && values.getMax() == 1_000_000);
+        check("p50", near(values.getP50(), 500_000));
+        check("p99", near(values.getP99(), 990_000));
+        check("p99.9", near(values.getP999(), 999_000));
+        check("mean", Math.abs(values.getMean() - 500_000.5) < 1e-6);
+
+        Path dir = Files.createTempDirectory("library-metrics-test");
+        Path text = dir.resolve("catalog.txt");
+        Path saved = dir.resolve("saved.txt");
+        Path generated = dir.resolve("generated.txt");
+        PrintStream out = System.out;
+        try {
+            Files.write(text, Arrays.asList(
+                    "Dune, by Herbert, Frank, 0-44-117271-7, 1965",
+                    "",
+                    "Clean Code, by Martin, Robert, 0-13-235088-2, 2008",
+                    "Broken line without fields",
+                    "[Donation 2] The Hobbit, by Tolkien, J. R. R., 0-26-110221-5, 1937"));
+
+            System.out.println("\n2. Load figures, blank lines are not rejects:");
+            Library library = new Library(text.toString());
+            LibraryMetrics metrics = library.getMetrics();
+            LibraryMetrics.Snapshot snapshot = metrics.snapshot();
+            check("3 books, 1 rejected line", snapshot.getLoadedBooks() == 3 && snapshot.getParseRejects() == 1
+                    && snapshot.getLoadNanos() > 0);
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            metrics.setEnabled(false);
+            library.borrowBook(441172717L);
+            library.searchBooks("dune");
+            System.setOut(out);
+            snapshot = metrics.snapshot();
+            check("nothing recorded while off", snapshot.getBorrowed() == 0
+                    && snapshot.getBorrowNanos().getCount() == 0 && snapshot.getSearchNanos().getCount() == 0);
+
+            System.out.println("\n3. Every outcome is counted:");
+            metrics.setEnabled(true);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            library.borrowBook(132350882L);
+            library.borrowBook(132350882L);
+            library.borrowBook(1L);
+            library.returnBook(132350882L);
+            library.returnBook(132350882L);
+            library.returnBook(1L);
+            library.returnBook(2L);
+            library.addBook(new Book("Emma", "Austen, Jane", 141439580L, 1815));
+            library.addBook(new Book("Emma", "Austen, Jane", 141439580L, 1815));
+            library.removeBook(141439580L);
+            library.removeBook(141439580L);
+            library.searchBooks("dune");
+            library.searchBooks("o");
+            library.saveCatalog(saved.toString());
+            System.setOut(out);
+            snapshot = metrics.snapshot();
+            check("borrowed / unavailable / not found", snapshot.getBorrowed() == 1
+                    && snapshot.getBorrowUnavailable() == 1 && snapshot.getBorrowNotFound() == 1
+                    && snapshot.getBorrowNanos().getCount() == 3);
+            check("returned / already available / not found", snapshot.getReturned() == 1
+                    && snapshot.getReturnAlreadyAvailable() == 1 && snapshot.getReturnNotFound() == 2
+                    && snapshot.getReturnNanos().getCount() == 4);
+            check("added / duplicate, removed / not found", snapshot.getAdded() == 1
+                    && snapshot.getAddDuplicates() == 1 && snapshot.getRemoved() == 1
+                    && snapshot.getRemoveNotFound() == 1);
+            check("search result sizes", snapshot.getSearchNanos().getCount() == 2
+                    && snapshot.getSearchResults().getMax() == 2
+                    && snapshot.getSearchResults().valueAtPercentile(0) == 1);
+            check("saved bytes match the file", snapshot.getSaveNanos().getCount() == 1
+                    && snapshot.getSavedBytes() == Files.size(saved));
+
+            System.out.println("\n4. JMX shows the same figures:");
+            ObjectName name = new ObjectName("librarymanagement:type=Library,name=\"metrics-test\"");
+            check("registered", metrics.registerMBean("metrics-test"));
+            CompositeData data = (CompositeData) ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(name, "Snapshot");
+            CompositeData borrowNanos = (CompositeData) data.get("borrowNanos");
+            check("borrowed and borrow count", (Long) data.get("borrowed") == 1
+                    && (Long) borrowNanos.get("count") == 3);
+            ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+            check("reset clears operations, keeps load", metrics.snapshot().getBorrowed() == 0
+                    && metrics.snapshot().getLoadedBooks() == 3);
+            metrics.unregisterMBean();
+            check("unregistered", !ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+            System.out.println("\n5. Mapped loads count the same rejects:");
+            CatalogGenerator generator = new CatalogGenerator(3).malformedRatio(0.1);
+            generator.write(generated, 20_000);
+            int expected = 0;
+            for (int i = 0; i < 20_000; i++) {
+                if (generator.isMalformed(i) && !generator.line(i).trim().isEmpty()) {
+                    expected++;
+                }
+            }
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library large = new Library(generated.toString());
+            System.setOut(out);
+            check(expected + " rejected lines", large.getMetrics().snapshot().getParseRejects() == expected);
+        } finally {
+            System.setOut(out);
+            for (Path path : new Path[]{text, saved, generated}) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean near(long actual, long expected) {
+        return Math.abs(actual - expected) <= expected / 64;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* Checks that query() matches filtering every book by hand, in the query's order and
+   limit, on both stores, and that the planner starts from the most selective index and
+   intersects it with any of a similar size.
+ */
+public class LibraryQueryTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Library Query Test ===");
+
+        Path file = Files.createTempFile("library-query-test", ".txt");
+        PrintStream out = System.out;
+        try {
+            new CatalogGenerator(24).write(file, 20_000);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library[] libraries = {new Library(file.toString(), CatalogStorage.HEAP),
+                    new Library(file.toString(), CatalogStorage.OFF_HEAP)};
+            System.setOut(out);
+            Random random = new Random(24);
+            List<Book> all = libraries[0].searchBooks("");
+            for (int i = 0; i < 300; i++) {
+                long isbn = all.get(random.nextInt(all.size())).getISBN();
+                for (Library library : libraries) {
+                    library.borrowBook(isbn);
+                }
+            }
+            for (int i = 0; i < 100; i++) {
+                long isbn = all.get(random.nextInt(all.size())).getISBN();
+                for (Library library : libraries) {
+                    library.removeBook(isbn);
+                }
+            }
+            all = libraries[0].searchBooks("");
+
+            System.out.println("\n1. Results match a filter over every book:");
+            boolean[] same = {true, true};
+            for (int round = 0; round < 300; round++) {
+                Book sample = all.get(random.nextInt(all.size()));
+                BookQuery query = new BookQuery();
+                String author = null;
+                if (random.nextBoolean()) {
+                    int from = sample.getPubYear() - random.nextInt(random.nextBoolean() ? 3 : 60);
+                    query.published(from, from + random.nextInt(80));
+                }
+                if (random.nextInt(3) == 0) {
+                    query.filter(random.nextBoolean() ? BookFilter.AVAILABLE : BookFilter.BORROWED);
+                }
+                if (random.nextInt(3) == 0) {
+                    List<String> names = AuthorIndex.names(sample.getAuthor());
+                    author = names.get(random.nextInt(names.size()));
+                    query.author(random.nextBoolean() ? author : author.split(", ")[0]);
+                    author = query.getAuthor();
+                }
+                if (random.nextInt(3) == 0) {
+                    String title = sample.getTitle();
+                    int start = random.nextInt(title.length());
+                    query.titleContains(title.substring(start, Math.min(title.length(), start + 1 + random.nextInt(6))));
+                }
+                query.orderBy(BookQuery.Order.values()[random.nextInt(3)]);
+                if (random.nextBoolean()) {
+                    query.limit(random.nextInt(50));
+                }
+
+                List<Book> expected = new ArrayList<>();
+                for (Book book : all) {
+                    if (matches(query, author, book)) {
+                        expected.add(book);
+                    }
+                }
+                expected.sort(query.getOrder().comparator());
+                expected = expected.subList(0, Math.min(expected.size(), query.getLimit()));
+                for (int s = 0; s < 2; s++) {
+                    same[s] &= isbns(libraries[s].query(query)).equals(isbns(expected));
+                }
+            }
+            check("heap", same[0]);
+            check("off-heap", same[1]);
+
+            System.out.println("\n2. Plans:");
+            Library library = libraries[0];
+            String name = AuthorIndex.names(all.get(0).getAuthor()).get(0);
+            check("nothing to narrow", library.explain(new BookQuery()).startsWith("full scan"));
+            check("wide year range", library.explain(new BookQuery().published(1000, 3000)).startsWith("full scan"));
+            check("one author", library.explain(new BookQuery().published(1000, 3000).author(name))
+                    .startsWith("author index"));
+            check("one year", library.explain(new BookQuery().published(1999, 1999).filter(BookFilter.AVAILABLE))
+                    .startsWith("year index"));
+            check("borrowed", library.explain(new BookQuery().published(1950, 2020).filter(BookFilter.BORROWED))
+                    .equals("borrowed bitmap (" + library.getBorrowedBooksCount() + " books)"));
+            check("rare title term", library.explain(new BookQuery().titleContains("zz").titleContains("xqz"))
+                    .startsWith("title index"));
+            check("two similar indexes", library.explain(new BookQuery().published(1990, 1999).titleContains("night"))
+                    .matches("year index \\(\\d+ books\\) and title index \\(\\d+ books\\)"));
+            List<Book> newest = library.query(new BookQuery().orderBy(BookQuery.Order.NEWEST).limit(3));
+            check("newest first", newest.size() == 3
+                    && newest.get(0).getPubYear() >= newest.get(2).getPubYear());
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean matches(BookQuery query, String author, Book book) {
+        if (book.getPubYear() < query.getFromYear() || book.getPubYear() > query.getToYear()) {
+            return false;
+        }
+        if (query.getFilter() == BookFilter.AVAILABLE && book.getAvailability() <= 0
+                || query.getFilter() == BookFilter.BORROWED && book.getAvailability() != 0) {
+            return false;
+        }
+        for (String term : query.getTitleTerms()) {
+            if (!book.getTitle().toLowerCase().contains(term)) {
+                return false;
+            }
+        }
+        if (author == null) {
+            return true;
+        }
+        for (String name : AuthorIndex.names(book.getAuthor())) {
+            if (name.equals(author) || name.startsWith(author + ", ")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Long> isbns(List<Book> books) {
+        List<Long> isbns = new ArrayList<>();
+        for (Book book : books) {
+            isbns.add(book.getISBN());
+        }
+        return isbns;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
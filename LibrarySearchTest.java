@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/* Checks searchRanked() against a brute-force scorer over the whole catalog while books
+   are added and removed, that an exact ISBN comes first, and that a query matching most
+   of a large catalog still returns its top k, and that searchBooks() with a limit returns the
+   first matches of the full search. How fast that is against a narrow query is
+   measured by RankedSearchBenchmark.
+ */
+public class LibrarySearchTest {
+    private static final String[] WORDS = {"war", "time", "love", "river", "dark", "city", "a", "the", "smith", "le"};
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Library Search Test ===");
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Library[] libraries = {new Library("missing-catalog-for-search-test.txt", CatalogStorage.HEAP),
+                new Library("missing-catalog-for-search-test.txt", CatalogStorage.OFF_HEAP)};
+        System.setOut(out);
+
+        System.out.println("\n1. Top k matches a full scan, through adds and removes:");
+        Random random = new Random(19);
+        List<Book> books = new ArrayList<>();
+        boolean[] same = {true, true};
+        for (int round = 0; round < 300; round++) {
+            if (books.size() < 20 || random.nextInt(4) > 0) {
+                Book book = new Book(phrase(random, 1 + random.nextInt(4)), phrase(random, 2),
+                        random.nextInt(5000), 2000);
+                if (libraries[0].addBook(book) == OperationResult.ADDED) {
+                    libraries[1].addBook(new Book(book.getTitle(), book.getAuthor(), book.getISBN(), 2000));
+                    books.add(book);
+                }
+            } else {
+                Book book = books.remove(random.nextInt(books.size()));
+                libraries[0].removeBook(book.getISBN());
+                libraries[1].removeBook(book.getISBN());
+            }
+            String query = phrase(random, 1 + random.nextInt(3));
+            int limit = 1 + random.nextInt(10);
+            List<Long> expected = bruteForce(books, query, limit);
+            for (int s = 0; s < 2; s++) {
+                same[s] &= isbns(libraries[s].searchRanked(query, limit)).equals(expected);
+            }
+        }
+        check("heap", same[0]);
+        check("off-heap", same[1]);
+
+        System.out.println("\n2. An exact ISBN comes first:");
+        Library library = libraries[0];
+        library.addBook(new Book("Love Time", "Smith, A.", 1234567890L, 1999));
+        library.addBook(new Book("Love", "Smith, B.", 123, 1999));
+        List<Book> found = library.searchRanked("123", 5);
+        check("by ISBN", found.size() == 1 && found.get(0).getISBN() == 123);
+        found = library.searchRanked("1-23-456789-0", 5);
+        check("hyphenated", found.size() == 1 && found.get(0).getISBN() == 1234567890L);
+        check("limit 0", library.searchRanked("love", 0).isEmpty());
+        // The exact book also matches by word, the limit is still filled
+        library.addBook(new Book("2001", "Clarke, Arthur C.", 2001, 1968));
+        library.addBook(new Book("2001 Nights", "Hoyle, Fred", 7, 1970));
+        library.addBook(new Book("Odyssey 2001", "Lee, A.", 8, 1970));
+        found = library.searchRanked("2001", 3);
+        check("exact and word matches fill the limit", isbns(found).equals(List.of(2001L, 7L, 8L)));
+
+        System.out.println("\n3. A query matching most of a large catalog:");
+        Path file = Files.createTempFile("library-search-test", ".txt");
+        try {
+            new CatalogGenerator(23).write(file, 200_000);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library large = new Library(file.toString());
+            System.setOut(out);
+            // searchBooks() matches substrings, so it holds every book with the word
+            List<Book> matching = large.searchBooks("the");
+            check("'the' matches over 40,000 books", matching.size() > 40_000);
+            check("top 10 of 'the' match a full scan",
+                    isbns(large.searchRanked("the", 10)).equals(bruteForce(matching, "the", 10)));
+            check("'asimov river' finds books", !large.searchRanked("asimov river", 10).isEmpty());
+            boolean firstOnes = true;
+            for (String query : new String[]{"the", "river", "e", "97", "0"}) {
+                List<Book> all = large.searchBooks(query);
+                firstOnes &= isbns(large.searchBooks(query, 10)).equals(isbns(all.subList(0, Math.min(10, all.size()))));
+            }
+            check("searchBooks with a limit keeps the first matches", firstOnes);
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder phrase = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            phrase.append(i == 0 ? "" : random.nextBoolean() ? " " : ", ")
+                    .append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return random.nextBoolean() ? phrase.toString() : phrase.toString().toUpperCase();
+    }
+
+    // Title word 2, author word 1, summed over the distinct query words, ties by lower ISBN
+    private static List<Long> bruteForce(List<Book> books, String query, int limit) {
+        Set<String> words = new HashSet<>(WordIndex.words(query));
+        List<long[]> scored = new ArrayList<>();
+        for (Book book : books) {
+            List<String> title = WordIndex.words(book.getTitle());
+            List<String> author = WordIndex.words(book.getAuthor());
+            int score = 0;
+            for (String word : words) {
+                score += (title.contains(word) ? 2 : 0) + (author.contains(word) ? 1 : 0);
+            }
+            if (score > 0) {
+                scored.add(new long[]{score, book.getISBN()});
+            }
+        }
+        scored.sort(Comparator.<long[]>comparingLong(s -> -s[0]).thenComparingLong(s -> s[1]));
+        List<Long> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, scored.size()); i++) {
+            result.add(scored.get(i)[1]);
+        }
+        return result;
+    }
+
+    private static List<Long> isbns(List<Book> books) {
+        List<Long> isbns = new ArrayList<>();
+        for (Book book : books) {
+            isbns.add(book.getISBN());
+        }
+        return isbns;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
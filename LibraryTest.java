@@ -1,19 +1,67 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
+/* Walks through statistics, searches, borrow/return, the filtered views and edge cases on
+   one catalog, printing what it finds and checking the results.
+   Usage: java LibraryTest [catalog file | generated] [offheap]
+   "generated" writes a 5,000-record CatalogGenerator catalog with a few malformed and
+   duplicate lines to a temp file, which is what the build runs; book_donation.txt is the
+   default file.
+ */
 public class LibraryTest {
-    public static void main(String[] args) {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
         System.out.println("=== Library Test ===");
         System.out.println("Loading library from file...\n");
 
-        // You need to provide the file path here
-        String dataFile = "book_donation.txt"; // Change this to your file path
+        String dataFile = "book_donation.txt";
+        // Pass "offheap" to run the same scenarios against the off-heap catalog store
+        CatalogStorage storage = CatalogStorage.HEAP;
+        boolean generated = false;
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("offheap")) {
+                storage = CatalogStorage.OFF_HEAP;
+            } else if (arg.equals("generated")) {
+                generated = true;
+            } else {
+                dataFile = arg;
+            }
+        }
+        Path fixture = null;
+        if (generated) {
+            fixture = Files.createTempFile("library-test", ".txt");
+            new CatalogGenerator(11).malformedRatio(0.01).duplicateRatio(0.02).write(fixture, 5000);
+            dataFile = fixture.toString();
+        }
 
-        Library library = new Library(dataFile);
+        try {
+            Library library = new Library(dataFile, storage);
+            library.setEventSink(new ConsoleEventSink());
+            check("catalog loaded", library.getTotalBooks() > 0);
 
-        // Run all tests
-        runAllTests(library);
+            // Run all tests
+            runAllTests(library);
+        } finally {
+            if (fixture != null) {
+                Files.deleteIfExists(fixture);
+            }
+        }
 
         System.out.println("\n=== All Tests Completed ===");
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
     }
 
     private static void runAllTests(Library library) {
@@ -41,6 +89,8 @@ public class LibraryTest {
         System.out.println("Total books: " + library.getTotalBooks());
         System.out.println("Available books: " + library.getAvailableBooksCount());
         System.out.println("Borrowed books: " + library.getBorrowedBooksCount());
+        check("available and borrowed add up to the total",
+                library.getAvailableBooksCount() + library.getBorrowedBooksCount() == library.getTotalBooks());
 
         // Display first 5 books as sample
         System.out.println("\nSample of books in library (first 5):");
@@ -60,6 +110,7 @@ public class LibraryTest {
         for (String keyword : titleKeywords) {
             List<Book> results = library.searchBooks(keyword);
             System.out.printf("  Search for '%s': Found %d books\n", keyword, results.size());
+            check("every result contains '" + keyword + "'", allContain(results, keyword));
 
             // Show first 2 results if any
             if (!results.isEmpty()) {
@@ -76,6 +127,7 @@ public class LibraryTest {
             List<Book> results = library.searchBooks(keyword);
             System.out.printf("  Search for author containing '%s': Found %d books\n",
                     keyword, results.size());
+            check("every result contains '" + keyword + "'", allContain(results, keyword));
         }
 
         System.out.println("\n3. Searching by ISBN (partial and full):");
@@ -83,12 +135,13 @@ public class LibraryTest {
         List<Book> sampleBooks = library.searchBooks("");
         if (!sampleBooks.isEmpty()) {
             Book firstBook = sampleBooks.get(0);
-            String firstISBN = String.valueOf(firstBook.getISBN());
+            String firstISBN = Isbn.digits(firstBook.getISBN());
 
             // Test with full ISBN
             List<Book> fullISBNResults = library.searchBooks(firstISBN);
             System.out.printf("  Search for full ISBN '%s': Found %d book(s)\n",
                     firstISBN, fullISBNResults.size());
+            check("full ISBN finds the book", containsIsbn(fullISBNResults, firstBook.getISBN()));
 
             // Test with partial ISBN (first 3 digits)
             if (firstISBN.length() >= 3) {
@@ -96,6 +149,7 @@ public class LibraryTest {
                 List<Book> partialResults = library.searchBooks(partialISBN);
                 System.out.printf("  Search for partial ISBN '%s': Found %d book(s)\n",
                         partialISBN, partialResults.size());
+                check("partial ISBN finds the book", containsIsbn(partialResults, firstBook.getISBN()));
             }
         }
 
@@ -105,6 +159,7 @@ public class LibraryTest {
             List<Book> results = library.searchBooks(query);
             System.out.printf("  Search for '%s': Found %d books (expected: 0)\n",
                     query, results.size());
+            check("nothing found", results.isEmpty());
         }
     }
 
@@ -127,22 +182,26 @@ public class LibraryTest {
                     bookToBorrow.getTitle(), bookToBorrow.getISBN());
 
             // Test borrowing
-            boolean borrowSuccess = library.borrowBook(bookToBorrow.getISBN());
+            boolean borrowSuccess = library.borrowBook(bookToBorrow.getISBN()) == OperationResult.BORROWED;
             System.out.printf("  Borrow result: %s\n", borrowSuccess ? "SUCCESS" : "FAILED");
+            check("borrowed", borrowSuccess);
 
             // Try to borrow same book again (should fail)
             System.out.println("  Trying to borrow same book again:");
-            library.borrowBook(bookToBorrow.getISBN());
+            check("second borrow refused",
+                    library.borrowBook(bookToBorrow.getISBN()) == OperationResult.UNAVAILABLE);
 
             // Test returning
             System.out.printf("\n  Returning book: %s (ISBN: %d)\n",
                     bookToBorrow.getTitle(), bookToBorrow.getISBN());
-            boolean returnSuccess = library.returnBook(bookToBorrow.getISBN());
+            boolean returnSuccess = library.returnBook(bookToBorrow.getISBN()) == OperationResult.RETURNED;
             System.out.printf("  Return result: %s\n", returnSuccess ? "SUCCESS" : "FAILED");
+            check("returned", returnSuccess);
 
             // Try to return again (should show already available)
             System.out.println("  Trying to return same book again:");
-            library.returnBook(bookToBorrow.getISBN());
+            check("second return refused",
+                    library.returnBook(bookToBorrow.getISBN()) == OperationResult.ALREADY_AVAILABLE);
         } else {
             System.out.println("  No available books found to test borrow/return operations.");
         }
@@ -150,10 +209,10 @@ public class LibraryTest {
         System.out.println("\n2. Testing invalid ISBN operations:");
         long invalidISBN = 9999999999L; // Unlikely to exist
         System.out.printf("  Trying to borrow non-existent ISBN %d:\n", invalidISBN);
-        library.borrowBook(invalidISBN);
+        check("borrow not found", library.borrowBook(invalidISBN) == OperationResult.NOT_FOUND);
 
         System.out.printf("  Trying to return non-existent ISBN %d:\n", invalidISBN);
-        library.returnBook(invalidISBN);
+        check("return not found", library.returnBook(invalidISBN) == OperationResult.NOT_FOUND);
     }
 
     private static void testViewMethodsSimulated(Library library) {
@@ -171,6 +230,7 @@ public class LibraryTest {
         }
 
         System.out.printf("  Total available books: %d\n", availableCount);
+        check("matches the available count", availableCount == library.getAvailableBooksCount());
 
         if (availableCount > 0) {
             // Show first 3 available books sorted by title
@@ -202,6 +262,7 @@ public class LibraryTest {
         }
 
         System.out.printf("  Total borrowed books: %d\n", borrowedCount);
+        check("matches the borrowed count", borrowedCount == library.getBorrowedBooksCount());
 
         if (borrowedCount > 0) {
             // Show first 3 borrowed books sorted by title
@@ -231,6 +292,7 @@ public class LibraryTest {
         System.out.println("  Testing empty string search:");
         List<Book> allBooks = library.searchBooks("");
         System.out.printf("    Empty search returns: %d books (should be all books)\n", allBooks.size());
+        check("all books", allBooks.size() == library.getTotalBooks());
 
         // Test search with special characters
         System.out.println("  Testing search with special characters:");
@@ -249,6 +311,7 @@ public class LibraryTest {
             System.out.printf("  Testing ISBN search with hyphens '%s':\n", isbnWithHyphens);
             List<Book> hyphenResults = library.searchBooks(isbnWithHyphens);
             System.out.printf("    Found: %d book(s)\n", hyphenResults.size());
+            check("hyphenated ISBN finds the book", containsIsbn(hyphenResults, sampleBook.getISBN()));
         }
     }
 
@@ -291,14 +354,30 @@ public class LibraryTest {
         }
     }
 
-    private static String formatISBNWithHyphens(Long isbn) {
-        String isbnStr = String.valueOf(isbn);
-        if (isbnStr.length() == 10) {
-            return isbnStr.substring(0, 1) + "-" +
-                    isbnStr.substring(1, 3) + "-" +
-                    isbnStr.substring(3, 9) + "-" +
-                    isbnStr.substring(9);
+    // As the catalog prints it, so an ISBN-10 keeps its leading zero
+    private static String formatISBNWithHyphens(long isbn) {
+        return Isbn.format(isbn);
+    }
+
+    // Off-heap books are read fresh on every call, so compare by ISBN
+    private static boolean containsIsbn(List<Book> books, long isbn) {
+        for (Book book : books) {
+            if (book.getISBN() == isbn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Title or author contains the keyword ignoring case, or the ISBN starts with it
+    private static boolean allContain(List<Book> books, String keyword) {
+        String lower = keyword.toLowerCase();
+        for (Book book : books) {
+            if (!book.getTitle().toLowerCase().contains(lower) && !book.getAuthor().toLowerCase().contains(lower)
+                    && !Isbn.digits(book.getISBN()).startsWith(keyword)) {
+                return false;
+            }
         }
-        return isbnStr;
+        return true;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -4,6 +4,8 @@ import java.util.Scanner;
 
 public class LibraryUserDriver {
     private static final String SAVE_FILE = "library_catalog.txt";
+    // Most results the search menu prints
+    private static final int SEARCH_LIMIT = 20;
     private static Library library;
     private static Scanner scanner;
 
@@ -15,6 +17,7 @@ public class LibraryUserDriver {
         String dataFilePath = scanner.nextLine();
 
         library = new Library(dataFilePath);
+        library.setEventSink(new ConsoleEventSink());
 
         boolean running = true;
         while (running) {
@@ -89,20 +92,10 @@ public class LibraryUserDriver {
         System.out.print("Author (e.g., Smith, Jones, et al): ");
         String author = scanner.nextLine();
 
-        System.out.print("ISBN (10 digits, no hyphens): ");
-        Long isbn;
-        try {
-            isbn = scanner.nextLong();
-            scanner.nextLine();
-
-            // Validate ISBN length
-            if (String.valueOf(isbn).length() != 10) {
-                System.out.println("Error: ISBN must be 10 digits.");
-                return;
-            }
-        } catch (InputMismatchException e) {
-            System.out.println("Invalid ISBN. Please enter digits only.");
-            scanner.nextLine();
+        System.out.print("ISBN (ISBN-10 or ISBN-13, hyphens allowed): ");
+        long isbn = Isbn.parse(scanner.nextLine());
+        if (isbn == -1) {
+            System.out.println("Error: not a valid ISBN-10 or ISBN-13, check the digits.");
             return;
         }
 
@@ -124,17 +117,23 @@ public class LibraryUserDriver {
         System.out.println("\n--- Search Book ---");
         System.out.print("Enter Title, Author, or ISBN (hyphens allowed for ISBN search): ");
         String query = scanner.nextLine();
-        List<Book> results = library.searchBooks(query);
+        List<Book> results = library.searchRanked(query, SEARCH_LIMIT);
+        String heading = "\n--- Best %d Match(es) ---\n";
+        if (results.isEmpty()) {
+            // No whole-word matches, fall back to parts of words and show the first few
+            results = library.searchBooks(query, SEARCH_LIMIT);
+            heading = "\n--- First %d Partial Match(es) ---\n";
+        }
 
         if (results.isEmpty()) {
             System.out.println("No books found matching the query.");
         } else {
-            System.out.printf("\n--- Found %d Book(s) ---\n", results.size());
+            System.out.printf(heading, results.size());
             for (int i = 0; i < results.size(); i++) {
                 Book result = results.get(i);
                 System.out.printf("%d. Title: %s\n", i + 1, result.getTitle());
                 System.out.printf("   Author: %s\n", result.getAuthor());
-                System.out.printf("   ISBN: %d, Year: %d\n", result.getISBN(), result.getPubYear());
+                System.out.printf("   ISBN: %s, Year: %d\n", Isbn.format(result.getISBN()), result.getPubYear());
                 System.out.printf("   Status: %s\n\n",
                         result.getAvailability() > 0 ? "Available" : "Borrowed");
             }
@@ -143,27 +142,19 @@ public class LibraryUserDriver {
 
     private static void borrowBook() {
         System.out.println("\n--- Borrow Book ---");
-        System.out.print("Enter ISBN to borrow (digits only): ");
-        try {
-            long borrowIsbn = scanner.nextLong();
-            scanner.nextLine();
+        System.out.print("Enter ISBN to borrow: ");
+        Long borrowIsbn = readIsbn();
+        if (borrowIsbn != null) {
             library.borrowBook(borrowIsbn);
-        } catch (InputMismatchException e) {
-            System.out.println("Invalid ISBN input.");
-            scanner.nextLine();
         }
     }
 
     private static void returnBook() {
         System.out.println("\n--- Return Book ---");
-        System.out.print("Enter ISBN to return (digits only): ");
-        try {
-            long returnIsbn = scanner.nextLong();
-            scanner.nextLine();
+        System.out.print("Enter ISBN to return: ");
+        Long returnIsbn = readIsbn();
+        if (returnIsbn != null) {
             library.returnBook(returnIsbn);
-        } catch (InputMismatchException e) {
-            System.out.println("Invalid ISBN input.");
-            scanner.nextLine();
         }
     }
 
@@ -179,15 +170,21 @@ public class LibraryUserDriver {
 
     private static void removeBook() {
         System.out.println("\n--- Remove Book ---");
-        System.out.print("Enter ISBN of book to remove (digits only): ");
-        try {
-            long removeIsbn = scanner.nextLong();
-            scanner.nextLine();
+        System.out.print("Enter ISBN of book to remove: ");
+        Long removeIsbn = readIsbn();
+        if (removeIsbn != null) {
             library.removeBook(removeIsbn);
-        } catch (InputMismatchException e) {
+        }
+    }
+
+    // An ISBN-10 or ISBN-13, hyphens allowed, or the plain number of an older catalog entry
+    private static Long readIsbn() {
+        long isbn = Isbn.lenient(scanner.nextLine());
+        if (isbn == -1) {
             System.out.println("Invalid ISBN input.");
-            scanner.nextLine();
+            return null;
         }
+        return isbn;
     }
 
     private static void saveCatalog() {
@@ -207,4 +204,4 @@ public class LibraryUserDriver {
         System.out.println("Exiting system. Goodbye!");
         return false;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/* ISBN -> Book map used for the catalog, without boxing keys or allocating entries.
+   Open addressing with linear probing over parallel arrays: a slot costs one long and
+   one reference, against a HashMap node plus a Long key for every book.
+   A null value marks an empty slot, so every long (0 and negatives included) is a valid key.
+   Not synchronized, Library guards it with its catalog lock.
+ */
+public class LongBookMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Book[] values;
+    private int size;
+    private int mask;
+    private int shift;
+    private int resizeAt;
+
+    public LongBookMap() {
+        this(0);
+    }
+
+    // Sized so that 'expected' books fit without rehashing
+    public LongBookMap(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // O(1) expected time complexity
+    public Book get(long isbn) {
+        for (int i = slot(isbn); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == isbn) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(long isbn) {
+        return get(isbn) != null;
+    }
+
+    // Returns the book previously stored under the ISBN, or null
+    public Book put(long isbn, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Book must not be null.");
+        }
+        int i = slot(isbn);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == isbn) {
+                Book previous = values[i];
+                values[i] = book;
+                return previous;
+            }
+        }
+        keys[i] = isbn;
+        values[i] = book;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /* Returns the removed book, or null.
+       Later entries of the probe run are shifted back into the hole instead of
+       leaving a tombstone, so lookups never slow down after many removals.
+     */
+    public Book remove(long isbn) {
+        int i = slot(isbn);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == isbn) {
+                break;
+            }
+        }
+        Book removed = values[i];
+        if (removed == null) {
+            return null;
+        }
+        int hole = i;
+        for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // Move j into the hole unless its home slot lies cyclically in (hole, j]
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Books in table order, the view must not be used while the map is being changed
+    public Iterable<Book> values() {
+        return () -> new Iterator<Book>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < values.length && values[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < values.length;
+            }
+
+            @Override
+            public Book next() {
+                if (next >= values.length) {
+                    throw new NoSuchElementException();
+                }
+                Book book = values[next];
+                next = advance(next + 1);
+                return book;
+            }
+        };
+    }
+
+    private int slot(long isbn) {
+        return (int) (spread(isbn) >>> shift);
+    }
+
+    /* Fibonacci hashing, sequential ISBNs spread over the whole table. Slots are the top bits
+       of spread(), so keys sorted by Long.compareUnsigned(spread(a), spread(b)) visit the
+       table (and OffHeapCatalogStore's ISBN table) front to back, whatever its size.
+     */
+    static long spread(long isbn) {
+        return isbn * 0x9E3779B97F4A7C15L;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Book[capacity];
+        mask = capacity - 1;
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Book[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
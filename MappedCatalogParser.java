@@ -0,0 +1,254 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/* Byte-level version of CatalogLoader.parseLine() for memory-mapped chunks.
+   Comma positions, the ISBN and the year are found and parsed straight from the
+   buffer, only the title and author are turned into Strings. Accepts exactly the
+   lines parseLine() accepts. The few lines it cannot judge from bytes alone
+   (non-ASCII digits or Unicode line separators) are decoded and handed to
+   parseLine() instead. With a StringPool, ASCII titles and authors already in the pool
+   are taken from it without building a String.
+ */
+public class MappedCatalogParser {
+    private final ByteBuffer buffer;
+    private final Charset charset;
+    private final StringPool pool;
+    private byte[] scratch = new byte[256];
+
+    // Field boundaries of the line being parsed, [start, end) offsets into the buffer
+    private int titleStart, titleEnd, authorStart, authorEnd;
+    private long isbn;
+    private int year;
+    private int rejected;
+
+    private MappedCatalogParser(ByteBuffer buffer, Charset charset, StringPool pool) {
+        this.buffer = buffer;
+        this.charset = charset;
+        this.pool = pool;
+    }
+
+    // Only charsets where every byte below 0x80 is the ASCII char of the same value
+    public static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /* Parses every line between the buffer's position and limit, appending books in file order.
+       Returns the number of lines skipped that were not blank.
+     */
+    public static int parse(ByteBuffer buffer, Charset charset, List<Book> books) {
+        return parse(buffer, charset, books, null);
+    }
+
+    // Same, sharing titles and authors through the pool unless it is null
+    public static int parse(ByteBuffer buffer, Charset charset, List<Book> books, StringPool pool) {
+        MappedCatalogParser parser = new MappedCatalogParser(buffer, charset, pool);
+        parser.parseAll(books);
+        return parser.rejected;
+    }
+
+    private void parseAll(List<Book> books) {
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        for (int i = lineStart; i <= limit; i++) {
+            byte b = i < limit ? buffer.get(i) : (byte) '\n';
+            if (b == '\n' || b == '\r') {
+                parseLine(lineStart, i, books);
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    private void parseLine(int start, int end, List<Book> books) {
+        switch (scanLine(start, end)) {
+            case ACCEPT:
+                books.add(new Book(pooled(titleStart, titleEnd), pooled(authorStart, authorEnd),
+                        isbn, year));
+                break;
+            case FALLBACK:
+                rejected += CatalogLoader.parseLines(string(start, end), books, pool);
+                break;
+            case REJECT:
+                rejected++;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static final int REJECT = 0;
+    private static final int ACCEPT = 1;
+    private static final int FALLBACK = 2;
+    private static final int BLANK = 3;
+
+    // Mirrors CatalogLoader.parseLine() step by step, on byte offsets instead of substrings
+    private int scanLine(int start, int end) {
+        if (charset.equals(StandardCharsets.UTF_8) && hasUnicodeLineBreak(start, end)) {
+            return FALLBACK;
+        }
+
+        start = trimStart(start, end);
+        end = trimEnd(start, end);
+
+        if (start == end) return BLANK;
+
+        if (buffer.get(start) == '[') {
+            int endBracket = indexOf((byte) ']', start, end);
+            if (endBracket != -1 && endBracket < end - 1) {
+                start = trimStart(endBracket + 1, end);
+            } else {
+                return REJECT;
+            }
+        }
+
+        int lastComma = lastIndexOf((byte) ',', start, end);
+        if (lastComma == end - 1) {
+            lastComma = lastIndexOf((byte) ',', start, lastComma);
+        }
+
+        if (lastComma == -1) return REJECT;
+
+        int yearStart = trimStart(lastComma + 1, end);
+        int frontEnd = trimEnd(start, lastComma);
+
+        int isbnComma = lastIndexOf((byte) ',', start, frontEnd);
+        if (isbnComma == -1) return REJECT;
+
+        int isbnStart = trimStart(isbnComma + 1, frontEnd);
+        int titleAndAuthorEnd = trimEnd(start, isbnComma);
+
+        int byIndex = indexOfBy(start, titleAndAuthorEnd);
+        if (byIndex == -1 || byIndex + 4 >= titleAndAuthorEnd) return REJECT;
+        // parseLine() skips one char after ", by", which may be several bytes long
+        if (buffer.get(byIndex + 4) < 0) return FALLBACK;
+
+        titleStart = start;
+        titleEnd = trimEnd(start, byIndex);
+        authorStart = trimStart(byIndex + 5, titleAndAuthorEnd);
+        authorEnd = titleAndAuthorEnd;
+
+        int yearResult = parseYear(yearStart, end);
+        if (yearResult != ACCEPT) return yearResult;
+        return parseISBN(isbnStart, frontEnd);
+    }
+
+    // Integer.parseInt() rules: optional sign, at least one digit, no overflow
+    private int parseYear(int start, int end) {
+        if (start == end) return REJECT;
+        boolean negative = false;
+        int i = start;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) return REJECT;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) return FALLBACK;
+            if (b < '0' || b > '9') return REJECT;
+            value = value * 10 + (b - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) return REJECT;
+        }
+        if (!negative && value > Integer.MAX_VALUE) return REJECT;
+        year = (int) (negative ? -value : value);
+        return ACCEPT;
+    }
+
+    /* Long.parseLong() after every '-' was removed: optional '+', at least one digit, no overflow,
+       then Isbn.canonical(). An 'X' check digit is left to parseLine().
+     */
+    private int parseISBN(int start, int end) {
+        boolean sawSign = false;
+        boolean sawDigit = false;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '-') continue;
+            if (b < 0 || b == 'X' || b == 'x') return FALLBACK;
+            if (b == '+' && !sawSign && !sawDigit) {
+                sawSign = true;
+                continue;
+            }
+            if (b < '0' || b > '9') return REJECT;
+            int digit = b - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) return REJECT;
+            value = value * 10 + digit;
+            sawDigit = true;
+        }
+        if (!sawDigit) return REJECT;
+        isbn = Isbn.canonical(value);
+        return ACCEPT;
+    }
+
+    // U+0085, U+2028 and U+2029 end a line for Scanner but are multi-byte in UTF-8
+    private boolean hasUnicodeLineBreak(int start, int end) {
+        for (int i = start; i < end - 1; i++) {
+            byte b = buffer.get(i);
+            if (b == (byte) 0xC2 && buffer.get(i + 1) == (byte) 0x85) return true;
+            if (b == (byte) 0xE2 && i + 2 < end && buffer.get(i + 1) == (byte) 0x80
+                    && (buffer.get(i + 2) == (byte) 0xA8 || buffer.get(i + 2) == (byte) 0xA9)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // String.trim() removes chars <= ' ', which are always single bytes here
+    private int trimStart(int start, int end) {
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') start++;
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') end--;
+        return end;
+    }
+
+    private int indexOf(byte target, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == target) return i;
+        }
+        return -1;
+    }
+
+    private int lastIndexOf(byte target, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buffer.get(i) == target) return i;
+        }
+        return -1;
+    }
+
+    private int indexOfBy(int start, int end) {
+        for (int i = start; i + 4 <= end; i++) {
+            if (buffer.get(i) == ',' && buffer.get(i + 1) == ' '
+                    && buffer.get(i + 2) == 'b' && buffer.get(i + 3) == 'y') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String pooled(int start, int end) {
+        if (pool == null) {
+            return string(start, end);
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return pool.intern(string(start, end));
+            }
+        }
+        return pool.intern(buffer, start, end);
+    }
+
+    private String string(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
+}
@@ -0,0 +1,814 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/* CatalogStore that keeps the records outside the Java heap, for catalogs large enough
+   that millions of Book objects make GC pauses long.
+
+   Every record has a number and lives in direct-buffer columns indexed by it:
+     isbns          long
+     pubYears       int
+     availability   int, accessed through a VarHandle because borrow/return change it
+                    under the read lock while other threads read it
+     strings        long[2], arena address of the title and the author
+     lengths        int[2], char count << 1, plus 1 when stored as Latin-1
+   Titles and authors go in an arena of direct pages, one byte per char when every char
+   is Latin-1 and two otherwise (like java.lang.String), so they come back unchanged.
+
+   The ISBN hash table and the title order hold record numbers in int arrays, the heap
+   has no object per record. The title order is cut into blocks of at most BLOCK records
+   that count their available and borrowed books, so a filtered page skips blocks with
+   nothing to show and an insert only shifts one block. Books handed out are materialized on demand and not kept:
+   their availability is the value when they were read, changes go through the store.
+
+   Direct memory is capped by -XX:MaxDirectMemorySize, which defaults to the heap size.
+ */
+public class OffHeapCatalogStore implements CatalogStore {
+    private static final VarHandle INT_VIEW =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final int TITLE = 0;
+    private static final int AUTHOR = 1;
+    private static final int MIN_RECORDS = 16;
+    private static final int MIN_PAGE_BYTES = 1 << 16;
+    private static final int MAX_PAGE_BYTES = 1 << 26;
+    private static final int BLOCK = 256;
+
+    // Columns, 'capacity' records each
+    private int capacity;
+    private ByteBuffer isbns;
+    private ByteBuffer pubYears;
+    private ByteBuffer availability;
+    private ByteBuffer strings;
+    private ByteBuffer lengths;
+
+    // Record numbers below highWater have been handed out, freed ones are reused first
+    private int highWater;
+    private int[] free = new int[MIN_RECORDS];
+    private int freeCount;
+    private int size;
+
+    // Open-addressing ISBN table of record number + 1, 0 marks an empty slot
+    private int[] slots;
+    private int mask;
+    private int shift;
+
+    // Record numbers of the live books in title order, blockCount blocks, and each record's block
+    private Block[] blocks = new Block[4];
+    private int blockCount;
+    private Block[] blockOf;
+
+    // String arena, strings never straddle pages
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private long liveBytes;
+    private long garbageBytes;
+
+    private final AtomicInteger availableCount = new AtomicInteger();
+    private final AtomicInteger borrowedCount = new AtomicInteger();
+
+    public OffHeapCatalogStore() {
+        this(Collections.emptyList(), 0);
+    }
+
+    /* Copies the books in, sorting them by title once at the end.
+       The books must have distinct ISBNs, e.g. the values of a LongBookMap.
+     */
+    public OffHeapCatalogStore(Iterable<Book> books, int expected) {
+        int records = Math.max(expected, MIN_RECORDS);
+        allocateColumns(records);
+        allocateSlots(records);
+        int[] order = new int[records];
+        for (Book book : books) {
+            int record = append(book);
+            if (size > order.length) {
+                order = Arrays.copyOf(order, order.length * 2);
+            }
+            order[size - 1] = record;
+        }
+        fillBlocks(sortByTitle(order));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Book get(long isbn) {
+        int record = find(isbn);
+        return record < 0 ? null : materialize(record);
+    }
+
+    @Override
+    public boolean contains(long isbn) {
+        return find(isbn) >= 0;
+    }
+
+    // O(log n + BLOCK) for the title order insert
+    @Override
+    public Book put(Book book) {
+        Book previous = remove(book.getISBN());
+        int record = append(book);
+        insertInOrder(record);
+        return previous;
+    }
+
+    @Override
+    public Book remove(long isbn) {
+        int record = find(isbn);
+        if (record < 0) {
+            return null;
+        }
+        Book removed = materialize(record);
+        removeFromOrder(record);
+        unhash(isbn);
+        untrack(availabilityOf(record));
+        garbageBytes += stringBytes(record, TITLE) + stringBytes(record, AUTHOR);
+        liveBytes -= stringBytes(record, TITLE) + stringBytes(record, AUTHOR);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = record;
+        size--;
+        if (garbageBytes > liveBytes && garbageBytes > MAX_PAGE_BYTES) {
+            compactArena();
+        }
+        return removed;
+    }
+
+    @Override
+    public int availability(long isbn) {
+        return availabilityOf(find(isbn));
+    }
+
+    @Override
+    public boolean setAvailability(long isbn, int value) {
+        int record = find(isbn);
+        if (record < 0) {
+            return false;
+        }
+        int old = availabilityOf(record);
+        untrack(old);
+        blockOf[record].track(old, -1);
+        INT_VIEW.setVolatile(availability, record * 4, value);
+        track(value);
+        blockOf[record].track(value, 1);
+        return true;
+    }
+
+    @Override
+    public int count(BookFilter filter) {
+        switch (filter) {
+            case AVAILABLE:
+                return availableCount.get();
+            case BORROWED:
+                return borrowedCount.get();
+            default:
+                return size;
+        }
+    }
+
+    @Override
+    public Iterable<Book> books() {
+        return byTitle();
+    }
+
+    // Materializes each book as the iteration reaches it
+    @Override
+    public Collection<Book> byTitle() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Book> iterator() {
+                return new Iterator<Book>() {
+                    private int block = 0;
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return block < blockCount;
+                    }
+
+                    @Override
+                    public Book next() {
+                        if (block >= blockCount) {
+                            throw new NoSuchElementException();
+                        }
+                        Book book = materialize(blocks[block].records[next++]);
+                        if (next == blocks[block].size) {
+                            block++;
+                            next = 0;
+                        }
+                        return book;
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<Book> spliterator() {
+                int[] starts = new int[blockCount + 1];
+                for (int b = 0; b < blockCount; b++) {
+                    starts[b + 1] = starts[b] + blocks[b].size;
+                }
+                return new TitleSpliterator(starts, 0, 0, blockCount);
+            }
+        };
+    }
+
+    /* Blocks [block, end) of the title order from position 'next' in the first, split in
+       halves by block for parallel scans. starts[b] is the title position of block b.
+     */
+    private class TitleSpliterator implements Spliterator<Book> {
+        private final int[] starts;
+        private int block;
+        private int next;
+        private final int end;
+
+        TitleSpliterator(int[] starts, int block, int next, int end) {
+            this.starts = starts;
+            this.block = block;
+            this.next = next;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Book> action) {
+            if (block >= end) {
+                return false;
+            }
+            action.accept(materialize(blocks[block].records[next++]));
+            if (next == blocks[block].size) {
+                block++;
+                next = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<Book> trySplit() {
+            int middle = (block + end) >>> 1;
+            if (middle <= block) {
+                return null;
+            }
+            Spliterator<Book> front = new TitleSpliterator(starts, block, next, middle);
+            block = middle;
+            next = 0;
+            return front;
+        }
+
+        @Override
+        public long estimateSize() {
+            return starts[end] - starts[block] - next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    /* O(log n + n / BLOCK + p x BLOCK) time complexity, p = page size
+       Books the filter leaves out are passed over, and whole blocks with none it keeps.
+     */
+    @Override
+    public List<Book> pageFrom(BookFilter filter, Book from, boolean inclusive, int pageSize) {
+        List<Book> page = new ArrayList<>(pageSize);
+        for (long at = firstMatch(filter, from == null ? 0 : position(from, inclusive));
+                at >= 0 && page.size() < pageSize; at = firstMatch(filter, at + 1)) {
+            page.add(materialize(recordAt(at)));
+        }
+        return page;
+    }
+
+    @Override
+    public List<Book> pageBefore(BookFilter filter, Book before, int pageSize) {
+        List<Book> page = new ArrayList<>(pageSize);
+        for (long at = lastMatchBefore(filter, before == null ? (long) blockCount << 32 : position(before, true));
+                at >= 0 && page.size() < pageSize; at = lastMatchBefore(filter, at)) {
+            page.add(materialize(recordAt(at)));
+        }
+        Collections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public boolean hasBefore(BookFilter filter, Book key) {
+        return lastMatchBefore(filter, position(key, true)) >= 0;
+    }
+
+    @Override
+    public boolean hasAfter(BookFilter filter, Book key) {
+        return firstMatch(filter, position(key, false)) >= 0;
+    }
+
+    // O(n / BLOCK + BLOCK), whole blocks are counted off
+    @Override
+    public Book bookAt(BookFilter filter, int index) {
+        for (int b = 0; b < blockCount; b++) {
+            Block block = blocks[b];
+            int matching = block.count(filter);
+            if (index >= matching) {
+                index -= matching;
+                continue;
+            }
+            // Counts can lag a concurrent borrow, then the rest of the index goes on to the next block
+            for (int i = 0; i < block.size; i++) {
+                if (matches(filter, block.records[i]) && index-- == 0) {
+                    return materialize(block.records[i]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /* Title positions are block << 32 | offset, at + 1 may point one past the end of a block.
+       The first matching position at or after 'at', or -1.
+     */
+    private long firstMatch(BookFilter filter, long at) {
+        for (int b = (int) (at >>> 32), i = (int) at; b < blockCount; b++, i = 0) {
+            Block block = blocks[b];
+            if (block.count(filter) == 0) {
+                continue;
+            }
+            for (; i < block.size; i++) {
+                if (matches(filter, block.records[i])) {
+                    return (long) b << 32 | i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // The last matching position before 'at', or -1
+    private long lastMatchBefore(BookFilter filter, long at) {
+        for (int b = (int) (at >>> 32), i = (int) at - 1; b >= 0; i = --b >= 0 ? blocks[b].size - 1 : -1) {
+            if (b == blockCount || blocks[b].count(filter) == 0) {
+                continue;
+            }
+            for (; i >= 0; i--) {
+                if (matches(filter, blocks[b].records[i])) {
+                    return (long) b << 32 | i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int recordAt(long at) {
+        return blocks[(int) (at >>> 32)].records[(int) at];
+    }
+
+    private boolean matches(BookFilter filter, int record) {
+        switch (filter) {
+            case AVAILABLE:
+                return availabilityOf(record) > 0;
+            case BORROWED:
+                return availabilityOf(record) == 0;
+            default:
+                return true;
+        }
+    }
+
+    // --- RECORDS ---
+
+    // Writes the book into a free record and the ISBN table, the caller places it in the title order
+    private int append(Book book) {
+        int record;
+        if (freeCount > 0) {
+            record = free[--freeCount];
+        } else {
+            if (highWater == capacity) {
+                growColumns();
+            }
+            record = highWater++;
+        }
+        isbns.putLong(record * 8, book.getISBN());
+        pubYears.putInt(record * 4, book.getPubYear());
+        INT_VIEW.setVolatile(availability, record * 4, book.getAvailability());
+        storeString(record, TITLE, book.getTitle());
+        storeString(record, AUTHOR, book.getAuthor());
+        hash(record);
+        track(book.getAvailability());
+        size++;
+        return record;
+    }
+
+    private Book materialize(int record) {
+        return new Book(string(pages, record, TITLE), string(pages, record, AUTHOR),
+                isbnOf(record), pubYears.getInt(record * 4), availabilityOf(record));
+    }
+
+    private long isbnOf(int record) {
+        return isbns.getLong(record * 8);
+    }
+
+    private int availabilityOf(int record) {
+        return (int) INT_VIEW.getVolatile(availability, record * 4);
+    }
+
+    private void track(int value) {
+        if (value > 0) {
+            availableCount.incrementAndGet();
+        } else if (value == 0) {
+            borrowedCount.incrementAndGet();
+        }
+    }
+
+    private void untrack(int value) {
+        if (value > 0) {
+            availableCount.decrementAndGet();
+        } else if (value == 0) {
+            borrowedCount.decrementAndGet();
+        }
+    }
+
+    private void allocateColumns(int records) {
+        capacity = records;
+        isbns = column(records * 8L);
+        pubYears = column(records * 4L);
+        availability = column(records * 4L);
+        strings = column(records * 16L);
+        lengths = column(records * 8L);
+        blockOf = blockOf == null ? new Block[records] : Arrays.copyOf(blockOf, records);
+    }
+
+    private void growColumns() {
+        if (capacity * 16L * 2 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap catalog cannot hold more than "
+                    + capacity + " books.");
+        }
+        ByteBuffer[] old = {isbns, pubYears, availability, strings, lengths};
+        allocateColumns(capacity * 2);
+        ByteBuffer[] grown = {isbns, pubYears, availability, strings, lengths};
+        for (int i = 0; i < old.length; i++) {
+            grown[i].put(0, old[i], 0, old[i].capacity());
+        }
+    }
+
+    private static ByteBuffer column(long bytes) {
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    // --- STRING ARENA ---
+
+    private void storeString(int record, int field, String value) {
+        boolean latin1 = true;
+        for (int i = 0; i < value.length() && latin1; i++) {
+            latin1 = value.charAt(i) <= 0xFF;
+        }
+        int bytes = latin1 ? value.length() : value.length() * 2;
+        ByteBuffer page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        if (page == null || page.remaining() < bytes) {
+            int pageBytes = page == null ? MIN_PAGE_BYTES : Math.min(page.capacity() * 2, MAX_PAGE_BYTES);
+            page = ByteBuffer.allocateDirect(Math.max(pageBytes, bytes));
+            pages.add(page);
+        }
+        long address = (long) (pages.size() - 1) << 32 | page.position();
+        if (latin1) {
+            page.put(value.getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                page.putChar(value.charAt(i));
+            }
+        }
+        strings.putLong((record * 2 + field) * 8, address);
+        lengths.putInt((record * 2 + field) * 4, value.length() << 1 | (latin1 ? 1 : 0));
+        liveBytes += bytes;
+    }
+
+    private String string(List<ByteBuffer> arena, int record, int field) {
+        long address = strings.getLong((record * 2 + field) * 8);
+        int info = lengths.getInt((record * 2 + field) * 4);
+        ByteBuffer page = arena.get((int) (address >>> 32));
+        int offset = (int) address;
+        int length = info >>> 1;
+        if ((info & 1) != 0) {
+            byte[] bytes = new byte[length];
+            page.get(offset, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[length];
+        page.slice(offset, length * 2).asCharBuffer().get(chars);
+        return new String(chars);
+    }
+
+    private int stringBytes(int record, int field) {
+        int info = lengths.getInt((record * 2 + field) * 4);
+        return (info & 1) != 0 ? info >>> 1 : info >>> 1 << 1;
+    }
+
+    private char charAt(ByteBuffer page, int offset, int info, int index) {
+        return (info & 1) != 0 ? (char) (page.get(offset + index) & 0xFF) : page.getChar(offset + index * 2);
+    }
+
+    // Copies the strings of the live books into fresh pages, the old pages are freed with their buffers
+    private void compactArena() {
+        List<ByteBuffer> old = new ArrayList<>(pages);
+        pages.clear();
+        liveBytes = 0;
+        garbageBytes = 0;
+        for (int b = 0; b < blockCount; b++) {
+            for (int i = 0; i < blocks[b].size; i++) {
+                int record = blocks[b].records[i];
+                String title = string(old, record, TITLE);
+                String author = string(old, record, AUTHOR);
+                storeString(record, TITLE, title);
+                storeString(record, AUTHOR, author);
+            }
+        }
+    }
+
+    // --- ISBN TABLE ---
+
+    private void allocateSlots(int records) {
+        int tableSize = MIN_RECORDS;
+        while (tableSize * 3L / 4 < records) {
+            tableSize <<= 1;
+        }
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+        shift = Long.numberOfLeadingZeros(tableSize) + 1;
+    }
+
+    // Same hash as LongBookMap, see LongBookMap.spread()
+    private int slot(long isbn) {
+        return (int) (LongBookMap.spread(isbn) >>> shift);
+    }
+
+    private int find(long isbn) {
+        for (int i = slot(isbn); slots[i] != 0; i = (i + 1) & mask) {
+            if (isbnOf(slots[i] - 1) == isbn) {
+                return slots[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void hash(int record) {
+        if ((size + 1) > slots.length * 3L / 4) {
+            int[] old = slots;
+            allocateSlots(slots.length);
+            for (int entry : old) {
+                if (entry != 0) {
+                    insertSlot(entry);
+                }
+            }
+        }
+        insertSlot(record + 1);
+    }
+
+    private void insertSlot(int entry) {
+        int i = slot(isbnOf(entry - 1));
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = entry;
+    }
+
+    // Backward-shift deletion, same as LongBookMap.remove()
+    private void unhash(long isbn) {
+        int hole = slot(isbn);
+        while (isbnOf(slots[hole] - 1) != isbn) {
+            hole = (hole + 1) & mask;
+        }
+        for (int j = (hole + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = slot(isbnOf(slots[j] - 1));
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                slots[hole] = slots[j];
+                hole = j;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    // --- TITLE ORDER ---
+
+    // Same order as TITLE_ORDER: titles as String.compareTo() would compare them, then ISBN
+    private int compare(int a, int b) {
+        long addressA = strings.getLong(a * 16);
+        long addressB = strings.getLong(b * 16);
+        ByteBuffer pageA = pages.get((int) (addressA >>> 32));
+        ByteBuffer pageB = pages.get((int) (addressB >>> 32));
+        int infoA = lengths.getInt(a * 8);
+        int infoB = lengths.getInt(b * 8);
+        int length = Math.min(infoA >>> 1, infoB >>> 1);
+        for (int i = 0; i < length; i++) {
+            char ca = charAt(pageA, (int) addressA, infoA, i);
+            char cb = charAt(pageB, (int) addressB, infoB, i);
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        if (infoA >>> 1 != infoB >>> 1) {
+            return (infoA >>> 1) - (infoB >>> 1);
+        }
+        return Long.compare(isbnOf(a), isbnOf(b));
+    }
+
+    private int compare(String title, long isbn, int record) {
+        long address = strings.getLong(record * 16);
+        ByteBuffer page = pages.get((int) (address >>> 32));
+        int info = lengths.getInt(record * 8);
+        int length = Math.min(title.length(), info >>> 1);
+        for (int i = 0; i < length; i++) {
+            char c = charAt(page, (int) address, info, i);
+            if (title.charAt(i) != c) {
+                return title.charAt(i) - c;
+            }
+        }
+        if (title.length() != info >>> 1) {
+            return title.length() - (info >>> 1);
+        }
+        return Long.compare(isbn, isbnOf(record));
+    }
+
+    // --- TITLE ORDER ---
+
+    // First position in the title order not before the key (after it, when not inclusive), O(log n)
+    private long position(Book key, boolean inclusive) {
+        return lowerBound(record -> {
+            int c = compare(key.getTitle(), key.getISBN(), record);
+            return c > 0 || (c == 0 && !inclusive);
+        });
+    }
+
+    /* First position whose record is not 'before', blockCount << 32 when there is none.
+       Binary search over the last record of each block, then within the block.
+     */
+    private long lowerBound(IntPredicate before) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before.test(blocks[mid].records[blocks[mid].size - 1])) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == blockCount) {
+            return (long) blockCount << 32;
+        }
+        Block block = blocks[low];
+        int from = 0;
+        int to = block.size - 1;
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (before.test(block.records[mid])) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return (long) low << 32 | from;
+    }
+
+    // Called after append() wrote the record, shifts at most one block; a full block is split in two
+    private void insertInOrder(int record) {
+        long at = lowerBound(other -> compare(other, record) < 0);
+        int b = (int) (at >>> 32);
+        int i = (int) at;
+        if (blockCount == 0) {
+            insertBlock(0, new Block());
+        } else if (b == blockCount) {
+            b--;
+            i = blocks[b].size;
+        }
+        if (blocks[b].size == BLOCK) {
+            Block upper = new Block();
+            blocks[b].moveTo(upper, BLOCK / 2);
+            insertBlock(b + 1, upper);
+            if (i > BLOCK / 2) {
+                b++;
+                i -= BLOCK / 2;
+            }
+        }
+        Block block = blocks[b];
+        System.arraycopy(block.records, i, block.records, i + 1, block.size - i);
+        block.records[i] = record;
+        block.size++;
+        block.track(availabilityOf(record), 1);
+        blockOf[record] = block;
+    }
+
+    // Merges what is left of the block into its neighbour once both fit in half a block
+    private void removeFromOrder(int record) {
+        long at = lowerBound(other -> compare(other, record) < 0);
+        int b = (int) (at >>> 32);
+        int i = (int) at;
+        Block block = blocks[b];
+        System.arraycopy(block.records, i + 1, block.records, i, block.size - i - 1);
+        block.size--;
+        block.track(availabilityOf(record), -1);
+        blockOf[record] = null;
+        if (block.size == 0) {
+            removeBlock(b);
+        } else if (b + 1 < blockCount && block.size + blocks[b + 1].size <= BLOCK / 2) {
+            blocks[b + 1].moveTo(block, 0);
+            removeBlock(b + 1);
+        } else if (b > 0 && block.size + blocks[b - 1].size <= BLOCK / 2) {
+            block.moveTo(blocks[b - 1], 0);
+            removeBlock(b);
+        }
+    }
+
+    // Cuts the sorted record numbers into blocks 3/4 full, so the first inserts do not split them
+    private void fillBlocks(int[] sorted) {
+        int fill = BLOCK * 3 / 4;
+        for (int start = 0; start < size; start += fill) {
+            Block block = new Block();
+            block.size = Math.min(fill, size - start);
+            System.arraycopy(sorted, start, block.records, 0, block.size);
+            for (int i = 0; i < block.size; i++) {
+                block.track(availabilityOf(block.records[i]), 1);
+                blockOf[block.records[i]] = block;
+            }
+            insertBlock(blockCount, block);
+        }
+    }
+
+    private void insertBlock(int at, Block block) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        System.arraycopy(blocks, at, blocks, at + 1, blockCount - at);
+        blocks[at] = block;
+        blockCount++;
+    }
+
+    private void removeBlock(int at) {
+        System.arraycopy(blocks, at + 1, blocks, at, blockCount - at - 1);
+        blocks[--blockCount] = null;
+    }
+
+    // Bottom-up merge sort of the first 'size' record numbers, there is no int[] sort taking a comparator
+    private int[] sortByTitle(int[] order) {
+        int[] from = order;
+        int[] to = new int[order.length];
+        for (int width = 1; width < size; width *= 2) {
+            for (int start = 0; start < size; start += 2 * width) {
+                int middle = Math.min(start + width, size);
+                int end = Math.min(start + 2 * width, size);
+                int i = start;
+                int j = middle;
+                for (int k = start; k < end; k++) {
+                    to[k] = i < middle && (j >= end || compare(from[i], from[j]) <= 0) ? from[i++] : from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    /* A run of the title order with the counts of its available and borrowed books.
+       The counts change under the read lock with setAvailability(), from any stripe.
+     */
+    private final class Block {
+        final int[] records = new int[BLOCK];
+        int size;
+        final AtomicInteger available = new AtomicInteger();
+        final AtomicInteger borrowed = new AtomicInteger();
+
+        void track(int value, int delta) {
+            if (value > 0) {
+                available.addAndGet(delta);
+            } else if (value == 0) {
+                borrowed.addAndGet(delta);
+            }
+        }
+
+        int count(BookFilter filter) {
+            switch (filter) {
+                case AVAILABLE:
+                    return available.get();
+                case BORROWED:
+                    return borrowed.get();
+                default:
+                    return size;
+            }
+        }
+
+        // Appends the records from position 'from' on to the other block and drops them from this one
+        void moveTo(Block other, int from) {
+            for (int i = from; i < size; i++) {
+                int record = records[i];
+                other.records[other.size++] = record;
+                other.track(availabilityOf(record), 1);
+                track(availabilityOf(record), -1);
+                blockOf[record] = other;
+            }
+            size = from;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/* Outcome of addBook(), removeBook(), borrowBook() and returnBook(), also the result
+   reported to the Library's LibraryEventSink.
+ */
+public enum OperationResult {
+    ADDED,
+    DUPLICATE,          // addBook(): the ISBN is already in the catalog
+    REMOVED,
+    BORROWED,
+    UNAVAILABLE,        // borrowBook(): the copy is already lent out
+    RETURNED,
+    ALREADY_AVAILABLE,  // returnBook(): the copy was not lent out
+    NOT_FOUND;
+
+    // True when the operation changed the catalog
+    public boolean isChange() {
+        return this == ADDED || this == REMOVED || this == BORROWED || this == RETURNED;
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/* Full scans of a CatalogStore for the queries no index can answer.
+   Stores of at least PARALLEL_THRESHOLD books are scanned as a parallel stream over
+   byTitle(): its spliterator cuts the title order into segments that are filtered on the
+   common ForkJoinPool, and the matches are joined back in encounter order. Smaller
+   stores, and machines with one core, are scanned on the calling thread. Either way the
+   matches come back in title order (CatalogStore.TITLE_ORDER) without being sorted, and
+   the result does not depend on how the work was split.
+   The caller holds the catalog's read lock for the whole scan.
+ */
+public class ParallelScan {
+    // Below this many books a scan takes well under a millisecond, not worth the hand-off
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // O(n x f / p) time complexity, f = cost of the predicate, p = cores
+    public static List<Book> filter(CatalogStore store, Predicate<Book> predicate) {
+        boolean parallel = store.size() >= PARALLEL_THRESHOLD
+                && Runtime.getRuntime().availableProcessors() > 1;
+        return filter(store, predicate, parallel);
+    }
+
+    static List<Book> filter(CatalogStore store, Predicate<Book> predicate, boolean parallel) {
+        if (parallel) {
+            return store.byTitle().parallelStream().filter(predicate).collect(Collectors.toList());
+        }
+        List<Book> matches = new ArrayList<>();
+        for (Book book : store.byTitle()) {
+            if (predicate.test(book)) {
+                matches.add(book);
+            }
+        }
+        return matches;
+    }
+}
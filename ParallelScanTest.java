@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/* Checks that parallel and sequential scans return the same books in title order as a
+   plain loop over the store, on both stores, and that searchBooks() does too.
+ */
+public class ParallelScanTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== Parallel Scan Test ===");
+
+        Path file = Files.createTempFile("parallel-scan-test", ".txt");
+        PrintStream out = System.out;
+        try {
+            new CatalogGenerator(23).write(file, 30_000);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library heap = new Library(file.toString(), CatalogStorage.HEAP);
+            Library offHeap = new Library(file.toString(), CatalogStorage.OFF_HEAP);
+            System.setOut(out);
+            List<Book> books = heap.searchBooks("");
+
+            System.out.println("\n1. Scans:");
+            Random random = new Random(23);
+            Predicate<Book> before1950 = book -> book.getPubYear() < 1950;
+            List<Book> expected = sequential(books, before1950);
+            for (boolean parallel : new boolean[]{false, true}) {
+                String mode = parallel ? "parallel" : "sequential";
+                check(mode + ", heap", isbns(ParallelScan.filter(storeOf(books, false), before1950, parallel))
+                        .equals(isbns(expected)));
+                check(mode + ", off-heap", isbns(ParallelScan.filter(storeOf(books, true), before1950, parallel))
+                        .equals(isbns(expected)));
+            }
+            List<Book> few = books.subList(0, 3);
+            check("fewer books than segments", isbns(ParallelScan.filter(storeOf(few, true), book -> true, true))
+                    .equals(isbns(sequential(few, book -> true))));
+            check("empty store", ParallelScan.filter(new HeapCatalogStore(), book -> true, true).isEmpty());
+            check("nothing matches", ParallelScan.filter(storeOf(books, false), book -> false, true).isEmpty());
+
+            System.out.println("\n2. Library:");
+            boolean same = true;
+            for (int round = 0; round < 20; round++) {
+                String query = Character.toString((char) ('a' + random.nextInt(26)));
+                List<Book> wanted = sequential(books, book -> book.getTitle().toLowerCase().contains(query)
+                        || book.getAuthor().toLowerCase().contains(query));
+                same &= isbns(heap.searchBooks(query)).equals(isbns(wanted))
+                        && isbns(offHeap.searchBooks(query)).equals(isbns(wanted));
+            }
+            check("short queries in title order", same);
+            check("predicate", isbns(heap.searchBooks(before1950)).equals(isbns(expected))
+                    && isbns(offHeap.searchBooks(before1950)).equals(isbns(expected)));
+            List<Book> machine = heap.searchBooks("machine");
+            check("indexed queries in title order", !machine.isEmpty()
+                    && isbns(machine).equals(isbns(sequential(machine, book -> true))));
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static CatalogStore storeOf(List<Book> books, boolean offHeap) {
+        if (offHeap) {
+            return new OffHeapCatalogStore(books, books.size());
+        }
+        LongBookMap map = new LongBookMap(books.size());
+        for (Book book : books) {
+            map.put(book.getISBN(), book);
+        }
+        return new HeapCatalogStore(map);
+    }
+
+    private static List<Book> sequential(List<Book> books, Predicate<Book> predicate) {
+        List<Book> matches = new ArrayList<>();
+        for (Book book : books) {
+            if (predicate.test(book)) {
+                matches.add(book);
+            }
+        }
+        matches.sort(CatalogStore.TITLE_ORDER);
+        return matches;
+    }
+
+    private static List<Long> isbns(List<Book> books) {
+        List<Long> isbns = new ArrayList<>();
+        for (Book book : books) {
+            isbns.add(book.getISBN());
+        }
+        return isbns;
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Hash-consing table for the titles and authors made while a catalog loads, so books
+   that share an author (or a title) share one String.
+   ASCII values can be looked up straight from the parser's byte range, so a repeated
+   value costs no allocation at all. The table is split into segments with a lock each,
+   the chunks of a large file are parsed in parallel. It holds at most maxEntries
+   Strings: once a segment is full its new values are returned as they are. Meant to
+   live for one load, clear() it afterwards so it does not keep anything reachable.
+ */
+public class StringPool {
+    private static final int SEGMENTS = 64;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    public StringPool(int maxEntries) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, maxEntries / SEGMENTS));
+        }
+    }
+
+    // The pooled String equal to value, value itself the first time it is seen
+    public String intern(String value) {
+        int hash = value.hashCode();
+        Segment segment = segmentFor(hash);
+        String pooled;
+        synchronized (segment) {
+            pooled = segment.find(hash, value);
+            if (pooled == null) {
+                segment.insert(hash, value);
+            }
+        }
+        return counted(pooled, value);
+    }
+
+    /* The pooled String for bytes [start, end) of the buffer, which must all be ASCII.
+       Only builds a String when the value is not pooled yet.
+     */
+    public String intern(ByteBuffer buffer, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);  // String.hashCode() of the same chars
+        }
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            String pooled = segment.find(hash, buffer, start, end);
+            if (pooled != null) {
+                return counted(pooled, pooled);
+            }
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return intern(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    public long getLookups() { return lookups.sum(); }
+
+    // Lookups answered with a String already in the pool
+    public long getHits() { return hits.sum(); }
+
+    // Share of lookups that were hits, 0 to 1
+    public double getDedupRatio() {
+        long total = lookups.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    // Estimate of the heap the hits would have taken as Strings of their own
+    public long getBytesSaved() { return bytesSaved.sum(); }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    // Drops every pooled String, the statistics stay
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d strings shared (%.1f%%), about %d KB saved",
+                getHits(), getLookups(), 100 * getDedupRatio(), getBytesSaved() / 1024);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash * 0x9E3779B9) >>> 26];
+    }
+
+    private String counted(String pooled, String value) {
+        lookups.increment();
+        if (pooled == null) {
+            return value;
+        }
+        hits.increment();
+        bytesSaved.add(footprint(pooled));
+        return pooled;
+    }
+
+    // A String object plus its byte[], one byte per char if every char fits in Latin-1
+    private static long footprint(String value) {
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+        long array = 16 + (long) value.length() * (latin1 ? 1 : 2);
+        return 24 + (array + 7) / 8 * 8;
+    }
+
+    // Open addressing with linear probing, grows up to its share of maxEntries
+    private static class Segment {
+        private final int maxEntries;
+        private String[] values = new String[16];
+        private int[] hashes = new int[16];
+        private int size;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        String find(int hash, String value) {
+            int mask = values.length - 1;
+            for (int slot = spread(hash) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && values[slot].equals(value)) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        String find(int hash, ByteBuffer buffer, int start, int end) {
+            int mask = values.length - 1;
+            for (int slot = spread(hash) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && sameChars(values[slot], buffer, start, end)) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        void insert(int hash, String value) {
+            if (size == maxEntries) {
+                return;
+            }
+            if (2 * (size + 1) > values.length) {
+                grow();
+            }
+            int mask = values.length - 1;
+            int slot = spread(hash) & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            values[slot] = value;
+            hashes[slot] = hash;
+            size++;
+        }
+
+        void clear() {
+            values = new String[16];
+            hashes = new int[16];
+            size = 0;
+        }
+
+        private void grow() {
+            String[] oldValues = values;
+            int[] oldHashes = hashes;
+            values = new String[oldValues.length * 2];
+            hashes = new int[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    insert(oldHashes[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean sameChars(String value, ByteBuffer buffer, int start, int end) {
+            if (value.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
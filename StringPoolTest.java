@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/* Checks that StringPool hands out one String per value, from Strings or from bytes,
+   stays within its bound, and that Library(String) shares titles and authors while loading.
+ */
+public class StringPoolTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("=== String Pool Test ===");
+
+        System.out.println("\n1. Interning:");
+        StringPool pool = new StringPool(1024);
+        String first = pool.intern(new String("Herbert, Frank"));
+        check("same instance", pool.intern(new String("Herbert, Frank")) == first);
+        ByteBuffer bytes = ByteBuffer.wrap("xHerbert, Frankx".getBytes(StandardCharsets.US_ASCII));
+        check("from bytes", pool.intern(bytes, 1, 15) == first);
+        check("new value from bytes", pool.intern(bytes, 0, 8).equals("xHerbert")
+                && pool.intern(bytes, 0, 8) == pool.intern("xHerbert"));
+        check("empty", pool.intern(bytes, 3, 3).isEmpty());
+        check("statistics", pool.getLookups() == 7 && pool.getHits() == 4 && pool.getBytesSaved() > 0);
+        pool.clear();
+        check("cleared", pool.size() == 0 && pool.intern(new String("Herbert, Frank")) != first);
+
+        System.out.println("\n2. Bounded:");
+        StringPool small = new StringPool(128);
+        boolean equal = true;
+        for (int i = 0; i < 10_000; i++) {
+            equal &= small.intern("author " + i).equals("author " + i);
+        }
+        check("size within bound", small.size() <= 128);
+        check("values still returned", equal);
+
+        System.out.println("\n3. Loading:");
+        Path file = Files.createTempFile("string-pool-test", ".txt");
+        PrintStream out = System.out;
+        try {
+            Files.write(file, Arrays.asList(
+                    "Dune, by Herbert, Frank, 0-44-117271-7, 1965",
+                    "Dune Messiah, by Herbert, Frank, 0-44-117269-5, 1969",
+                    "Dune, by Herbert, Frank, 0-44-100590-X, 1987",
+                    "Man of Two Worlds, by Herbert, Brian, 0-44-151857-5, 1986"));
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Library library = new Library(file.toString());
+            System.setOut(out);
+            List<Book> dune = library.searchBooks("Dune");
+            check("loaded", library.getTotalBooks() == 4 && dune.size() == 3);
+            check("authors shared", dune.get(0).getAuthor() == dune.get(1).getAuthor()
+                    && dune.get(1).getAuthor() == dune.get(2).getAuthor());
+            Book first1965 = library.searchBooks("0-44-117271-7").get(0);
+            Book x1987 = library.searchBooks("0-44-100590-X").get(0);
+            check("titles shared, also on the 'X' fallback", first1965.getTitle() == x1987.getTitle());
+            LibraryMetrics.Snapshot metrics = library.getMetrics().snapshot();
+            check("reported", metrics.getLoadStrings() == 8 && metrics.getLoadSharedStrings() == 3
+                    && metrics.getLoadBytesSaved() > 0 && metrics.getLoadDedupRatio() == 3 / 8.0);
+        } finally {
+            System.setOut(out);
+            Files.deleteIfExists(file);
+        }
+
+        System.out.println(failures == 0 ? "\n=== PASSED ===" : "\n=== FAILED ===");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(String name, boolean passed) {
+        System.out.printf("  %s: %s\n", name, passed ? "OK" : "FAILED");
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/* Inverted trigram index used by Library.searchBooks.
+   Every run of three chars in an indexed string is packed into a long key that maps
+   to the ISBNs of the books containing it. The index only narrows the candidates;
+   callers still confirm each candidate with contains(), so results are unchanged.
+ */
+public class TrigramIndex {
+    public static final int GRAM_LENGTH = 3;
+
+    private final HashMap<Long, IsbnPostings> postings = new HashMap<>();
+
+    // Indexes every string under the same ISBN, a book only appears once per trigram
+    public void add(long isbn, String... values) {
+        for (long gram : gramsOf(values)) {
+            postings.computeIfAbsent(gram, k -> new IsbnPostings()).add(isbn);
+        }
+    }
+
+    // Values must be the same strings that were passed to add() for this ISBN
+    public void remove(long isbn, String... values) {
+        for (long gram : gramsOf(values)) {
+            IsbnPostings list = postings.get(gram);
+            if (list != null) {
+                list.remove(isbn);
+                if (list.size() == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /* Re-indexes an ISBN whose strings changed from oldValues to newValues, which must be
+       what was passed to add() for it. Only trigrams on one side of the change are touched,
+       so renaming "Dune" to "Dune (Revised)" leaves the postings of "dun" and "une" alone.
+     */
+    public void replace(long isbn, String[] oldValues, String[] newValues) {
+        long[] before = gramsOf(oldValues);
+        long[] after = gramsOf(newValues);
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            if (j == after.length || i < before.length && before[i] < after[j]) {
+                IsbnPostings list = postings.get(before[i++]);
+                if (list != null) {
+                    list.remove(isbn);
+                    if (list.size() == 0) {
+                        postings.remove(before[i - 1]);
+                    }
+                }
+            } else if (i == before.length || before[i] > after[j]) {
+                postings.computeIfAbsent(after[j++], k -> new IsbnPostings()).add(isbn);
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /* O(q) lookups, q = length of query
+       Returns the ISBNs under the rarest trigram of the query, a superset of every
+       ISBN whose indexed strings contain it. Returns null if the query is shorter
+       than one trigram, the caller has to scan in that case.
+     */
+    public long[] candidates(String query) {
+        if (query.length() < GRAM_LENGTH) {
+            return null;
+        }
+        IsbnPostings best = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            IsbnPostings list = postings.get(pack(query, i));
+            if (list == null) {
+                return new long[0];
+            }
+            if (best == null || list.size() < best.size()) {
+                best = list;
+            }
+        }
+        return best.toArray();
+    }
+
+    public void clear() {
+        postings.clear();
+    }
+
+    // Distinct trigrams of all values, sorted so duplicates sit next to each other
+    private static long[] gramsOf(String... values) {
+        int count = 0;
+        for (String value : values) {
+            count += Math.max(0, value.length() - GRAM_LENGTH + 1);
+        }
+        long[] grams = new long[count];
+        int n = 0;
+        for (String value : values) {
+            for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+                grams[n++] = pack(value, i);
+            }
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    private static long pack(String s, int start) {
+        return ((long) s.charAt(start) << 32)
+                | ((long) s.charAt(start + 1) << 16)
+                | s.charAt(start + 2);
+    }
+}
@@ -0,0 +1,305 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/* Inverted word index used by Library.searchRanked.
+   Titles and authors are split into lower-case words. Each word keeps three postings
+   lists of ISBNs, one per field mask: author only, title only, and both. The mask is
+   also the word's score for that book, so a title hit outranks an author hit and a
+   book with the word in both fields outranks either. Lists are kept sorted by ISBN,
+   re-sorted lazily after changes (see IsbnPostings.sorted()), so the ISBN can break
+   ties between equal scores.
+ */
+public class WordIndex {
+    public static final int AUTHOR = 1;
+    public static final int TITLE = 2;
+    private static final int BOTH = TITLE | AUTHOR;
+
+    private final HashMap<String, IsbnPostings[]> postings = new HashMap<>();
+
+    public void add(long isbn, String title, String author) {
+        masks(title, author).forEach((word, mask) -> postings.computeIfAbsent(word,
+                k -> new IsbnPostings[]{null, new IsbnPostings(), new IsbnPostings(), new IsbnPostings()})[mask].add(isbn));
+    }
+
+    // Title and author must be the strings that were passed to add() for this ISBN
+    public void remove(long isbn, String title, String author) {
+        masks(title, author).forEach((word, mask) -> {
+            IsbnPostings[] tiers = postings.get(word);
+            if (tiers != null) {
+                tiers[mask].remove(isbn);
+                if (total(tiers) == 0) {
+                    postings.remove(word);
+                }
+            }
+        });
+    }
+
+    // Re-indexes an ISBN whose title or author changed, only words whose mask changed are touched
+    public void replace(long isbn, String oldTitle, String oldAuthor, String title, String author) {
+        HashMap<String, Integer> before = masks(oldTitle, oldAuthor);
+        HashMap<String, Integer> after = masks(title, author);
+        before.forEach((word, mask) -> {
+            if (!mask.equals(after.get(word))) {
+                IsbnPostings[] tiers = postings.get(word);
+                if (tiers != null) {
+                    tiers[mask].remove(isbn);
+                    if (total(tiers) == 0) {
+                        postings.remove(word);
+                    }
+                }
+            }
+        });
+        after.forEach((word, mask) -> {
+            if (!mask.equals(before.get(word))) {
+                postings.computeIfAbsent(word, k -> new IsbnPostings[]{null, new IsbnPostings(),
+                        new IsbnPostings(), new IsbnPostings()})[mask].add(isbn);
+            }
+        });
+    }
+
+    /* O(k x w x log p) time complexity for a single word, w = number of query words,
+       p = longest postings list, more when the books that score best are spread thin
+       across several words (plus a re-sort of any list changed since the last query)
+       Returns up to k ISBNs, best first. A book scores the sum of its masks over the
+       query words and ties go to the lower ISBN. The lists are walked together in ISBN
+       order (WAND): once k books are held, the walk jumps straight to the next ISBN whose
+       lists could add up to more than the worst of them, so a word shared by half the
+       catalog costs about as much as a rare one.
+     */
+    public long[] top(List<String> words, int k) {
+        if (k < 1) {
+            return new long[0];
+        }
+        List<IsbnPostings[]> distinct = new ArrayList<>();
+        List<Cursor> cursors = new ArrayList<>();
+        for (String word : words) {
+            IsbnPostings[] tiers = postings.get(word);
+            if (tiers != null && !distinct.contains(tiers)) {
+                for (int mask = AUTHOR; mask <= BOTH; mask++) {
+                    long[] isbns = tiers[mask].sorted();
+                    if (tiers[mask].size() > 0) {
+                        cursors.add(new Cursor(isbns, tiers[mask].size(), mask, distinct.size()));
+                    }
+                }
+                distinct.add(tiers);
+            }
+        }
+
+        Cursor[] live = cursors.toArray(new Cursor[0]);
+        int n = live.length;
+        int[] wordBound = new int[distinct.size()];
+        TopK best = new TopK(k);
+        while (n > 0) {
+            sortByIsbn(live, n);
+            // The pivot is the first cursor whose ISBN could get in with the lists up to it,
+            // a book reaches at most one tier of each word so a word counts once
+            Arrays.fill(wordBound, 0);
+            int bound = 0;
+            int pivot = -1;
+            for (int c = 0; c < n && pivot < 0; c++) {
+                Cursor cursor = live[c];
+                if (cursor.mask > wordBound[cursor.word]) {
+                    bound += cursor.mask - wordBound[cursor.word];
+                    wordBound[cursor.word] = cursor.mask;
+                }
+                if (best.admits(bound, cursor.isbn())) {
+                    pivot = c;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+
+            long target = live[pivot].isbn();
+            if (live[0].isbn() == target) {
+                int score = 0;
+                for (int c = 0; c < n && live[c].isbn() == target; c++) {
+                    score += live[c].mask;
+                    live[c].pos++;
+                }
+                best.offer(score, target);
+            } else {
+                for (int c = 0; c < pivot; c++) {
+                    live[c].skipTo(target);
+                }
+            }
+
+            int kept = 0;
+            for (int c = 0; c < n; c++) {
+                if (live[c].pos < live[c].size) {
+                    live[kept++] = live[c];
+                }
+            }
+            n = kept;
+        }
+        return best.drain();
+    }
+
+    // Insertion sort, the cursors are nearly in order from the previous step
+    private static void sortByIsbn(Cursor[] cursors, int n) {
+        for (int i = 1; i < n; i++) {
+            Cursor cursor = cursors[i];
+            int j = i - 1;
+            while (j >= 0 && cursors[j].isbn() > cursor.isbn()) {
+                cursors[j + 1] = cursors[j];
+                j--;
+            }
+            cursors[j + 1] = cursor;
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+    }
+
+    // Lower-case words of a title, author or query, split on anything that is not a letter or digit
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        String lower = text.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // Each distinct word of the book with its field mask
+    private static HashMap<String, Integer> masks(String title, String author) {
+        HashMap<String, Integer> masks = new HashMap<>();
+        for (String word : words(title)) {
+            masks.merge(word, TITLE, (a, b) -> a | b);
+        }
+        for (String word : words(author)) {
+            masks.merge(word, AUTHOR, (a, b) -> a | b);
+        }
+        return masks;
+    }
+
+    private static int total(IsbnPostings[] tiers) {
+        return tiers[AUTHOR].size() + tiers[TITLE].size() + tiers[BOTH].size();
+    }
+
+    // Position in the sorted ISBNs of one tier of one query word
+    private static class Cursor {
+        private final long[] isbns;
+        private final int size;
+        private final int mask;
+        private final int word;
+        private int pos;
+
+        Cursor(long[] isbns, int size, int mask, int word) {
+            this.isbns = isbns;
+            this.size = size;
+            this.mask = mask;
+            this.word = word;
+        }
+
+        long isbn() {
+            return isbns[pos];
+        }
+
+        // Galloping search for the first ISBN >= target, the cost grows with the log of the distance
+        void skipTo(long target) {
+            int step = 1;
+            int low = pos;
+            int high = pos;
+            while (high < size && isbns[high] < target) {
+                low = high + 1;
+                high = pos + step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(isbns, low, Math.min(high, size), target);
+            pos = found >= 0 ? found : -found - 1;
+        }
+    }
+
+    // Bounded min-heap of (score, ISBN), the root is the worst book held, k >= 1
+    private static class TopK {
+        private final int[] scores;
+        private final long[] isbns;
+        private int size;
+
+        TopK(int k) {
+            scores = new int[k];
+            isbns = new long[k];
+        }
+
+        // Whether a book scoring at most bound with this ISBN could still get in
+        boolean admits(int bound, long isbn) {
+            return size < scores.length || better(bound, isbn, scores[0], isbns[0]);
+        }
+
+        void offer(int score, long isbn) {
+            if (size < scores.length) {
+                scores[size] = score;
+                isbns[size] = isbn;
+                up(size++);
+            } else if (better(score, isbn, scores[0], isbns[0])) {
+                scores[0] = score;
+                isbns[0] = isbn;
+                down(0);
+            }
+        }
+
+        // Empties the heap, best first
+        long[] drain() {
+            long[] result = new long[size];
+            while (size > 0) {
+                result[size - 1] = isbns[0];
+                size--;
+                scores[0] = scores[size];
+                isbns[0] = isbns[size];
+                down(0);
+            }
+            return result;
+        }
+
+        private static boolean better(int score, long isbn, int otherScore, long otherIsbn) {
+            return score > otherScore || score == otherScore && isbn < otherIsbn;
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!better(scores[parent], isbns[parent], scores[i], isbns[i])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int worst = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (better(scores[worst], isbns[worst], scores[child], isbns[child])) {
+                        worst = child;
+                    }
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+            long isbn = isbns[a];
+            isbns[a] = isbns[b];
+            isbns[b] = isbn;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.TreeMap;
+
+/* Publication year index used by Library.query().
+   A sorted map from year to the ISBNs published that year, so a range of years is a
+   sub-map. Catalogs span a few hundred distinct years, which keeps count() cheap enough
+   for the query planner to call on every query.
+ */
+public class YearIndex {
+    private final TreeMap<Integer, IsbnPostings> byYear = new TreeMap<>();
+
+    public void add(int year, long isbn) {
+        byYear.computeIfAbsent(year, k -> new IsbnPostings()).add(isbn);
+    }
+
+    public void remove(int year, long isbn) {
+        IsbnPostings list = byYear.get(year);
+        if (list != null) {
+            list.remove(isbn);
+            if (list.size() == 0) {
+                byYear.remove(year);
+            }
+        }
+    }
+
+    // O(y) time complexity, y = number of distinct years in the range
+    public int count(int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            return 0;
+        }
+        int count = 0;
+        for (IsbnPostings list : byYear.subMap(fromYear, true, toYear, true).values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    // O(y + m) time complexity, m = number of books published in the range, in no particular order
+    public long[] isbns(int fromYear, int toYear) {
+        long[] isbns = new long[count(fromYear, toYear)];
+        if (isbns.length == 0) {
+            return isbns;
+        }
+        int n = 0;
+        for (IsbnPostings list : byYear.subMap(fromYear, true, toYear, true).values()) {
+            list.copyTo(isbns, n);
+            n += list.size();
+        }
+        return isbns;
+    }
+
+    public void clear() {
+        byYear.clear();
+    }
+}
@@ -0,0 +1,68 @@
+package librarybench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* borrowBook() followed by returnBook() of a random book, on one thread and on
+   several threads sharing the library. Random picks across the whole catalog rarely
+   collide, so the threaded run measures how well uncontended loans scale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class BorrowReturnBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    private Object library;
+    // Looked up once, computing a generated ISBN would be timed with every loan
+    private long[] isbns;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        private final SplittableRandom random = new SplittableRandom();
+
+        long next(long[] isbns) {
+            return isbns[random.nextInt(isbns.length)];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SilentOutput.start();
+        library = LibraryApi.load(SyntheticCatalog.file(records).toString(), storage);
+        isbns = new long[records];
+        for (int i = 0; i < records; i++) {
+            isbns[i] = SyntheticCatalog.isbn(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object borrowReturn(Picker picker) {
+        long isbn = picker.next(isbns);
+        LibraryApi.borrowBook(library, isbn);
+        return LibraryApi.returnBook(library, isbn);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object borrowReturnThreaded(Picker picker) {
+        long isbn = picker.next(isbns);
+        LibraryApi.borrowBook(library, isbn);
+        return LibraryApi.returnBook(library, isbn);
+    }
+}
@@ -0,0 +1,271 @@
+package librarybench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/* Typed access to the library classes for the benchmarks.
+   The library lives in the default package, which named packages cannot import,
+   and JMH refuses benchmarks in the default package. Method handles bound once
+   into static finals are inlined by the JIT like direct calls.
+ */
+final class LibraryApi {
+    private static final MethodHandle NEW_LIBRARY;
+    private static final MethodHandle SEARCH_BOOKS;
+    private static final MethodHandle SEARCH_FILTERED;
+    private static final MethodHandle SEARCH_RANKED;
+    private static final MethodHandle NEW_QUERY;
+    private static final MethodHandle QUERY_PUBLISHED;
+    private static final MethodHandle QUERY_TITLE;
+    private static final MethodHandle QUERY_FILTER;
+    private static final MethodHandle RUN_QUERY;
+    private static final MethodHandle BORROW_BOOK;
+    private static final MethodHandle RETURN_BOOK;
+    private static final MethodHandle GET_PAGE;
+    private static final MethodHandle NEXT_CURSOR;
+    private static final MethodHandle PAGE_BOOKS;
+    private static final MethodHandle SAVE_CATALOG;
+    private static final MethodHandle NEW_GENERATOR;
+    private static final MethodHandle WRITE_CATALOG;
+    private static final MethodHandle GENERATED_LINE;
+    private static final MethodHandle GENERATED_ISBN;
+    private static final MethodHandle PARSE_LINE;
+    private static final MethodHandle BOOK_TITLE;
+    private static final Class<?> STORAGE;
+    private static final Class<?> FILTER;
+
+    static {
+        try {
+            Class<?> library = Class.forName("Library");
+            Class<?> page = Class.forName("BookPage");
+            Class<?> result = Class.forName("OperationResult");
+            Class<?> generator = Class.forName("CatalogGenerator");
+            Class<?> book = Class.forName("Book");
+            Class<?> query = Class.forName("BookQuery");
+            STORAGE = Class.forName("CatalogStorage");
+            FILTER = Class.forName("BookFilter");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            NEW_LIBRARY = lookup.findConstructor(library, methodType(void.class, String.class, STORAGE))
+                    .asType(methodType(Object.class, String.class, Object.class));
+            SEARCH_BOOKS = lookup.findVirtual(library, "searchBooks", methodType(List.class, String.class))
+                    .asType(methodType(List.class, Object.class, String.class));
+            SEARCH_FILTERED = lookup.findVirtual(library, "searchBooks", methodType(List.class, String.class, FILTER))
+                    .asType(methodType(List.class, Object.class, String.class, Object.class));
+            NEW_QUERY = lookup.findConstructor(query, methodType(void.class))
+                    .asType(methodType(Object.class));
+            QUERY_PUBLISHED = lookup.findVirtual(query, "published", methodType(query, int.class, int.class))
+                    .asType(methodType(Object.class, Object.class, int.class, int.class));
+            QUERY_TITLE = lookup.findVirtual(query, "titleContains", methodType(query, String.class))
+                    .asType(methodType(Object.class, Object.class, String.class));
+            QUERY_FILTER = lookup.findVirtual(query, "filter", methodType(query, FILTER))
+                    .asType(methodType(Object.class, Object.class, Object.class));
+            RUN_QUERY = lookup.findVirtual(library, "query", methodType(List.class, query))
+                    .asType(methodType(List.class, Object.class, Object.class));
+            SEARCH_RANKED = lookup.findVirtual(library, "searchRanked", methodType(List.class, String.class, int.class))
+                    .asType(methodType(List.class, Object.class, String.class, int.class));
+            BORROW_BOOK = lookup.findVirtual(library, "borrowBook", methodType(result, long.class))
+                    .asType(methodType(Object.class, Object.class, long.class));
+            RETURN_BOOK = lookup.findVirtual(library, "returnBook", methodType(result, long.class))
+                    .asType(methodType(Object.class, Object.class, long.class));
+            GET_PAGE = lookup.findVirtual(library, "getPage", methodType(page, FILTER, String.class, int.class))
+                    .asType(methodType(Object.class, Object.class, Object.class, String.class, int.class));
+            NEXT_CURSOR = lookup.findVirtual(page, "getNextCursor", methodType(String.class))
+                    .asType(methodType(String.class, Object.class));
+            PAGE_BOOKS = lookup.findVirtual(page, "getBooks", methodType(List.class))
+                    .asType(methodType(List.class, Object.class));
+            SAVE_CATALOG = lookup.findVirtual(library, "saveCatalog", methodType(void.class, String.class))
+                    .asType(methodType(void.class, Object.class, String.class));
+            NEW_GENERATOR = lookup.findConstructor(generator, methodType(void.class, long.class))
+                    .asType(methodType(Object.class, long.class));
+            WRITE_CATALOG = lookup.findVirtual(generator, "write", methodType(void.class, Path.class, long.class))
+                    .asType(methodType(void.class, Object.class, Path.class, long.class));
+            GENERATED_LINE = lookup.findVirtual(generator, "line", methodType(String.class, long.class))
+                    .asType(methodType(String.class, Object.class, long.class));
+            GENERATED_ISBN = lookup.findVirtual(generator, "isbn", methodType(long.class, long.class))
+                    .asType(methodType(long.class, Object.class, long.class));
+            PARSE_LINE = lookup.findStatic(Class.forName("CatalogLoader"), "parseLine", methodType(book, String.class))
+                    .asType(methodType(Object.class, String.class));
+            BOOK_TITLE = lookup.findVirtual(book, "getTitle", methodType(String.class))
+                    .asType(methodType(String.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LibraryApi() {
+    }
+
+    // storage is a CatalogStorage constant name, HEAP or OFF_HEAP
+    static Object load(String file, String storage) {
+        try {
+            return NEW_LIBRARY.invokeExact(file, constant(STORAGE, storage));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> searchBooks(Object library, String query) {
+        try {
+            return (List<?>) SEARCH_BOOKS.invokeExact(library, query);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // filter is a BookFilter constant, see filter()
+    static List<?> searchBooks(Object library, String query, Object filter) {
+        try {
+            return (List<?>) SEARCH_FILTERED.invokeExact(library, query, filter);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // A BookQuery for books published from fromYear to toYear with the term in their title
+    static Object query(int fromYear, int toYear, String titleTerm, Object filter) {
+        try {
+            Object query = NEW_QUERY.invokeExact();
+            query = QUERY_PUBLISHED.invokeExact(query, fromYear, toYear);
+            query = QUERY_TITLE.invokeExact(query, titleTerm);
+            return QUERY_FILTER.invokeExact(query, filter);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> query(Object library, Object query) {
+        try {
+            return (List<?>) RUN_QUERY.invokeExact(library, query);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> searchRanked(Object library, String query, int limit) {
+        try {
+            return (List<?>) SEARCH_RANKED.invokeExact(library, query, limit);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Returns the OperationResult constant
+    static Object borrowBook(Object library, long isbn) {
+        try {
+            return BORROW_BOOK.invokeExact(library, isbn);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object returnBook(Object library, long isbn) {
+        try {
+            return RETURN_BOOK.invokeExact(library, isbn);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // filter is a BookFilter constant, see filter()
+    static Object getPage(Object library, Object filter, String cursor, int pageSize) {
+        try {
+            return GET_PAGE.invokeExact(library, filter, cursor, pageSize);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String nextCursor(Object page) {
+        try {
+            return (String) NEXT_CURSOR.invokeExact(page);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> pageBooks(Object page) {
+        try {
+            return (List<?>) PAGE_BOOKS.invokeExact(page);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void saveCatalog(Object library, String file) {
+        try {
+            SAVE_CATALOG.invokeExact(library, file);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // A CatalogGenerator, every seed always writes the same catalog
+    static Object generator(long seed) {
+        try {
+            return NEW_GENERATOR.invokeExact(seed);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void writeCatalog(Object generator, Path file, long records) throws IOException {
+        try {
+            WRITE_CATALOG.invokeExact(generator, file, records);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // The line the generator writes for one record
+    static String generatedLine(Object generator, long index) {
+        try {
+            return (String) GENERATED_LINE.invokeExact(generator, index);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // The ISBN the library stores for one record
+    static long generatedIsbn(Object generator, long index) {
+        try {
+            return (long) GENERATED_ISBN.invokeExact(generator, index);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // The title the loader reads from a catalog line, null when it rejects the line
+    static String parsedTitle(String line) {
+        try {
+            Object book = PARSE_LINE.invokeExact(line);
+            return book == null ? null : (String) BOOK_TITLE.invokeExact(book);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object filter(String name) {
+        return constant(FILTER, name);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object constant(Class<?> enumClass, String name) {
+        return Enum.valueOf((Class) enumClass, name);
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,38 @@
+package librarybench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Library(String): read, parse and index a catalog file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class LoadBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    private String file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        file = SyntheticCatalog.file(records).toString();
+        SilentOutput.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    public Object load() {
+        return LibraryApi.load(file, storage);
+    }
+}
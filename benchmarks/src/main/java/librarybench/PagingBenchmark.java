@@ -0,0 +1,59 @@
+package librarybench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* getPage() for the available/borrowed views, 10 books per page like the menu.
+   Every tenth book is borrowed. The deep page starts halfway through the filtered list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class PagingBenchmark {
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"10000", "1000000", "10000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    @Param({"AVAILABLE", "BORROWED"})
+    String filter;
+
+    private Object library;
+    private Object bookFilter;
+    private String deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SilentOutput.start();
+        library = LibraryApi.load(SyntheticCatalog.file(records).toString(), storage);
+        for (int i = 0; i < records; i += 10) {
+            LibraryApi.borrowBook(library, SyntheticCatalog.isbn(i));
+        }
+        bookFilter = LibraryApi.filter(filter);
+        int matching = filter.equals("BORROWED") ? (records + 9) / 10 : records - (records + 9) / 10;
+        Object firstHalf = LibraryApi.getPage(library, bookFilter, null, Math.max(1, matching / 2));
+        deepCursor = LibraryApi.nextCursor(firstHalf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    public Object firstPage() {
+        return LibraryApi.getPage(library, bookFilter, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object deepPage() {
+        return LibraryApi.getPage(library, bookFilter, deepCursor, PAGE_SIZE);
+    }
+}
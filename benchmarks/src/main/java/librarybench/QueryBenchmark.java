@@ -0,0 +1,60 @@
+package librarybench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* query() and searchBooks() filtered by availability, with every tenth book borrowed:
+     yearTitle           published in the 1990s with "Night" in the title, two indexes
+                         of similar size that the planner intersects
+     yearTitleAvailable  the same, only available books
+     titleBorrowed       searchBooks("Night") of borrowed books, the trigram candidates
+                         cut down by the availability bitmaps
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class QueryBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    @Param({"yearTitle", "yearTitleAvailable", "titleBorrowed"})
+    String plan;
+
+    private Object library;
+    private Object query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SilentOutput.start();
+        library = LibraryApi.load(SyntheticCatalog.file(records).toString(), storage);
+        for (int i = 0; i < records; i += 10) {
+            LibraryApi.borrowBook(library, SyntheticCatalog.isbn(i));
+        }
+        query = LibraryApi.query(1990, 1999, SyntheticCatalog.TITLE_WORD.toLowerCase(),
+                LibraryApi.filter(plan.equals("yearTitleAvailable") ? "AVAILABLE" : "ALL"));
+        if (run().isEmpty()) {
+            throw new IllegalStateException("Plan '" + plan + "' finds nothing");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    public List<?> run() {
+        if (plan.equals("titleBorrowed")) {
+            return LibraryApi.searchBooks(library, SyntheticCatalog.TITLE_WORD, LibraryApi.filter("BORROWED"));
+        }
+        return LibraryApi.query(library, query);
+    }
+}
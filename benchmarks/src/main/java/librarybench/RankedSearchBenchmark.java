@@ -0,0 +1,52 @@
+package librarybench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* searchRanked() top 10 for a query matching much of the catalog against a narrow one:
+     broad    "the", in over a fifth of the titles
+     narrow   "asimov river", an author and a title word
+   The two should cost about the same: WordIndex.top() skips the ISBNs that cannot
+   beat the k books it holds instead of scoring every match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class RankedSearchBenchmark {
+    @Param({"200000", "1000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    @Param({"broad", "narrow"})
+    String query;
+
+    private Object library;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SilentOutput.start();
+        library = LibraryApi.load(SyntheticCatalog.file(records).toString(), storage);
+        text = query.equals("broad") ? "the" : "asimov river";
+        if (LibraryApi.searchRanked(library, text, 10).isEmpty()) {
+            throw new IllegalStateException("Query '" + text + "' finds nothing");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    public List<?> searchRanked() {
+        return LibraryApi.searchRanked(library, text, 10);
+    }
+}
@@ -0,0 +1,44 @@
+package librarybench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// saveCatalog(): write the whole catalog in title order to a temp file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class SaveBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    private Object library;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SilentOutput.start();
+        library = LibraryApi.load(SyntheticCatalog.file(records).toString(), storage);
+        target = Files.createTempFile("library-bench-save", ".txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    public void save() {
+        LibraryApi.saveCatalog(library, target.toString());
+    }
+}
@@ -0,0 +1,69 @@
+package librarybench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* searchBooks() with each kind of query the menu accepts:
+     title        full title of one book
+     titleWord    a word shared by about 1/7 of the titles
+     author       an author's last name, shared by about 1/7 of the books
+     isbn         the first six digits of an ISBN as written in the catalog
+     hyphenated   a full ISBN typed with hyphens, ISBN-10 or ISBN-13
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class SearchBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    int records;
+
+    @Param({"HEAP"})
+    String storage;
+
+    @Param({"title", "titleWord", "author", "isbn", "hyphenated"})
+    String query;
+
+    private Object library;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SilentOutput.start();
+        library = LibraryApi.load(SyntheticCatalog.file(records).toString(), storage);
+        int target = records / 2;
+        switch (query) {
+            case "title":
+                text = SyntheticCatalog.title(target);
+                break;
+            case "titleWord":
+                text = SyntheticCatalog.TITLE_WORD;
+                break;
+            case "author":
+                text = SyntheticCatalog.LAST_NAME;
+                break;
+            case "isbn":
+                text = SyntheticCatalog.hyphenated(target).replace("-", "").substring(0, 6);
+                break;
+            default:
+                text = SyntheticCatalog.hyphenated(target);
+        }
+        if (LibraryApi.searchBooks(library, text).isEmpty()) {
+            throw new IllegalStateException("Query '" + text + "' finds nothing");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SilentOutput.stop();
+    }
+
+    @Benchmark
+    public List<?> search() {
+        return LibraryApi.searchBooks(library, text);
+    }
+}
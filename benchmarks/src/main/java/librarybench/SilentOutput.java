@@ -0,0 +1,26 @@
+package librarybench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// Library reports loads and saves on System.out, benchmarks discard it
+final class SilentOutput {
+    private static PrintStream original;
+
+    private SilentOutput() {
+    }
+
+    static synchronized void start() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    static synchronized void stop() {
+        if (original != null) {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package librarybench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/* Catalog files written by the library's CatalogGenerator with a fixed seed, so record i
+   always gets the same title, author and ISBN and benchmarks can compute queries that
+   are known to hit. No duplicate or malformed lines, every record is a book. Files are
+   generated once per size and reused from java.io.tmpdir/library-bench.
+ */
+final class SyntheticCatalog {
+    static final long SEED = 23;
+
+    // A common title word and the most common surname, each in about 1/7 of the books
+    static final String TITLE_WORD = "Night";
+    static final String LAST_NAME = "Smith";
+
+    private static final Object GENERATOR = LibraryApi.generator(SEED);
+
+    private SyntheticCatalog() {
+    }
+
+    static Path file(int records) {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "library-bench");
+        Path file = dir.resolve("generated-" + SEED + "-" + records + ".txt");
+        if (Files.exists(file)) {
+            return file;
+        }
+        try {
+            Files.createDirectories(dir);
+            LibraryApi.writeCatalog(GENERATOR, file, records);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String line(int i) {
+        return LibraryApi.generatedLine(GENERATOR, i);
+    }
+
+    static String title(int i) {
+        return LibraryApi.parsedTitle(line(i));
+    }
+
+    // The ISBN as the line spells it, hyphenated and as ISBN-10 or ISBN-13
+    static String hyphenated(int i) {
+        String line = line(i);
+        int end = line.lastIndexOf(", ");
+        return line.substring(line.lastIndexOf(", ", end - 1) + 2, end);
+    }
+
+    // The ISBN the library stores for record i
+    static long isbn(int i) {
+        return LibraryApi.generatedIsbn(GENERATOR, i);
+    }
+}